@@ -0,0 +1,104 @@
+package com.spartronics4915.frc2019;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+import com.spartronics4915.lib.util.InterpolatingPoseBuffer;
+
+/**
+ * Reader and writer latency of {@link RobotState}'s pose history while one
+ * thread writes as fast as it can and three others read, against the same
+ * history behind a single monitor (as RobotState used to be).
+ * <p>
+ * Read the SampleTime percentiles: the writer's p99 shows how long the
+ * estimator waits on readers, and the readers' how long they wait on the
+ * writer. Use <code>-tg 1,N</code> to try other reader counts.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RobotStateBenchmark {
+    private static final double kDt = 0.005;
+    private static final double kLookback = 0.1; // how stale the lidar and vision code's lookups typically are
+
+    private static class SynchronizedPoseHistory {
+        private final InterpolatingPoseBuffer mPoses = new InterpolatingPoseBuffer(100);
+
+        synchronized void put(double timestamp, Pose2d pose) {
+            mPoses.put(timestamp, pose);
+        }
+
+        synchronized Pose2d getInterpolated(double timestamp) {
+            return mPoses.getInterpolated(timestamp);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Synchronized {
+        final SynchronizedPoseHistory history = new SynchronizedPoseHistory();
+        // volatile so readers see the writer's progress
+        volatile double timestamp = 0;
+
+        public Synchronized() {
+            history.put(0, Pose2d.identity());
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Optimistic {
+        final RobotState state = RobotState.getInstance();
+        // volatile so readers see the writer's progress
+        volatile double timestamp = 0;
+    }
+
+    private static Pose2d poseAt(double timestamp) {
+        return new Pose2d(timestamp, timestamp, Rotation2d.identity());
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(1)
+    public void synchronizedWriter(Synchronized state) {
+        double timestamp = state.timestamp + kDt;
+        state.history.put(timestamp, poseAt(timestamp));
+        state.timestamp = timestamp;
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(3)
+    public Pose2d synchronizedReader(Synchronized state) {
+        return state.history.getInterpolated(state.timestamp - kLookback);
+    }
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(1)
+    public void optimisticWriter(Optimistic state) {
+        double timestamp = state.timestamp + kDt;
+        state.state.addFieldToVehicleObservation(timestamp, poseAt(timestamp));
+        state.timestamp = timestamp;
+    }
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(3)
+    public Pose2d optimisticReader(Optimistic state) {
+        return state.state.getFieldToVehicle(state.timestamp - kLookback);
+    }
+}
@@ -0,0 +1,137 @@
+package com.spartronics4915.frc2019.lidar;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the text (readLine + split + parse) and binary frame ingestion
+ * paths of {@link LidarServer} on one second of synthetic lidar output.
+ * Scores are points/s; run with the gc profiler to compare allocation rate
+ * (gc.alloc.rate.norm is bytes per point).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LidarIngestBenchmark {
+    private static final int kPoints = 4000; // ~1s of lidar output
+    private static final int kPointsPerScan = 400;
+
+    private byte[] mText;
+    private ReplayChannel mBinary;
+    private LidarFrameDecoder mDecoder;
+
+    @Setup
+    public void setup() {
+        StringBuilder text = new StringBuilder();
+        ByteBuffer binary = ByteBuffer.allocate(kPoints * LidarFrameDecoder.kFrameSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        long ts = 1500000000000L;
+        for (int i = 0; i < kPoints; i++) {
+            boolean newScan = i % kPointsPerScan == 0;
+            double angle = 360.0 * (i % kPointsPerScan) / kPointsPerScan;
+            double distance = 1000 + 500 * Math.sin(Math.toRadians(angle * 4));
+            text.append(ts + i / 4).append(',').append(angle).append(',').append(distance);
+            if (newScan) {
+                text.append('s');
+            }
+            text.append('\n');
+            LidarFrameDecoder.encode(binary, ts + i / 4, angle, distance, newScan);
+        }
+        mText = text.toString().getBytes(StandardCharsets.US_ASCII);
+        mBinary = new ReplayChannel(binary.array());
+    }
+
+    /**
+     * Replays the same bytes on every pass, so the decoder (and its direct
+     * buffer) is built once per trial just as it is once per process on the
+     * robot.
+     */
+    private static class ReplayChannel implements ReadableByteChannel {
+        private final ByteBuffer mData;
+
+        ReplayChannel(byte[] data) {
+            mData = ByteBuffer.wrap(data);
+        }
+
+        void rewind() {
+            mData.rewind();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!mData.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(dst.remaining(), mData.remaining());
+            int limit = mData.limit();
+            mData.limit(mData.position() + n);
+            dst.put(mData);
+            mData.limit(limit);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static LidarFrameDecoder.Listener sink(Blackhole bh) {
+        return (timestampMs, angle, distance, newScan) -> {
+            bh.consume(timestampMs);
+            bh.consume(angle);
+            bh.consume(distance);
+            bh.consume(newScan);
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(kPoints)
+    public void textLines(Blackhole bh) throws IOException {
+        LidarFrameDecoder.Listener listener = sink(bh);
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(mText), StandardCharsets.US_ASCII));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            LidarServer.parseLine(line, listener);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(kPoints)
+    public void binaryFrames(Blackhole bh) throws IOException {
+        if (mDecoder == null) {
+            mDecoder = new LidarFrameDecoder(mBinary, 64, sink(bh));
+        }
+        mBinary.rewind();
+        while (mDecoder.readFrames() >= 0) {
+        }
+    }
+}
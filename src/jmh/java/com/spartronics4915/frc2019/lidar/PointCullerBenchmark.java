@@ -0,0 +1,166 @@
+package com.spartronics4915.frc2019.lidar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.spartronics4915.frc2019.lidar.icp.Point;
+
+/**
+ * Copying the stored scans out and culling them, as
+ * {@link LidarProcessor#copyCulledPoints} does before every ICP solve, at
+ * 400, 4000 and 40000 stored points (1, 10 and 100 scans). Compares:
+ * <ul>
+ * <li>boxedHashSet: the original getCulledPoints, which copied every scan
+ * into an ArrayList of Points and kept the first point per boxed Cantor
+ * bucket in a HashSet</li>
+ * <li>hashTable: copy, then cull with the primitive open-addressing table
+ * PointCuller used before its grid, cleared every cull</li>
+ * <li>grid: copy, then cull with PointCuller's generation-stamped grid</li>
+ * <li>gridFused: cull each scan with the grid as it's copied</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointCullerBenchmark {
+    private static final int kPointsPerScan = 400;
+    // The area LidarProcessor keeps points in
+    private static final double kMinX = 27 * 12 / 2 - 27 * 12 / 5.0, kMaxX = 27 * 12 / 2 + 27 * 12 / 5.0;
+    private static final double kMinY = 0, kMaxY = 54 * 12;
+    private static final double BUCKET_SIZE = 3.0;
+
+    @Param({"400", "4000", "40000"})
+    public int mStoredPoints;
+
+    private LidarScanBuffer mBuffer;
+    private List<List<Point>> mScans;
+    private final LidarScan mOut = new LidarScan();
+    private final PointCuller mCuller = new PointCuller(kMinX, kMinY, kMaxX, kMaxY);
+    private final HashTableCuller mHashTableCuller = new HashTableCuller();
+
+    @Setup
+    public void setup() {
+        int scans = mStoredPoints / kPointsPerScan;
+        mBuffer = new LidarScanBuffer(scans);
+        mScans = new ArrayList<>();
+        Random rand = new Random(4915);
+        for (int s = 0; s < scans; s++) {
+            mBuffer.startNewScan();
+            List<Point> scan = new ArrayList<>();
+            for (int p = 0; p < kPointsPerScan; p++) {
+                // A ring of walls around the robot, with some range noise
+                double angle = 2 * Math.PI * p / kPointsPerScan;
+                double range = 50 + 10 * Math.sin(4 * angle) + rand.nextGaussian() * 0.5;
+                double x = (kMinX + kMaxX) / 2 + range * Math.cos(angle);
+                double y = 300 + range * Math.sin(angle);
+                mBuffer.addPoint(x, y, s * 0.1 + p * 0.1 / kPointsPerScan);
+                scan.add(new Point(x, y));
+            }
+            mScans.add(scan);
+        }
+        mBuffer.startNewScan();
+    }
+
+    private static int getBucket(double x, double y) {
+        int ix = (int) (x / BUCKET_SIZE);
+        int iy = (int) (y / BUCKET_SIZE);
+        int a = ix >= 0 ? 2 * ix : -2 * ix - 1;
+        int b = iy >= 0 ? 2 * iy : -2 * iy - 1;
+        int sum = a + b;
+        return sum * (sum + 1) / 2 + a;
+    }
+
+    /**
+     * PointCuller before the grid.
+     */
+    private static class HashTableCuller {
+        private int[] mBucketTable = new int[1024];
+        private static final int kBucketHashMultiplier = 0x9E3779B9;
+
+        private boolean addBucket(int bucket) {
+            int key = bucket + 1;
+            int mask = mBucketTable.length - 1;
+            int hash = key * kBucketHashMultiplier;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (mBucketTable[slot] != 0) {
+                if (mBucketTable[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            mBucketTable[slot] = key;
+            return true;
+        }
+
+        void cull(LidarScan points) {
+            int total = points.size();
+            if (mBucketTable.length < total * 2) {
+                mBucketTable = new int[Integer.highestOneBit(total * 2) << 1];
+            } else {
+                Arrays.fill(mBucketTable, 0);
+            }
+            int kept = 0;
+            for (int i = 0; i < total; i++) {
+                if (addBucket(getBucket(points.getX(i), points.getY(i)))) {
+                    points.copyPoint(i, kept++);
+                }
+            }
+            points.truncate(kept);
+        }
+    }
+
+    @Benchmark
+    public ArrayList<Point> boxedHashSet() {
+        ArrayList<Point> all = new ArrayList<>();
+        for (List<Point> scan : mScans) {
+            all.addAll(scan);
+        }
+        ArrayList<Point> list = new ArrayList<>();
+        HashSet<Integer> buckets = new HashSet<>();
+        for (Point p : all) {
+            if (buckets.add(getBucket(p.x, p.y))) {
+                list.add(p);
+            }
+        }
+        return list;
+    }
+
+    @Benchmark
+    public int hashTable() {
+        mBuffer.copyCompletedScans(mOut);
+        mHashTableCuller.cull(mOut);
+        return mOut.size();
+    }
+
+    @Benchmark
+    public int grid() {
+        mBuffer.copyCompletedScans(mOut);
+        mCuller.cull(mOut);
+        return mOut.size();
+    }
+
+    @Benchmark
+    public int gridFused() {
+        mBuffer.copyCompletedScans(mOut, mCuller);
+        return mOut.size();
+    }
+}
@@ -0,0 +1,150 @@
+package com.spartronics4915.frc2019.lidar;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.spartronics4915.frc2019.Constants;
+
+/**
+ * One lidar producer adding points against reader threads copying out the
+ * stored scans, comparing {@link LidarScanBuffer} with the read/write lock
+ * LidarProcessor used before it.
+ * <p>
+ * The interesting numbers are the producer's: its throughput, and in
+ * SampleTime mode its p99/p99.9 latency per point, which is where waiting on
+ * readers shows up. Each group runs 1 producer and 3 readers; use
+ * <code>-tg 1,N</code> to try other reader counts.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanHandoffBenchmark {
+    private static final int kPointsPerScan = 400;
+
+    /**
+     * The locking scheme LidarProcessor used: every point takes the write
+     * lock, and readers hold the read lock while they copy.
+     */
+    private static class LockedScanBuffer {
+        private final LidarScan[] mPool = new LidarScan[Constants.kLidarNumScansToStore + 1];
+        private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+        private int mCurrent = 0;
+        private int mNumScans = 1;
+
+        LockedScanBuffer() {
+            for (int i = 0; i < mPool.length; i++) {
+                mPool[i] = new LidarScan();
+            }
+        }
+
+        void addPoint(double x, double y, double timestamp) {
+            mLock.writeLock().lock();
+            try {
+                mPool[mCurrent].addPoint(x, y, timestamp);
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        void startNewScan() {
+            mLock.writeLock().lock();
+            try {
+                mCurrent = (mCurrent + 1) % mPool.length;
+                mPool[mCurrent].clear();
+                mNumScans = Math.min(mNumScans + 1, Constants.kLidarNumScansToStore);
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        double copyScans(LidarScan out) {
+            mLock.readLock().lock();
+            try {
+                out.clear();
+                double timestamp = 0;
+                for (int age = mNumScans - 1; age >= 0; age--) {
+                    timestamp = out.appendFrom(mPool[(mCurrent - age + mPool.length) % mPool.length]);
+                }
+                return timestamp;
+            } finally {
+                mLock.readLock().unlock();
+            }
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Locked {
+        final LockedScanBuffer buffer = new LockedScanBuffer();
+        int point = 0;
+    }
+
+    @State(Scope.Group)
+    public static class LockFree {
+        final LidarScanBuffer buffer = new LidarScanBuffer(Constants.kLidarNumScansToStore);
+        int point = 0;
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+        final LidarScan out = new LidarScan();
+    }
+
+    private static double getX(int point) {
+        return 100 + 50 * Math.cos(point * 2 * Math.PI / kPointsPerScan);
+    }
+
+    private static double getY(int point) {
+        return 300 + 50 * Math.sin(point * 2 * Math.PI / kPointsPerScan);
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public void lockedProducer(Locked state) {
+        int point = state.point++;
+        if (point % kPointsPerScan == 0) {
+            state.buffer.startNewScan();
+        }
+        state.buffer.addPoint(getX(point), getY(point), point);
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(3)
+    public double lockedReader(Locked state, Reader reader) {
+        return state.buffer.copyScans(reader.out);
+    }
+
+    @Benchmark
+    @Group("lockFree")
+    @GroupThreads(1)
+    public void lockFreeProducer(LockFree state) {
+        int point = state.point++;
+        if (point % kPointsPerScan == 0) {
+            state.buffer.startNewScan();
+        }
+        state.buffer.addPoint(getX(point), getY(point), point);
+    }
+
+    @Benchmark
+    @Group("lockFree")
+    @GroupThreads(3)
+    public double lockFreeReader(LockFree state, Reader reader) {
+        return state.buffer.copyCompletedScans(reader.out);
+    }
+}
@@ -0,0 +1,82 @@
+package com.spartronics4915.frc2019.lidar.icp;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link Point} based ICP solve against the primitive array
+ * overload on the same culled cloud. Scores are microseconds per solve; the gc
+ * profiler's gc.alloc.rate.norm shows bytes allocated per solve.
+ * <p>
+ * We don't keep lidar recordings in the repo, so the cloud is a seeded
+ * synthetic scan of the tower front face with range noise and 10% stray
+ * points, roughly what LidarProcessor culls down to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ICPBenchmark {
+    @Param({"500", "2000", "4000"})
+    public int points;
+
+    private ICP mIcp;
+    private Transform mGuess;
+    private ArrayList<Point> mCloud;
+    private double[] mXs, mYs;
+
+    @Setup
+    public void setup() {
+        ReferenceModel model = ReferenceModel.TOWER;
+        // A long timeout so the scores measure converged solves, not the timeout
+        mIcp = new ICP(model, 1000);
+        Transform sensor = new Transform(Math.toRadians(8), 60, -15);
+        mGuess = new Transform(Math.toRadians(4), 57, -13);
+
+        Random rand = new Random(254);
+        Segment face = model.segments[0];
+        mCloud = new ArrayList<>(points);
+        mXs = new double[points];
+        mYs = new double[points];
+        for (int i = 0; i < points; i++) {
+            Point p;
+            if (i % 10 == 0) {
+                // clutter that ICP should reject as outliers
+                p = new Point(rand.nextDouble() * 100 - 20, rand.nextDouble() * 100 - 50);
+            } else {
+                double t = face.tMin + rand.nextDouble() * (face.tMax - face.tMin);
+                Point onFace = face.line.getPoint(t);
+                p = new Point(onFace.x + rand.nextGaussian() * 0.2, onFace.y + rand.nextGaussian() * 0.2);
+            }
+            p = sensor.apply(p);
+            mCloud.add(p);
+            mXs[i] = p.x;
+            mYs[i] = p.y;
+        }
+    }
+
+    @Benchmark
+    public Transform pointCloud() throws NoMatchingPointsException {
+        return mIcp.doICP(mCloud, mGuess);
+    }
+
+    @Benchmark
+    public Transform primitiveArrays() throws NoMatchingPointsException {
+        return mIcp.doICP(mXs, mYs, points, mGuess);
+    }
+}
@@ -0,0 +1,93 @@
+package com.spartronics4915.frc2019.lidar.icp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Closest-point queries against the linear-scan {@link ReferenceModel}, the
+ * {@link GridReferenceModel} and the {@link DistanceFieldReferenceModel}
+ * (1" cells, exact distances), for models of random walls scattered over a
+ * 27' x 54' field. Scores are nanoseconds per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReferenceModelBenchmark {
+    private static final int kQueries = 1000;
+
+    @Param({"1", "10", "100", "1000"})
+    public int segments;
+
+    @Param({"24"})
+    public double cellSize;
+
+    private ReferenceModel mLinear;
+    private ReferenceModel mGrid;
+    private ReferenceModel mDistanceField;
+    private double[] mXs, mYs;
+    private final double[] mOut = new double[2];
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(254);
+        Segment[] walls = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            double x = rand.nextDouble() * 324, y = rand.nextDouble() * 648;
+            double angle = rand.nextDouble() * 2 * Math.PI, length = 6 + rand.nextDouble() * 60;
+            walls[i] = new Segment(new Point(x, y), new Point(x + length * Math.cos(angle), y + length * Math.sin(angle)));
+        }
+        mLinear = new ReferenceModel(walls);
+        mGrid = new GridReferenceModel(cellSize, walls);
+        mDistanceField = new DistanceFieldReferenceModel(mGrid, 1, 12, 0);
+
+        mXs = new double[kQueries];
+        mYs = new double[kQueries];
+        for (int i = 0; i < kQueries; i++) {
+            mXs[i] = rand.nextDouble() * 324;
+            mYs[i] = rand.nextDouble() * 648;
+        }
+    }
+
+    private void query(ReferenceModel model, Blackhole bh) {
+        for (int i = 0; i < kQueries; i++) {
+            model.getClosestPoint(mXs[i], mYs[i], mOut);
+            bh.consume(mOut[0]);
+            bh.consume(mOut[1]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(kQueries)
+    public void linear(Blackhole bh) {
+        query(mLinear, bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(kQueries)
+    public void grid(Blackhole bh) {
+        query(mGrid, bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(kQueries)
+    public void distanceField(Blackhole bh) {
+        query(mDistanceField, bh);
+    }
+}
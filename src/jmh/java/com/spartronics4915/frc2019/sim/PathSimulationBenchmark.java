@@ -0,0 +1,87 @@
+package com.spartronics4915.frc2019.sim;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.spartronics4915.frc2019.paths.PathBuilder.Waypoint;
+import com.spartronics4915.frc2019.paths.PathContainer;
+import com.spartronics4915.lib.control.PathFollower;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.sim.DifferentialDrivePlant;
+
+/**
+ * Wall-clock time to drive a batch of simulated paths, one after another and
+ * spread across every core with a parallel stream, which is what a gain
+ * sweep does. Each run in the batch gets a slightly different drivetrain
+ * (traction and sensor latency), so the runs aren't all identical.
+ * <p>
+ * The parallel/serial ratio is the speedup a sweep gets from the cores on
+ * the machine running the benchmark. Batches of 1000 and 5000 runs show how
+ * both scale with the size of the sweep.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathSimulationBenchmark {
+    private static final double kTimeout = 15.0;
+
+    @Param({"1000", "5000"})
+    public int runs;
+
+    private PathContainer mPath;
+    private PathFollower.Parameters mFollowerParameters;
+    private DifferentialDrivePlant.Parameters[] mPlants;
+
+    @Setup
+    public void setup() {
+        mPath = new WaypointPath("SCurve", Pose2d.identity(), false,
+                new Waypoint(0, 0, 0, 0),
+                new Waypoint(100, 0, 30, 100),
+                new Waypoint(100, 100, 30, 100),
+                new Waypoint(200, 100, 0, 60));
+        mFollowerParameters = PathSimulation.getDefaultFollowerParameters();
+        final DifferentialDrivePlant.Parameters nominal = DrivetrainModel.getParameters();
+        mPlants = new DifferentialDrivePlant.Parameters[runs];
+        for (int i = 0; i < runs; i++) {
+            // Traction from 60% to 100% of nominal, encoder latency from 0 to 20ms
+            final double traction = nominal.max_traction_accel * (0.6 + 0.4 * (i % 10) / 9.0);
+            final double latency = 0.002 * ((i / 10) % 11);
+            mPlants[i] = new DifferentialDrivePlant.Parameters(nominal.wheel_diameter, nominal.quad_codes_per_rev,
+                    nominal.effective_track_width, nominal.kv, nominal.ka, nominal.ks, nominal.max_voltage,
+                    traction, latency, nominal.gyro_latency, nominal.gyro_drift, nominal.dt);
+        }
+    }
+
+    private double simulate(int i) {
+        return PathSimulation.run(mPath, mFollowerParameters, mPlants[i], kTimeout).rms_cross_track_error;
+    }
+
+    @Benchmark
+    public double serial() {
+        double total = 0;
+        for (int i = 0; i < runs; i++) {
+            total += simulate(i);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double parallel() {
+        return IntStream.range(0, runs).parallel().mapToDouble(this::simulate).sum();
+    }
+}
@@ -0,0 +1,69 @@
+package com.spartronics4915.lib.control;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.spartronics4915.frc2019.paths.PathBuilder;
+import com.spartronics4915.frc2019.paths.PathBuilder.Waypoint;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+
+/**
+ * The steering half of PathFollower.update: finding the lookahead point on
+ * the path, and the whole pure pursuit update built on it. The robot sits
+ * part way along the first segment, slightly off the path and turned, with
+ * the lookahead reaching into the arc after it, so nothing is trimmed from
+ * the path between calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PurePursuitBenchmark
+{
+
+    private static final Lookahead kLookahead = new Lookahead(12.0, 24.0, 9.0, 120.0);
+    private static final Pose2d kPose = new Pose2d(60.0, 2.0, Rotation2d.fromDegrees(5.0));
+
+    private Path mPath;
+    private AdaptivePurePursuitController mController;
+
+    @Setup
+    public void setup()
+    {
+        List<Waypoint> waypoints = new ArrayList<>();
+        waypoints.add(new Waypoint(0, 0, 0, 0));
+        waypoints.add(new Waypoint(100, 0, 30, 100));
+        waypoints.add(new Waypoint(100, 100, 30, 100));
+        waypoints.add(new Waypoint(200, 100, 0, 60));
+        mPath = PathBuilder.buildPathFromWaypoints(waypoints);
+        mController = new AdaptivePurePursuitController(PathBuilder.buildPathFromWaypoints(waypoints), false,
+                kLookahead);
+    }
+
+    @Benchmark
+    public Path.TargetPointReport getTargetPoint()
+    {
+        return mPath.getTargetPoint(kPose.getTranslation(), kLookahead);
+    }
+
+    @Benchmark
+    public AdaptivePurePursuitController.Command update()
+    {
+        return mController.update(kPose);
+    }
+}
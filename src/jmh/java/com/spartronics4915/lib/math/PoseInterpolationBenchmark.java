@@ -0,0 +1,55 @@
+package com.spartronics4915.lib.math;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The SE(2) pieces of pose interpolation: log, exp, and the interpolate that
+ * chains them, between two poses one loop of driving apart. Lookups in the
+ * pose history are in PoseHistoryBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseInterpolationBenchmark {
+    private Pose2d mFrom;
+    private Pose2d mTo;
+    private Pose2d mDelta;
+    private Twist2d mTwist;
+
+    @Setup
+    public void setup() {
+        mFrom = new Pose2d(40, 25, Rotation2d.fromDegrees(30));
+        mTwist = new Twist2d(0.5, 0, 0.01);
+        mDelta = Pose2d.exp(mTwist);
+        mTo = mFrom.transformBy(mDelta);
+    }
+
+    @Benchmark
+    public Twist2d log() {
+        return Pose2d.log(mDelta);
+    }
+
+    @Benchmark
+    public Pose2d exp() {
+        return Pose2d.exp(mTwist);
+    }
+
+    @Benchmark
+    public Pose2d interpolate() {
+        return mFrom.interpolate(mTo, 0.4);
+    }
+}
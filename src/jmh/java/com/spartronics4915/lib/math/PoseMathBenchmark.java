@@ -0,0 +1,83 @@
+package com.spartronics4915.lib.math;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The immutable pose math against {@link MutablePose2d} on the two patterns
+ * the robot repeats most: integrating an odometry twist onto the latest pose
+ * (RobotState, every loop) and projecting a scan's worth of lidar points from
+ * the lidar frame into the field. Run with <code>-prof gc</code>; the mutable
+ * versions should show no allocation at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseMathBenchmark {
+    private static final int kPointsPerScan = 360;
+    private static final Twist2d kOdometry = new Twist2d(0.5, 0, 0.01);
+
+    private Pose2d mPose;
+    private MutablePose2d mMutablePose;
+    private final MutableTranslation2d mPoint = new MutableTranslation2d();
+    private double[] mXs;
+    private double[] mYs;
+
+    @Setup
+    public void setup() {
+        mPose = new Pose2d(10, 20, Rotation2d.fromDegrees(30));
+        mMutablePose = new MutablePose2d(mPose);
+        mXs = new double[kPointsPerScan];
+        mYs = new double[kPointsPerScan];
+        for (int i = 0; i < kPointsPerScan; i++) {
+            double radians = Math.toRadians(i);
+            mXs[i] = Math.cos(radians) * 100;
+            mYs[i] = Math.sin(radians) * 100;
+        }
+    }
+
+    @Benchmark
+    public Pose2d immutableIntegrate() {
+        mPose = mPose.transformBy(Pose2d.exp(kOdometry));
+        return mPose;
+    }
+
+    @Benchmark
+    public MutablePose2d mutableIntegrate() {
+        return mMutablePose.transformByExp(kOdometry.dx, kOdometry.dy, kOdometry.dtheta);
+    }
+
+    @Benchmark
+    public double immutableProjectScan() {
+        double sum = 0;
+        for (int i = 0; i < kPointsPerScan; i++) {
+            Translation2d point = mPose.transformBy(Pose2d.fromTranslation(new Translation2d(mXs[i], mYs[i])))
+                    .getTranslation();
+            sum += point.x() + point.y();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double mutableProjectScan() {
+        double sum = 0;
+        for (int i = 0; i < kPointsPerScan; i++) {
+            mMutablePose.applyInto(mXs[i], mYs[i], mPoint);
+            sum += mPoint.x() + mPoint.y();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,82 @@
+package com.spartronics4915.lib.motion;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Profile and setpoint generation as PathFollower uses them every loop. A
+ * "steady" setpoint is the usual case, where the goal hasn't changed and the
+ * cached profile is sampled; a "regenerated" one has a goal that moves every
+ * call, so the profile is rebuilt each time, which is what happens while the
+ * lookahead point keeps moving.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MotionProfileBenchmark
+{
+
+    private static final double kDt = 0.005;
+    private static final MotionProfileConstraints kConstraints = new MotionProfileConstraints(120.0, 120.0);
+    private static final MotionProfileGoal kGoal = new MotionProfileGoal(200.0, 0.0,
+            MotionProfileGoal.CompletionBehavior.OVERSHOOT, 1.0, 1.0);
+    private static final MotionState kAtRest = new MotionState(0.0, 0.0, 0.0, 0.0);
+    // Moving away from the goal, so the profile has to stop, reverse, cruise and stop again
+    private static final MotionState kMovingAway = new MotionState(0.0, 10.0, -60.0, 0.0);
+
+    private SetpointGenerator mGenerator;
+    private MotionState mSetpoint;
+    private double mGoalPos;
+
+    @Setup
+    public void setup()
+    {
+        mGenerator = new SetpointGenerator();
+        mSetpoint = kAtRest;
+        mGoalPos = 200.0;
+    }
+
+    @Benchmark
+    public MotionProfile generateFromRest()
+    {
+        return MotionProfileGenerator.generateProfile(kConstraints, kGoal, kAtRest);
+    }
+
+    @Benchmark
+    public MotionProfile generateMovingAway()
+    {
+        return MotionProfileGenerator.generateProfile(kConstraints, kGoal, kMovingAway);
+    }
+
+    @Benchmark
+    public MotionState steadySetpoint()
+    {
+        SetpointGenerator.Setpoint setpoint = mGenerator.getSetpoint(kConstraints, kGoal, mSetpoint,
+                mSetpoint.t() + kDt);
+        // Start over at the end so every call samples a profile in progress
+        mSetpoint = setpoint.final_setpoint ? kAtRest : setpoint.motion_state;
+        return mSetpoint;
+    }
+
+    @Benchmark
+    public MotionState regeneratedSetpoint()
+    {
+        mGoalPos = mGoalPos >= 300.0 ? 200.0 : mGoalPos + 0.1;
+        MotionProfileGoal goal = new MotionProfileGoal(mGoalPos, 0.0,
+                MotionProfileGoal.CompletionBehavior.OVERSHOOT, 1.0, 1.0);
+        return mGenerator.getSetpoint(kConstraints, goal, kAtRest, kDt).motion_state;
+    }
+}
@@ -0,0 +1,93 @@
+package com.spartronics4915.lib.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+import com.spartronics4915.lib.math.Twist2d;
+
+/**
+ * RobotState's pose history as an {@link InterpolatingTreeMap} against the
+ * {@link InterpolatingPoseBuffer} that replaced it, both full. An "observe"
+ * is what RobotStateEstimator does every loop: read the newest pose and add
+ * one after it. A "lookup" interpolates at a time a few loops in the past, as
+ * the lidar and vision code do. Run with <code>-prof gc</code> to see the
+ * allocation difference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseHistoryBenchmark
+{
+
+    private static final double kDt = 0.005;
+    private static final Pose2d kStep = Pose2d.exp(new Twist2d(0.5, 0, 0.01));
+
+    @Param({"100"})
+    public int capacity;
+
+    private InterpolatingTreeMap<InterpolatingDouble, Pose2d> mTreeMap;
+    private InterpolatingPoseBuffer mBuffer;
+    private double mTreeMapTime;
+    private double mBufferTime;
+
+    @Setup
+    public void setup()
+    {
+        mTreeMap = new InterpolatingTreeMap<>(capacity);
+        mBuffer = new InterpolatingPoseBuffer(capacity);
+        Pose2d pose = new Pose2d(0, 0, Rotation2d.identity());
+        for (int i = 0; i < capacity; i++)
+        {
+            mTreeMap.put(new InterpolatingDouble(i * kDt), pose);
+            mBuffer.put(i * kDt, pose);
+            pose = pose.transformBy(kStep);
+        }
+        mTreeMapTime = mBufferTime = (capacity - 1) * kDt;
+    }
+
+    @Benchmark
+    public Pose2d treeMapObserve()
+    {
+        mTreeMapTime += kDt;
+        Pose2d pose = mTreeMap.lastEntry().getValue().transformBy(kStep);
+        mTreeMap.put(new InterpolatingDouble(mTreeMapTime), pose);
+        return pose;
+    }
+
+    @Benchmark
+    public Pose2d bufferObserve()
+    {
+        mBufferTime += kDt;
+        Pose2d pose = mBuffer.getLatest().transformBy(kStep);
+        mBuffer.put(mBufferTime, pose);
+        return pose;
+    }
+
+    @Benchmark
+    public Pose2d treeMapLookup()
+    {
+        return mTreeMap.getInterpolated(new InterpolatingDouble(mTreeMapTime - 7.5 * kDt));
+    }
+
+    @Benchmark
+    public Pose2d bufferLookup()
+    {
+        return mBuffer.getInterpolated(mBufferTime - 7.5 * kDt);
+    }
+}
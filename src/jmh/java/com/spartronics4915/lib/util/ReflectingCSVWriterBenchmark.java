@@ -0,0 +1,77 @@
+package com.spartronics4915.lib.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.spartronics4915.lib.control.PathFollower;
+
+/**
+ * The CSV logging Drive does while following a path: one
+ * PathFollower.DebugOutput row per loop. "add" is the part that runs in the
+ * loop (reflecting over the fields and formatting the row); "addAndWrite"
+ * also writes the row out, as the periodic flush does in bulk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectingCSVWriterBenchmark
+{
+
+    private File mFile;
+    private ReflectingCSVWriter<PathFollower.DebugOutput> mWriter;
+    private PathFollower.DebugOutput mOutput;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        mFile = File.createTempFile("csv-benchmark", ".csv");
+        mWriter = new ReflectingCSVWriter<>(mFile.getPath(), PathFollower.DebugOutput.class);
+        mOutput = new PathFollower.DebugOutput();
+        mOutput.t = 12.345;
+        mOutput.pose_x = 101.25;
+        mOutput.pose_y = -3.5;
+        mOutput.pose_theta = 0.1234;
+        mOutput.linear_velocity = 87.6;
+        mOutput.cross_track_error = 0.42;
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mWriter.flush();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public String add()
+    {
+        mOutput.t += 0.005;
+        mWriter.add(mOutput);
+        // Drop the row again so the queue doesn't grow without bound
+        return mWriter.mLinesToWrite.pollFirst();
+    }
+
+    @Benchmark
+    public void addAndWrite()
+    {
+        mOutput.t += 0.005;
+        mWriter.add(mOutput);
+        mWriter.write();
+    }
+}
@@ -54,6 +54,8 @@ public class Constants extends ConstantsBase
 
     // Software configuration constants
     public static final double kLooperDt = 0.005;
+    public static final double kLooperSlowDt = 0.1; // for loops that only poll or report
+    public static final int kLooperWorkerThreads = 0; // >0 runs parallel-safe loops concurrently
     
     // Vision
     public static final int kAndroidAppTcpPort = 8254;
@@ -71,16 +73,39 @@ public class Constants extends ConstantsBase
     public static final double kCenterToRearBumperDistance = kCenterToFrontBumperDistance;
     public static final double kCenterToSideBumperDistance = 15.375;
 
+    // Drivetrain model used off-robot by SimulatedTalonSRX4915Drive (see DrivetrainModel)
+    public static final double kSimDriveKv = 0.055; // volts per ips, ~17 fps free speed at 12V
+    public static final double kSimDriveKa = 0.03; // volts per ips/s
+    public static final double kSimDriveKs = 1.0; // volts to break static friction
+    public static final double kSimDriveMaxVoltage = 12.0;
+    public static final double kSimDriveMaxTractionAccel = 1.1 * 386.1; // ips/s: mu * g on carpet
+    public static final double kSimDriveEncoderLatency = 0.010; // seconds, Talon status frame to roboRIO
+    public static final double kSimDriveGyroLatency = 0.010; // seconds
+    public static final double kSimDriveGyroDrift = 0.0; // degrees per second
+    public static final double kSimDriveDt = 0.001; // seconds, the Talon's control loop period
+
     /* LIDAR CONSTANTS -------------------------------------------------------------------- */
     public static final int kLidarScanSize = 400;
     public static final int kLidarNumScansToStore = 10;
     public static final String kLidarPath = "/home/root/chezy_lidar";
+    public static final boolean kLidarUseBinaryFrames = false; // needs a chezy_lidar that accepts kLidarBinaryArg
+    public static final String kLidarBinaryArg = "--binary";
+    public static final int kLidarFramesPerRead = 64; // ~16ms of points at 4000 points/s
     public static final double kLidarRestartTime = 2.5;
 
     public static final String kLidarLogDir = "/home/lvuser/lidarLogs/";
     public static final int kNumLidarLogsToKeep = 10;
+    public static final int kLidarLogQueuePoints = 16384; // ~4s of points the log writer can fall behind by
+    public static final int kLidarLogBlockPoints = 1024; // most points in a log block; a scan is usually one block
     public static final double kLidarICPTranslationEpsilon = 0.01; // convergence threshold for tx,ty
     public static final double kLidarICPAngleEpsilon = 0.01;       // convergence threshold for theta
+    public static final long kLidarICPTimeoutMs = 100;
+    public static final boolean kLidarICPPointToLine = false; // true for point-to-line, once a replay shows it does better
+    public static final int kLidarPoseHistorySize = 50; // ~5s of fixes at one per revolution
+    public static final boolean kLidarFuseIntoOdometry = true;
+    public static final double kLidarFixTranslationGain = 0.2;  // fraction of a fix's position error corrected
+    public static final double kLidarFixRotationGain = 0.1;     // fraction of a fix's heading error corrected
+    public static final double kLidarFixMaxCorrection = 24.0;   // inches; fixes further off than this are ignored
 
     // Pose of the LIDAR frame w.r.t. the robot frame
     public static final double kLidarXOffset = -3.3211;
@@ -133,6 +158,7 @@ public class Constants extends ConstantsBase
     // We're using the CTRE Mag encoders: https://content.vexrobotics.com/vexpro/pdf/Magnetic-Encoder-User's-Guide-01282016.pdf
     public static final int kTurretEncoderCodesPerRev = 13653; // 4096 Quadrature CPR * (10 / 3) Belt reduction
     public static final Translation2d kTurretTargetFieldPosition = new Translation2d(0, 0);
+    public static final double kTurretMaxLidarFixAge = 0.5; // seconds; older fixes fall back to odometry
     public static final class TurretPIDConstants {
         public static final double kP = 1.0, kI = 0.0, kD = 0.0, kF = 0.0;
         public static final double kRampRate = 0.5 /* 0.5 seconds */;
@@ -1,5 +1,6 @@
 package com.spartronics4915.frc2019;
 
+import com.spartronics4915.lib.math.MutablePose2d;
 import com.spartronics4915.lib.math.Pose2d;
 import com.spartronics4915.lib.math.Rotation2d;
 import com.spartronics4915.lib.math.Twist2d;
@@ -68,6 +69,17 @@ public class Kinematics
         return current_pose.transformBy(Pose2d.exp(forward_kinematics));
     }
 
+    /**
+     * Same as above, but moves <code>current_pose</code> in place instead of
+     * making a new pose.
+     */
+    public static MutablePose2d integrateForwardKinematics(MutablePose2d current_pose,
+            Twist2d forward_kinematics)
+    {
+        return current_pose.transformByExp(forward_kinematics.dx, forward_kinematics.dy,
+                forward_kinematics.dtheta);
+    }
+
     /**
      * Class that contains left and right wheel velocities
      */
@@ -9,6 +9,7 @@ import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
 import com.spartronics4915.frc2019.auto.AutoModeExecuter;
+import com.spartronics4915.frc2019.lidar.LidarLocalizer;
 import com.spartronics4915.frc2019.lidar.LidarProcessor;
 import com.spartronics4915.frc2019.lidar.LidarServer;
 import com.spartronics4915.frc2019.loops.Looper;
@@ -154,7 +155,9 @@ public class Robot extends IterativeRobot
 
             mSubsystemManager.registerEnabledLoops(mEnabledLooper);
             mEnabledLooper.register(RobotStateEstimator.getInstance());
-            mEnabledLooper.register(LidarProcessor.getInstance());
+            // Both only poll or report on their own threads' work, so they don't care what else is running
+            mEnabledLooper.registerParallel(LidarProcessor.getInstance(), Constants.kLooperSlowDt);
+            mEnabledLooper.registerParallel(LidarLocalizer.getInstance(), Constants.kLooperSlowDt);
 
             try {
                 SmartDashboard.putString("LIDAR status", "starting");
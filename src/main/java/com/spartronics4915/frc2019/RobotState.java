@@ -1,16 +1,27 @@
 package com.spartronics4915.frc2019;
 
 import com.spartronics4915.frc2019.subsystems.Drive;
+import com.spartronics4915.lib.math.MutablePose2d;
 import com.spartronics4915.lib.math.Pose2d;
 import com.spartronics4915.lib.math.Rotation2d;
 import com.spartronics4915.lib.math.Translation2d;
 import com.spartronics4915.lib.math.Twist2d;
 import com.spartronics4915.lib.util.InterpolatingDouble;
-import com.spartronics4915.lib.util.InterpolatingTreeMap;
+import com.spartronics4915.lib.util.InterpolatingPoseBuffer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
 
+/**
+ * The robot's position on the field over time, as estimated from odometry (and lidar fixes) by the
+ * {@link com.spartronics4915.frc2019.loops.RobotStateEstimator}.
+ * <p>
+ * The estimator is effectively the only writer, and it mustn't be held up by the many threads that read the
+ * estimate. So writes take a {@link StampedLock}'s write lock, while reads never lock at all: they read optimistically,
+ * and if a write happened in the meantime they throw away what they read and try again. Reads inside the optimistic
+ * section must not act on what they read until it's validated, since it may be half-written.
+ */
 public class RobotState {
     private static RobotState instance_ = new RobotState();
 
@@ -24,94 +35,235 @@ public class RobotState {
             new Translation2d(Constants.kLidarXOffset, Constants.kLidarYOffset), Rotation2d.fromDegrees(Constants
             .kLidarYawAngleDegrees));
 
+    private final StampedLock lock_ = new StampedLock();
+
+    // Guarded by lock_
     // FPGATimestamp -> RigidTransform2d or Rotation2d
-    private InterpolatingTreeMap<InterpolatingDouble, Pose2d> field_to_vehicle_;
+    private final InterpolatingPoseBuffer field_to_vehicle_ = new InterpolatingPoseBuffer(kObservationBufferSize);
     private Twist2d vehicle_velocity_predicted_;
     private Twist2d vehicle_velocity_measured_;
     private double distance_driven_;
+    // Added to the gyro angle so heading corrections from lidar fixes stick
+    private Rotation2d gyro_correction_;
+    private int lidar_fixes_applied_;
+    private int lidar_fixes_rejected_;
+    // Where addObservations integrates odometry, so the estimator makes no garbage
+    private final MutablePose2d observation_scratch_ = new MutablePose2d();
 
     private RobotState() {
-        reset(0, new Pose2d());
+        // Don't touch the gyro here, so this can be constructed without hardware
+        resetInternal(0, new Pose2d());
+    }
+
+    /**
+     * @return A stamp to validate an optimistic read with, once there's no write in progress
+     */
+    private long beginRead() {
+        long stamp;
+        while ((stamp = lock_.tryOptimisticRead()) == 0) {
+            Thread.yield(); // writes are short
+        }
+        return stamp;
+    }
+
+    private void resetInternal(double start_time, Pose2d initial_field_to_vehicle) {
+        long stamp = lock_.writeLock();
+        try {
+            field_to_vehicle_.clear();
+            field_to_vehicle_.put(start_time, initial_field_to_vehicle);
+            vehicle_velocity_predicted_ = Twist2d.identity();
+            vehicle_velocity_measured_ = Twist2d.identity();
+            distance_driven_ = 0.0;
+            gyro_correction_ = Rotation2d.identity();
+        } finally {
+            lock_.unlockWrite(stamp);
+        }
     }
 
     /**
      * Resets the field to robot transform (robot's position on the field)
      */
-    public synchronized void reset(double start_time, Pose2d initial_field_to_vehicle) {
-        field_to_vehicle_ = new InterpolatingTreeMap<>(kObservationBufferSize);
-        field_to_vehicle_.put(new InterpolatingDouble(start_time), initial_field_to_vehicle);
+    public void reset(double start_time, Pose2d initial_field_to_vehicle) {
+        resetInternal(start_time, initial_field_to_vehicle);
         Drive.getInstance().setGyroAngle(initial_field_to_vehicle.getRotation());
-        vehicle_velocity_predicted_ = Twist2d.identity();
-        vehicle_velocity_measured_ = Twist2d.identity();
-        distance_driven_ = 0.0;
     }
 
-    public synchronized void resetDistanceDriven() {
-        distance_driven_ = 0.0;
+    public void resetDistanceDriven() {
+        long stamp = lock_.writeLock();
+        try {
+            distance_driven_ = 0.0;
+        } finally {
+            lock_.unlockWrite(stamp);
+        }
     }
 
     /**
      * Returns the robot's position on the field at a certain time. Linearly interpolates between stored robot positions
      * to fill in the gaps.
      */
-    public synchronized Pose2d getFieldToVehicle(double timestamp) {
-        return field_to_vehicle_.getInterpolated(new InterpolatingDouble(timestamp));
+    public Pose2d getFieldToVehicle(double timestamp) {
+        while (true) {
+            long stamp = beginRead();
+            Pose2d pose = field_to_vehicle_.getInterpolated(timestamp);
+            if (lock_.validate(stamp)) {
+                return pose;
+            }
+        }
     }
 
-    public synchronized Map.Entry<InterpolatingDouble, Pose2d> getLatestFieldToVehicle() {
-        return field_to_vehicle_.lastEntry();
+    public Map.Entry<InterpolatingDouble, Pose2d> getLatestFieldToVehicle() {
+        while (true) {
+            long stamp = beginRead();
+            Map.Entry<InterpolatingDouble, Pose2d> entry = field_to_vehicle_.lastEntry();
+            if (lock_.validate(stamp)) {
+                return entry;
+            }
+        }
     }
 
-    public synchronized Pose2d getPredictedFieldToVehicle(double lookahead_time) {
-        return getLatestFieldToVehicle().getValue()
-                .transformBy(Pose2d.exp(vehicle_velocity_predicted_.scaled(lookahead_time)));
+    public Pose2d getPredictedFieldToVehicle(double lookahead_time) {
+        while (true) {
+            long stamp = beginRead();
+            Pose2d latest = field_to_vehicle_.getLatest();
+            Twist2d velocity = vehicle_velocity_predicted_;
+            if (lock_.validate(stamp)) {
+                return latest.transformBy(Pose2d.exp(velocity.scaled(lookahead_time)));
+            }
+        }
     }
 
-    public synchronized Pose2d getFieldToLidar(double timestamp) {
+    public Pose2d getFieldToLidar(double timestamp) {
         return getFieldToVehicle(timestamp).transformBy(kVehicleToLidar);
     }
 
-    public synchronized void addFieldToVehicleObservation(double timestamp, Pose2d observation) {
-        field_to_vehicle_.put(new InterpolatingDouble(timestamp), observation);
+    public void addFieldToVehicleObservation(double timestamp, Pose2d observation) {
+        long stamp = lock_.writeLock();
+        try {
+            field_to_vehicle_.put(timestamp, observation);
+        } finally {
+            lock_.unlockWrite(stamp);
+        }
+    }
+
+    public void addObservations(double timestamp, Twist2d measured_velocity,
+                                Twist2d predicted_velocity) {
+        long stamp = lock_.writeLock();
+        try {
+            field_to_vehicle_.getLatest(observation_scratch_);
+            Kinematics.integrateForwardKinematics(observation_scratch_, measured_velocity);
+            field_to_vehicle_.put(timestamp, observation_scratch_);
+            vehicle_velocity_measured_ = measured_velocity;
+            vehicle_velocity_predicted_ = predicted_velocity;
+        } finally {
+            lock_.unlockWrite(stamp);
+        }
     }
 
-    public synchronized void addObservations(double timestamp, Twist2d measured_velocity,
-                                             Twist2d predicted_velocity) {
-        addFieldToVehicleObservation(timestamp,
-                Kinematics.integrateForwardKinematics(getLatestFieldToVehicle().getValue(), measured_velocity));
-        vehicle_velocity_measured_ = measured_velocity;
-        vehicle_velocity_predicted_ = predicted_velocity;
+    /**
+     * Corrects the robot's position with a lidar fix, using a complementary filter: the estimated pose at the fix's
+     * timestamp is moved part of the way toward the fix, and every observation after the fix is moved along with it,
+     * which replays the odometry since the fix on top of the corrected pose.
+     *
+     * @return false if the fix was ignored, because it's older than the stored observations or too far from them to
+     *         be believable
+     */
+    public boolean addFieldToLidarFix(double timestamp, Pose2d field_to_lidar) {
+        final Pose2d measured = field_to_lidar.transformBy(kVehicleToLidar.inverse());
+        long stamp = lock_.writeLock();
+        try {
+            if (timestamp < field_to_vehicle_.getOldestTimestamp()) {
+                lidar_fixes_rejected_++;
+                return false;
+            }
+            final Pose2d estimated = field_to_vehicle_.getInterpolated(timestamp);
+            if (estimated.getTranslation().distance(measured.getTranslation()) > Constants.kLidarFixMaxCorrection) {
+                lidar_fixes_rejected_++;
+                return false;
+            }
+
+            final Pose2d corrected = new Pose2d(
+                    estimated.getTranslation().interpolate(measured.getTranslation(),
+                            Constants.kLidarFixTranslationGain),
+                    estimated.getRotation().interpolate(measured.getRotation(), Constants.kLidarFixRotationGain));
+            // correction * estimated = corrected, so correction * p replays the odometry from estimated to p on top
+            // of corrected
+            final Pose2d correction = corrected.transformBy(estimated.inverse());
+            field_to_vehicle_.transformAfter(timestamp, correction);
+            field_to_vehicle_.put(timestamp, corrected);
+            gyro_correction_ = gyro_correction_.rotateBy(correction.getRotation());
+            lidar_fixes_applied_++;
+            return true;
+        } finally {
+            lock_.unlockWrite(stamp);
+        }
     }
 
-    public synchronized Twist2d generateOdometryFromSensors(double left_encoder_delta_distance, double
+    public Twist2d generateOdometryFromSensors(double left_encoder_delta_distance, double
             right_encoder_delta_distance, Rotation2d current_gyro_angle) {
-        final Pose2d last_measurement = getLatestFieldToVehicle().getValue();
-        final Twist2d delta = Kinematics.forwardKinematics(last_measurement.getRotation(),
-                left_encoder_delta_distance, right_encoder_delta_distance,
-                current_gyro_angle);
-        distance_driven_ += delta.dx; //do we care about dy here?
-        return delta;
+        long stamp = lock_.writeLock();
+        try {
+            final Pose2d last_measurement = field_to_vehicle_.getLatest();
+            final Twist2d delta = Kinematics.forwardKinematics(last_measurement.getRotation(),
+                    left_encoder_delta_distance, right_encoder_delta_distance,
+                    current_gyro_angle.rotateBy(gyro_correction_));
+            distance_driven_ += delta.dx; //do we care about dy here?
+            return delta;
+        } finally {
+            lock_.unlockWrite(stamp);
+        }
     }
 
-    public synchronized double getDistanceDriven() {
-        return distance_driven_;
+    public double getDistanceDriven() {
+        while (true) {
+            long stamp = beginRead();
+            double distance_driven = distance_driven_;
+            if (lock_.validate(stamp)) {
+                return distance_driven;
+            }
+        }
     }
 
-    public synchronized Twist2d getPredictedVelocity() {
-        return vehicle_velocity_predicted_;
+    public Twist2d getPredictedVelocity() {
+        while (true) {
+            long stamp = beginRead();
+            Twist2d velocity = vehicle_velocity_predicted_;
+            if (lock_.validate(stamp)) {
+                return velocity;
+            }
+        }
     }
 
-    public synchronized Twist2d getMeasuredVelocity() {
-        return vehicle_velocity_measured_;
+    public Twist2d getMeasuredVelocity() {
+        while (true) {
+            long stamp = beginRead();
+            Twist2d velocity = vehicle_velocity_measured_;
+            if (lock_.validate(stamp)) {
+                return velocity;
+            }
+        }
     }
 
     public void outputToSmartDashboard() {
-        Pose2d odometry = getLatestFieldToVehicle().getValue();
+        Pose2d odometry;
+        Twist2d velocity;
+        int fixes_applied, fixes_rejected;
+        while (true) {
+            long stamp = beginRead();
+            odometry = field_to_vehicle_.getLatest();
+            velocity = vehicle_velocity_measured_;
+            fixes_applied = lidar_fixes_applied_;
+            fixes_rejected = lidar_fixes_rejected_;
+            if (lock_.validate(stamp)) {
+                break;
+            }
+        }
         SmartDashboard.putString("RobotState/pose",  
                             odometry.getTranslation().x() + 
                             " " + odometry.getTranslation().y() +
                             " " + odometry.getRotation().getDegrees());
-        SmartDashboard.putNumber("RobotState/velocity", vehicle_velocity_measured_.dx);
-        SmartDashboard.putNumber("RobotState/field_degrees", getLatestFieldToVehicle().getValue().getRotation().getDegrees());
+        SmartDashboard.putNumber("RobotState/velocity", velocity.dx);
+        SmartDashboard.putNumber("RobotState/field_degrees", odometry.getRotation().getDegrees());
+        SmartDashboard.putNumber("RobotState/lidarFixesApplied", fixes_applied);
+        SmartDashboard.putNumber("RobotState/lidarFixesRejected", fixes_rejected);
     }
 }
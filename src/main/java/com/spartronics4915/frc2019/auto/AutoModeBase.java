@@ -1,6 +1,7 @@
 package com.spartronics4915.frc2019.auto;
 
 import com.spartronics4915.frc2019.auto.actions.Action;
+import com.spartronics4915.lib.util.Clock;
 import com.spartronics4915.lib.util.Logger;
 import com.spartronics4915.lib.util.Util;
 
@@ -67,11 +68,10 @@ public abstract class AutoModeBase
         while (isActiveWithThrow() && !action.isFinished())
         {
             action.update();
-            long waitTime = (long) (m_update_rate * 1000.0);
 
             try
             {
-                Thread.sleep(waitTime);
+                Clock.sleep(m_update_rate);
             }
             catch (InterruptedException e)
             {
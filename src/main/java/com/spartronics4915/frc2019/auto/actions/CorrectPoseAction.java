@@ -2,8 +2,7 @@ package com.spartronics4915.frc2019.auto.actions;
 
 import com.spartronics4915.frc2019.RobotState;
 import com.spartronics4915.lib.math.Pose2d;
-
-import edu.wpi.first.wpilibj.Timer;
+import com.spartronics4915.lib.util.Clock;
 
 /**
  * Transform's the robot's current pose by a correction constant. Used to
@@ -27,7 +26,7 @@ public class CorrectPoseAction extends RunOnceAction
     public void runOnce()
     {
         RobotState rs = RobotState.getInstance();
-        rs.reset(Timer.getFPGATimestamp(), rs.getLatestFieldToVehicle().getValue().transformBy(mCorrection));
+        rs.reset(Clock.getTimestamp(), rs.getLatestFieldToVehicle().getValue().transformBy(mCorrection));
     }
 
 }
@@ -4,8 +4,7 @@ import com.spartronics4915.frc2019.Constants;
 import com.spartronics4915.frc2019.RobotState;
 import com.spartronics4915.lib.math.Pose2d;
 import com.spartronics4915.lib.math.Translation2d;
-
-import edu.wpi.first.wpilibj.Timer;
+import com.spartronics4915.lib.util.Clock;
 
 /**
  * Convert field coordinates as if you've started from a different origin.
@@ -43,7 +42,7 @@ public class CorrectPoseForOriginAction extends RunOnceAction
     @Override
     public void runOnce()
     {
-        Pose2d robotTransform = RobotState.getInstance().getFieldToVehicle(Timer.getFPGATimestamp());
+        Pose2d robotTransform = RobotState.getInstance().getFieldToVehicle(Clock.getTimestamp());
         if (mFrom.side != mTo.side) {
             robotTransform = new Pose2d(new Translation2d(Constants.kFieldWidth - robotTransform.getTranslation().x(),
                 robotTransform.getTranslation().y()), robotTransform.getRotation());
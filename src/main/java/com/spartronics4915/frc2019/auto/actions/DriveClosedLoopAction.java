@@ -1,11 +1,10 @@
 package com.spartronics4915.frc2019.auto.actions;
 
 import com.spartronics4915.frc2019.subsystems.Drive;
+import com.spartronics4915.lib.util.Clock;
 import com.spartronics4915.lib.util.DriveSignal;
 import com.spartronics4915.lib.util.Logger;
 
-import edu.wpi.first.wpilibj.Timer;
-
 public class DriveClosedLoopAction implements Action
 {
     Drive mDrive = Drive.getInstance();
@@ -25,7 +24,7 @@ public class DriveClosedLoopAction implements Action
     @Override
     public boolean isFinished()
     {
-        return Timer.getFPGATimestamp() - mStartTimeSeconds >= mTimeToRunSeconds;
+        return Clock.getTimestamp() - mStartTimeSeconds >= mTimeToRunSeconds;
     }
 
     @Override
@@ -42,7 +41,7 @@ public class DriveClosedLoopAction implements Action
     public void start()
     {
         Logger.notice("DriveClosedLoopAction " + mTimeToRunSeconds + " seconds");
-        mStartTimeSeconds = Timer.getFPGATimestamp();
+        mStartTimeSeconds = Clock.getTimestamp();
         if(mClosedLoopMode == "velocity")
             mDrive.setVelocitySetpoint(mSetpoint.getLeft(), mSetpoint.getRight());
         else
@@ -1,10 +1,9 @@
 package com.spartronics4915.frc2019.auto.actions;
 
 import com.spartronics4915.frc2019.subsystems.Drive;
+import com.spartronics4915.lib.util.Clock;
 import com.spartronics4915.lib.util.DriveSignal;
 
-import edu.wpi.first.wpilibj.Timer;
-
 public class DriveOpenLoopDurationAction implements Action
 {
     Drive mDrive = Drive.getInstance();
@@ -20,7 +19,7 @@ public class DriveOpenLoopDurationAction implements Action
     @Override
     public boolean isFinished()
     {
-        return Timer.getFPGATimestamp() - mStartTimeSeconds >= mTimeToRunSeconds;
+        return Clock.getTimestamp() - mStartTimeSeconds >= mTimeToRunSeconds;
     }
 
     @Override
@@ -37,7 +36,7 @@ public class DriveOpenLoopDurationAction implements Action
     @Override
     public void start()
     {
-        mStartTimeSeconds = Timer.getFPGATimestamp();
+        mStartTimeSeconds = Clock.getTimestamp();
         mDrive.setOpenLoop(mSetpoint);
     }
     
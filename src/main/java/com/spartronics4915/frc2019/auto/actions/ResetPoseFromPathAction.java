@@ -4,8 +4,7 @@ import com.spartronics4915.frc2019.RobotState;
 import com.spartronics4915.frc2019.paths.PathContainer;
 import com.spartronics4915.frc2019.subsystems.Drive;
 import com.spartronics4915.lib.math.Pose2d;
-
-import edu.wpi.first.wpilibj.Timer;
+import com.spartronics4915.lib.util.Clock;
 
 /**
  * Resets the robot's current pose based on the starting pose stored in the
@@ -29,7 +28,7 @@ public class ResetPoseFromPathAction extends RunOnceAction
     public synchronized void runOnce()
     {
         Pose2d startPose = mPathContainer.getStartPose();
-        RobotState.getInstance().reset(Timer.getFPGATimestamp(), startPose);
+        RobotState.getInstance().reset(Clock.getTimestamp(), startPose);
         Drive.getInstance().setGyroAngle(startPose.getRotation());
     }
 }
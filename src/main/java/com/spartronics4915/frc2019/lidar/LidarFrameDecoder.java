@@ -0,0 +1,110 @@
+package com.spartronics4915.frc2019.lidar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Decodes the fixed-size binary frames that <code>chezy_lidar</code> writes
+ * when it is started with {@link com.spartronics4915.frc2019.Constants#kLidarBinaryArg}.
+ * <p>
+ * Frames are read through a single direct {@link ByteBuffer} that is reused
+ * for the lifetime of the decoder, and each field is handed to the
+ * {@link Listener} as a primitive, so decoding creates no garbage per point.
+ * <p>
+ * Frame layout (little-endian, {@link #kFrameSize} bytes):
+ *
+ * <pre>
+ * int64   timestamp (ms, system clock of the chezy_lidar process)
+ * float64 angle (degrees)
+ * float64 distance (mm)
+ * int32   flags ({@link #kFlagNewScan} set on the first point of a revolution)
+ * int32   reserved (padding)
+ * </pre>
+ */
+public class LidarFrameDecoder {
+    public static final int kFrameSize = 32;
+    public static final int kFlagNewScan = 0x1;
+
+    /**
+     * Receives each decoded point.
+     */
+    public interface Listener {
+        public void onPoint(long timestampMs, double angle, double distance, boolean newScan);
+    }
+
+    private final ReadableByteChannel mChannel;
+    private final ByteBuffer mBuffer;
+    private final Listener mListener;
+
+    /**
+     * @param channel       Source of frames (usually the chezy_lidar stdout)
+     * @param framesPerRead Capacity of the read buffer, in frames
+     * @param listener      Called once per decoded point, on the reading thread
+     */
+    public LidarFrameDecoder(ReadableByteChannel channel, int framesPerRead, Listener listener) {
+        mChannel = channel;
+        mBuffer = ByteBuffer.allocateDirect(framesPerRead * kFrameSize).order(ByteOrder.LITTLE_ENDIAN);
+        mListener = listener;
+    }
+
+    /**
+     * Performs a single read from the channel and passes every complete frame
+     * to the listener. A partial frame at the end of the read is kept for the
+     * next call.
+     *
+     * @return The number of frames decoded, or -1 at end of stream
+     */
+    public int readFrames() throws IOException {
+        if (!read()) {
+            return -1;
+        }
+        return decode();
+    }
+
+    /**
+     * Performs a single (possibly blocking) read from the channel into the
+     * frame buffer without decoding anything.
+     *
+     * @return false at end of stream
+     */
+    public boolean read() throws IOException {
+        return mChannel.read(mBuffer) >= 0;
+    }
+
+    /**
+     * Passes every complete frame in the buffer to the listener, keeping any
+     * trailing partial frame for the next {@link #read()}.
+     *
+     * @return The number of frames decoded
+     */
+    public int decode() {
+        mBuffer.flip();
+        int frames = 0;
+        while (mBuffer.remaining() >= kFrameSize) {
+            long timestamp = mBuffer.getLong();
+            double angle = mBuffer.getDouble();
+            double distance = mBuffer.getDouble();
+            int flags = mBuffer.getInt();
+            mBuffer.getInt(); // reserved
+            mListener.onPoint(timestamp, angle, distance, (flags & kFlagNewScan) != 0);
+            frames++;
+        }
+        mBuffer.compact();
+        return frames;
+    }
+
+    /**
+     * Writes a single frame into <code>dst</code>, which must be little-endian.
+     * This is the inverse of {@link #readFrames()}; it exists for the stand-in
+     * producer used off-robot and for benchmarks.
+     */
+    public static void encode(ByteBuffer dst, long timestampMs, double angle, double distance, boolean newScan) {
+        dst.putLong(timestampMs);
+        dst.putDouble(angle);
+        dst.putDouble(distance);
+        dst.putInt(newScan ? kFlagNewScan : 0);
+        dst.putInt(0);
+    }
+}
@@ -0,0 +1,252 @@
+package com.spartronics4915.frc2019.lidar;
+
+import com.spartronics4915.frc2019.Constants;
+import com.spartronics4915.frc2019.RobotState;
+import com.spartronics4915.frc2019.lidar.icp.ICP;
+import com.spartronics4915.frc2019.lidar.icp.NoMatchingPointsException;
+import com.spartronics4915.frc2019.lidar.icp.ReferenceModel;
+import com.spartronics4915.frc2019.loops.Loop;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.util.CrashTrackingRunnable;
+import com.spartronics4915.lib.util.InterpolatingDouble;
+import com.spartronics4915.lib.util.InterpolatingTreeMap;
+import com.spartronics4915.lib.util.LatencyHistogram;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs ICP on its own thread every time the {@link LidarProcessor} completes
+ * a scan, and keeps a timestamped history of the resulting lidar poses that
+ * can be interpolated like {@link RobotState}'s.
+ * <p>
+ * The lidar reader only flips a flag and unparks the worker when a scan
+ * completes, so it never waits on a solve. If scans complete faster than
+ * they can be solved, the worker skips ahead to the newest one and the
+ * skipped scans are counted as dropped. Readers of the pose history only
+ * wait for a map lookup, so the main {@link com.spartronics4915.frc2019.loops.Looper}
+ * never waits on a solve either.
+ * <p>
+ * Each new fix is also left for {@link #takeNewFix()}, which
+ * {@link com.spartronics4915.frc2019.loops.RobotStateEstimator} uses to fuse
+ * fixes into {@link RobotState}'s odometry.
+ * <p>
+ * As a {@link Loop}, this starts and stops the worker and publishes solve
+ * statistics (solves/s, p50/p99/max solve time, dropped scans) once a second.
+ */
+public class LidarLocalizer implements Loop {
+    private static LidarLocalizer mInstance = null;
+
+    public static LidarLocalizer getInstance() {
+        if (mInstance == null) {
+            mInstance = new LidarLocalizer();
+        }
+        return mInstance;
+    }
+
+    private static final double kReportPeriod = 1.0; // seconds
+
+    private final RobotState mRobotState = RobotState.getInstance();
+    private final ICP mICP = new ICP(ReferenceModel.TOWER, Constants.kLidarICPTimeoutMs);
+
+    // Only touched by the worker thread
+    private final LidarScan mCloud = new LidarScan();
+
+    // Set when a scan completes, cleared when the worker picks it up
+    private final AtomicBoolean mScanPending = new AtomicBoolean(false);
+    private final AtomicLong mScansCompleted = new AtomicLong();
+    private final AtomicLong mScansDropped = new AtomicLong();
+
+    // The newest fix nobody has taken yet
+    private final AtomicReference<Map.Entry<InterpolatingDouble, Pose2d>> mNewFix = new AtomicReference<>();
+
+    private volatile Thread mThread = null;
+    private volatile boolean mRunning = false;
+
+    // Guarded by this
+    private InterpolatingTreeMap<InterpolatingDouble, Pose2d> mFieldToLidar =
+            new InterpolatingTreeMap<>(Constants.kLidarPoseHistorySize);
+    private long mSolves = 0;
+    private long mFailedSolves = 0;
+
+    private final LatencyHistogram mSolveTimes = new LatencyHistogram();
+
+    // Only touched by onLoop()
+    private final LatencyHistogram mReportSolveTimes = new LatencyHistogram();
+    private double mLastReportTime = Double.NaN;
+    private long mLastReportSolves = 0;
+
+    private LidarLocalizer() {
+    }
+
+    /**
+     * Called by {@link LidarProcessor} on the lidar reader thread each time a
+     * scan completes. Never blocks.
+     */
+    void onScanCompleted() {
+        mScansCompleted.incrementAndGet();
+        if (mScanPending.getAndSet(true)) {
+            mScansDropped.incrementAndGet(); // the worker never got to the last one
+        }
+        Thread thread = mThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private final CrashTrackingRunnable mWorker = new CrashTrackingRunnable() {
+        @Override
+        public void runCrashTracked() {
+            while (mRunning) {
+                if (!mScanPending.getAndSet(false)) {
+                    LockSupport.park(LidarLocalizer.this);
+                    continue;
+                }
+                solve();
+            }
+        }
+    };
+
+    private void solve() {
+        long start = System.nanoTime();
+        double timestamp = LidarProcessor.getInstance().copyCulledPoints(mCloud);
+        if (mCloud.size() == 0) {
+            return;
+        }
+
+        Pose2d fix;
+        try {
+            fix = solveFieldToLidar(mICP, mCloud.getXs(), mCloud.getYs(), mCloud.size(),
+                    mRobotState.getFieldToLidar(timestamp));
+        } catch (NoMatchingPointsException e) {
+            synchronized (this) {
+                mFailedSolves++;
+            }
+            return;
+        }
+        mSolveTimes.record(System.nanoTime() - start);
+
+        InterpolatingDouble key = new InterpolatingDouble(timestamp);
+        synchronized (this) {
+            mFieldToLidar.put(key, fix);
+            mSolves++;
+        }
+        mNewFix.set(new AbstractMap.SimpleImmutableEntry<>(key, fix));
+    }
+
+    /**
+     * Finds the lidar's pose on the field from a cloud that odometry has
+     * already placed in the field frame (see {@link LidarProcessor}), with
+     * the lidar at <code>guess</code>. The cloud is off from the model by
+     * however far off the guess was, so ICP solves from the identity for that
+     * correction, which is then applied to the guess.
+     *
+     * @return The field to lidar transform
+     */
+    public static Pose2d solveFieldToLidar(ICP icp, double[] xs, double[] ys, int n, Pose2d guess)
+            throws NoMatchingPointsException {
+        return icp.solve(xs, ys, n, null).inverse().toPose2d().transformBy(guess);
+    }
+
+    /**
+     * @return The lidar's pose on the field at <code>timestamp</code>,
+     *         interpolated between fixes, or null if there are no fixes yet
+     */
+    public synchronized Pose2d getFieldToLidar(double timestamp) {
+        return mFieldToLidar.getInterpolated(new InterpolatingDouble(timestamp));
+    }
+
+    /**
+     * @return The newest fix, or null if there are no fixes yet
+     */
+    public synchronized Map.Entry<InterpolatingDouble, Pose2d> getLatestFieldToLidar() {
+        return mFieldToLidar.lastEntry();
+    }
+
+    /**
+     * Takes the newest fix, if there's been one since the last call. Fixes
+     * that arrive faster than they're taken are replaced by newer ones.
+     *
+     * @return The fix, or null if there isn't a new one
+     */
+    public Map.Entry<InterpolatingDouble, Pose2d> takeNewFix() {
+        return mNewFix.getAndSet(null);
+    }
+
+    public synchronized void reset() {
+        mFieldToLidar = new InterpolatingTreeMap<>(Constants.kLidarPoseHistorySize);
+        mNewFix.set(null);
+    }
+
+    public long getScansDropped() {
+        return mScansDropped.get();
+    }
+
+    @Override
+    public synchronized void onStart(double timestamp) {
+        if (mThread != null) {
+            return;
+        }
+        mRunning = true;
+        mScanPending.set(false);
+        mThread = new Thread(mWorker, "LidarLocalizer");
+        mThread.setDaemon(true);
+        mThread.start();
+        mLastReportTime = timestamp;
+    }
+
+    @Override
+    public void onLoop(double timestamp) {
+        if (timestamp - mLastReportTime < kReportPeriod) {
+            return;
+        }
+        mSolveTimes.drainTo(mReportSolveTimes);
+        long solves, failedSolves;
+        Map.Entry<InterpolatingDouble, Pose2d> latest;
+        synchronized (this) {
+            solves = mSolves;
+            failedSolves = mFailedSolves;
+            latest = mFieldToLidar.lastEntry();
+        }
+
+        SmartDashboard.putNumber("Lidar/solvesPerSecond", (solves - mLastReportSolves) / (timestamp - mLastReportTime));
+        SmartDashboard.putNumber("Lidar/solveP50Ms", mReportSolveTimes.getPercentile(50) / 1e6);
+        SmartDashboard.putNumber("Lidar/solveP99Ms", mReportSolveTimes.getPercentile(99) / 1e6);
+        SmartDashboard.putNumber("Lidar/solveMaxMs", mReportSolveTimes.getMax() / 1e6);
+        SmartDashboard.putNumber("Lidar/droppedScans", mScansDropped.get());
+        SmartDashboard.putNumber("Lidar/completedScans", mScansCompleted.get());
+        SmartDashboard.putNumber("Lidar/failedSolves", failedSolves);
+        if (latest != null) {
+            Pose2d pose = latest.getValue();
+            SmartDashboard.putString("Lidar/pose", pose.getTranslation().x() + " " + pose.getTranslation().y()
+                    + " " + pose.getRotation().getDegrees());
+        }
+
+        mLastReportTime = timestamp;
+        mLastReportSolves = solves;
+    }
+
+    @Override
+    public void onStop(double timestamp) {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+            mRunning = false;
+            mThread = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
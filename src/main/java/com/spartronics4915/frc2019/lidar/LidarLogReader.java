@@ -0,0 +1,366 @@
+package com.spartronics4915.frc2019.lidar;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+
+/**
+ * Reads logs written by {@link LidarLogWriter}, a block at a time. A log is
+ * (all big-endian):
+ * <pre>
+ * int magic, int version
+ * blocks, each:
+ *     int pointCount, int compressedLength, int flags,
+ *     long firstMicros, long lastMicros,
+ *     double firstX, firstY, firstDegrees, lastX, lastY, lastDegrees,
+ *     compressedLength bytes of deflated points
+ * int 0
+ * index entries, one per block:
+ *     long offset, long firstMicros, long lastMicros, int pointCount
+ * long indexOffset, int blockCount, int indexMagic
+ * </pre>
+ * Times are FPGA time in microseconds. The poses are the robot's field pose
+ * at the block's first and last points. Bit 0 of the flags says the block's
+ * first point starts a scan. Each point is three zigzag varints: the change
+ * in time (µs), angle (1/100ths of a degree), and distance (1/4 mm) from the
+ * point before it in the block, or from 0 (and the block's first time) for
+ * the first point.
+ * <p>
+ * The log's index is read when it's opened, so any block can be read
+ * without reading the ones before it. A log that wasn't closed has no index
+ * and ends in zeros or partway through a block; the index is rebuilt by
+ * walking the block headers up to there.
+ * <p>
+ * Not thread safe.
+ */
+public class LidarLogReader implements Closeable {
+    public interface PointListener {
+        /**
+         * @param timestamp FPGA time in seconds
+         * @param angle degrees
+         * @param distance millimeters
+         * @param newScan whether this point starts a scan
+         */
+        void onPoint(double timestamp, double angle, double distance, boolean newScan);
+    }
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final boolean mIndexed;
+
+    // The index
+    private long[] mOffsets;
+    private long[] mFirstMicros;
+    private long[] mLastMicros;
+    private int[] mPoints;
+    private int mBlocks = 0;
+
+    private final ByteBuffer mHeader = ByteBuffer.allocate(LidarLogWriter.kBlockHeaderBytes);
+    private final Inflater mInflater = new Inflater();
+    private byte[] mCompressed = new byte[0];
+    private byte[] mRaw = new byte[0];
+    private int mRawPosition;
+
+    public LidarLogReader(File file) throws IOException {
+        mFile = file;
+        mRandomAccessFile = new RandomAccessFile(file, "r");
+        mChannel = mRandomAccessFile.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(LidarLogWriter.kFileHeaderBytes);
+            readFully(header, 0);
+            if (header.getInt() != LidarLogWriter.kMagic) {
+                throw new IOException(file + " isn't a lidar log");
+            }
+            int version = header.getInt();
+            if (version != LidarLogWriter.kVersion) {
+                throw new IOException(file + " is a version " + version + " lidar log");
+            }
+            mIndexed = readIndex();
+            if (!mIndexed) {
+                rebuildIndex();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the index from the end of the file.
+     *
+     * @return false if there isn't one
+     */
+    private boolean readIndex() throws IOException {
+        final long length = mChannel.size();
+        if (length < LidarLogWriter.kFileHeaderBytes + 4 + LidarLogWriter.kTrailerBytes) {
+            return false;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(LidarLogWriter.kTrailerBytes);
+        readFully(trailer, length - LidarLogWriter.kTrailerBytes);
+        long indexOffset = trailer.getLong();
+        int blocks = trailer.getInt();
+        if (trailer.getInt() != LidarLogWriter.kIndexMagic || blocks < 0
+                || indexOffset + (long) blocks * LidarLogWriter.kIndexEntryBytes
+                        != length - LidarLogWriter.kTrailerBytes) {
+            return false;
+        }
+        ByteBuffer index = ByteBuffer.allocate(blocks * LidarLogWriter.kIndexEntryBytes);
+        readFully(index, indexOffset);
+        allocateIndex(blocks);
+        for (int b = 0; b < blocks; b++) {
+            addToIndex(index.getLong(), index.getLong(), index.getLong(), index.getInt());
+        }
+        return true;
+    }
+
+    /**
+     * Walks the block headers from the start of the file until the log ends.
+     */
+    private void rebuildIndex() throws IOException {
+        final long length = mChannel.size();
+        allocateIndex(1024);
+        long offset = LidarLogWriter.kFileHeaderBytes;
+        while (offset + LidarLogWriter.kBlockHeaderBytes <= length) {
+            readHeader(offset);
+            int points = mHeader.getInt(0);
+            int compressedLength = mHeader.getInt(4);
+            long next = offset + LidarLogWriter.kBlockHeaderBytes + compressedLength;
+            if (points <= 0 || compressedLength <= 0 || next > length) {
+                break; // the end marker, the zeros after a log that wasn't closed, or a torn block
+            }
+            addToIndex(offset, mHeader.getLong(12), mHeader.getLong(20), points);
+            offset = next;
+        }
+    }
+
+    private void allocateIndex(int blocks) {
+        mOffsets = new long[Math.max(blocks, 1)];
+        mFirstMicros = new long[mOffsets.length];
+        mLastMicros = new long[mOffsets.length];
+        mPoints = new int[mOffsets.length];
+    }
+
+    private void addToIndex(long offset, long firstMicros, long lastMicros, int points) {
+        if (mBlocks == mOffsets.length) {
+            mOffsets = Arrays.copyOf(mOffsets, mBlocks * 2);
+            mFirstMicros = Arrays.copyOf(mFirstMicros, mBlocks * 2);
+            mLastMicros = Arrays.copyOf(mLastMicros, mBlocks * 2);
+            mPoints = Arrays.copyOf(mPoints, mBlocks * 2);
+        }
+        mOffsets[mBlocks] = offset;
+        mFirstMicros[mBlocks] = firstMicros;
+        mLastMicros[mBlocks] = lastMicros;
+        mPoints[mBlocks] = points;
+        mBlocks++;
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (mChannel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of " + mFile);
+            }
+        }
+        buf.flip();
+    }
+
+    private void readHeader(long offset) throws IOException {
+        readFully(mHeader, offset);
+    }
+
+    /**
+     * @return Whether the log was closed properly, so its index was read
+     *         rather than rebuilt
+     */
+    public boolean isIndexed() {
+        return mIndexed;
+    }
+
+    public int getBlockCount() {
+        return mBlocks;
+    }
+
+    /**
+     * @return The FPGA timestamp of a block's first point, in seconds
+     */
+    public double getFirstTimestamp(int block) {
+        return mFirstMicros[block] / 1e6;
+    }
+
+    /**
+     * @return The FPGA timestamp of a block's last point, in seconds
+     */
+    public double getLastTimestamp(int block) {
+        return mLastMicros[block] / 1e6;
+    }
+
+    public int getPointCount(int block) {
+        return mPoints[block];
+    }
+
+    /**
+     * @return The total number of points in the log
+     */
+    public long getPointCount() {
+        long total = 0;
+        for (int b = 0; b < mBlocks; b++) {
+            total += mPoints[b];
+        }
+        return total;
+    }
+
+    /**
+     * @return Whether a block's first point starts a scan
+     */
+    public boolean startsScan(int block) throws IOException {
+        readHeader(mOffsets[block]);
+        return (mHeader.getInt(8) & LidarLogWriter.kFlagNewScan) != 0;
+    }
+
+    /**
+     * @return The robot's field pose at a block's first point
+     */
+    public Pose2d getFirstPose(int block) throws IOException {
+        readHeader(mOffsets[block]);
+        return getPose(28);
+    }
+
+    /**
+     * @return The robot's field pose at a block's last point
+     */
+    public Pose2d getLastPose(int block) throws IOException {
+        readHeader(mOffsets[block]);
+        return getPose(52);
+    }
+
+    private Pose2d getPose(int index) {
+        return new Pose2d(mHeader.getDouble(index), mHeader.getDouble(index + 8),
+                Rotation2d.fromDegrees(mHeader.getDouble(index + 16)));
+    }
+
+    /**
+     * Finds the block a timestamp falls in, by binary search of the index.
+     *
+     * @return The last block that starts at or before <code>timestamp</code>,
+     *         or 0 if it's before the first block
+     */
+    public int findBlock(double timestamp) {
+        final long micros = Math.round(timestamp * 1e6);
+        int lo = 0, hi = mBlocks - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mFirstMicros[mid] <= micros) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Calls <code>listener</code> with each point in a block, in order.
+     *
+     * @return How many points there were
+     */
+    public int readBlock(int block, PointListener listener) throws IOException {
+        final long offset = mOffsets[block];
+        readHeader(offset);
+        final int points = mHeader.getInt(0);
+        final int compressedLength = mHeader.getInt(4);
+        final boolean startsScan = (mHeader.getInt(8) & LidarLogWriter.kFlagNewScan) != 0;
+        long micros = mHeader.getLong(12);
+
+        if (mCompressed.length < compressedLength) {
+            mCompressed = new byte[compressedLength];
+        }
+        ByteBuffer compressed = ByteBuffer.wrap(mCompressed, 0, compressedLength);
+        while (compressed.hasRemaining()) {
+            if (mChannel.read(compressed, offset + LidarLogWriter.kBlockHeaderBytes + compressed.position()) < 0) {
+                throw new EOFException("Unexpected end of " + mFile);
+            }
+        }
+        final int maxRawLength = points * 3 * LidarLogWriter.kMaxVarintBytes;
+        if (mRaw.length < maxRawLength) {
+            mRaw = new byte[maxRawLength];
+        }
+        mInflater.reset();
+        mInflater.setInput(mCompressed, 0, compressedLength);
+        final int rawLength;
+        try {
+            rawLength = mInflater.inflate(mRaw, 0, maxRawLength);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block " + block + " in " + mFile, e);
+        }
+
+        mRawPosition = 0;
+        long angle = 0, distance = 0;
+        for (int p = 0; p < points; p++) {
+            if (mRawPosition >= rawLength) {
+                throw new IOException("Short block " + block + " in " + mFile);
+            }
+            micros += unzigzag(getVarint());
+            angle += unzigzag(getVarint());
+            distance += unzigzag(getVarint());
+            listener.onPoint(micros / 1e6, angle / LidarLogWriter.kAngleUnits,
+                    distance / LidarLogWriter.kDistanceUnits, p == 0 && startsScan);
+        }
+        return points;
+    }
+
+    private long getVarint() {
+        long v = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = mRaw[mRawPosition++];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Calls <code>listener</code> with every point in the log, in order.
+     *
+     * @return How many points there were
+     */
+    public long forEachPoint(PointListener listener) throws IOException {
+        long total = 0;
+        for (int b = 0; b < mBlocks; b++) {
+            total += readBlock(b, listener);
+        }
+        return total;
+    }
+
+    /**
+     * Calls <code>listener</code> with every point in a log, in order.
+     *
+     * @return How many points there were
+     */
+    public static long read(File file, PointListener listener) throws IOException {
+        try (LidarLogReader reader = new LidarLogReader(file)) {
+            return reader.forEachPoint(listener);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInflater.end();
+        mRandomAccessFile.close();
+    }
+}
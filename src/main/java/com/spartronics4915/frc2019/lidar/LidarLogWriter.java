@@ -0,0 +1,367 @@
+package com.spartronics4915.frc2019.lidar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleFunction;
+import java.util.zip.Deflater;
+
+import com.spartronics4915.lib.math.Pose2d;
+
+/**
+ * Logs raw lidar points to a file from a background thread, so the lidar
+ * reader thread never waits on compression or the disk.
+ * <p>
+ * {@link #log} copies a point into a preallocated ring of primitives and
+ * returns. It's the only thing the reader thread does. If the ring is full
+ * because the writer has fallen behind, the point is dropped and counted
+ * rather than waited for.
+ * <p>
+ * The writer thread drains the ring and writes a block per scan, so a replay
+ * can seek straight to a scan. A scan longer than <code>blockPoints</code>
+ * points is split across blocks, and a partial scan is written anyway once
+ * it's waited long enough, so a stalled lidar still reaches the disk. Each
+ * block also records the robot's pose at its first and last points, as the
+ * pose source reports them when the block is written. Blocks are appended
+ * through a memory-mapped window, which is remapped further along as it
+ * fills, and {@link #close} ends the file with an index of the blocks. The
+ * format is described in {@link LidarLogReader}.
+ * <p>
+ * The mapping extends the file with zeros ahead of what's been written. If
+ * the robot loses power before {@link #close}, the file ends in zeros. Those
+ * read as the end of the log, and the reader rebuilds the index from the
+ * block headers.
+ * <p>
+ * {@link #log} must only be called from one thread at a time.
+ */
+public class LidarLogWriter {
+    public static final int kMagic = 0x4C494452; // "LIDR"
+    public static final int kIndexMagic = 0x4C494458; // "LIDX"
+    public static final int kVersion = 2;
+    public static final int kFileHeaderBytes = 8; // magic, version
+    // point count, compressed length, flags, first and last micros, first and last pose (x, y, degrees)
+    public static final int kBlockHeaderBytes = 4 + 4 + 4 + 8 + 8 + 6 * 8;
+    public static final int kIndexEntryBytes = 8 + 8 + 8 + 4; // offset, first and last micros, point count
+    public static final int kTrailerBytes = 8 + 4 + 4; // index offset, block count, index magic
+    public static final int kFlagNewScan = 1; // the block's first point starts a scan
+
+    public static final double kAngleUnits = 100; // per degree
+    public static final double kDistanceUnits = 4; // per millimeter
+    public static final int kMaxVarintBytes = 10;
+
+    private static final long kMapWindowBytes = 4 << 20;
+    private static final long kIdleParkNanos = 10_000_000; // how often an idle writer looks for points
+    private static final double kMaxBlockAge = 0.5; // seconds a partial scan can wait for more points
+
+    private static final ThreadMXBean sThreadMXBean = ManagementFactory.getThreadMXBean();
+
+    // The ring: point n lives at index n % capacity
+    private final int mCapacity;
+    private final long[] mMicros;
+    private final int[] mAngles;
+    private final int[] mDistances;
+    private final boolean[] mNewScans;
+    private volatile long mProduced = 0; // written only by the producer
+    private volatile long mConsumed = 0; // written only by the writer thread
+    private volatile long mDropped = 0; // written only by the producer
+
+    // Writer thread state
+    private final DoubleFunction<Pose2d> mPoseSource;
+    private final int mBlockPoints;
+    private final byte[] mRaw;
+    private final byte[] mCompressed;
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private MappedByteBuffer mMap;
+    private long mMapStart = 0;
+    private long mLastBlockNanos = System.nanoTime();
+    // The block being encoded
+    private int mBlockSize = 0;
+    private int mRawLength = 0;
+    private boolean mBlockStartsScan;
+    private long mBlockFirstMicros, mPrevMicros;
+    private int mPrevAngle, mPrevDistance;
+    // The index: offset, first micros, last micros for each block
+    private long[] mIndex = new long[3 * 1024];
+    private int[] mIndexPoints = new int[1024];
+    private int mBlocks = 0;
+
+    private volatile long mBytesWritten = 0;
+    private volatile boolean mRunning = true;
+    private volatile long mFinishedCpuNanos = -1; // the writer thread's CPU time, once it's exited
+
+    private final Thread mThread;
+
+    /**
+     * Creates (or truncates) <code>file</code> and starts the writer thread.
+     *
+     * @param poseSource the robot's field pose at an FPGA timestamp, e.g.
+     *        <code>RobotState.getInstance()::getFieldToVehicle</code>, or null
+     *        to log identity poses; called on the writer thread
+     * @param capacityPoints how many points the ring holds; at 4000 points/s,
+     *        16384 rides out a 4s stall
+     * @param blockPoints the most points in one block
+     */
+    public LidarLogWriter(File file, DoubleFunction<Pose2d> poseSource, int capacityPoints, int blockPoints)
+            throws IOException {
+        mCapacity = capacityPoints;
+        mMicros = new long[capacityPoints];
+        mAngles = new int[capacityPoints];
+        mDistances = new int[capacityPoints];
+        mNewScans = new boolean[capacityPoints];
+        mPoseSource = poseSource;
+        mBlockPoints = blockPoints;
+        mRaw = new byte[blockPoints * 3 * kMaxVarintBytes];
+        // Deflate can grow incompressible data slightly
+        mCompressed = new byte[mRaw.length + mRaw.length / 1000 + 64];
+
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        mMap = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, kMapWindowBytes);
+        mMap.putInt(kMagic);
+        mMap.putInt(kVersion);
+        mBytesWritten = mMap.position();
+
+        mThread = new Thread(this::run, "LidarLogWriter");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Queues a point for the log. Never blocks.
+     *
+     * @param timestamp FPGA time in seconds
+     * @param angle degrees
+     * @param distance millimeters, as the lidar reports it
+     * @param newScan whether this point starts a scan
+     * @return false if the queue was full and the point was dropped
+     */
+    public boolean log(double timestamp, double angle, double distance, boolean newScan) {
+        final long produced = mProduced;
+        if (produced - mConsumed >= mCapacity) {
+            mDropped++;
+            return false;
+        }
+        int i = (int) (produced % mCapacity);
+        mMicros[i] = Math.round(timestamp * 1e6);
+        mAngles[i] = (int) Math.round(angle * kAngleUnits);
+        mDistances[i] = (int) Math.round(distance * kDistanceUnits);
+        mNewScans[i] = newScan;
+        mProduced = produced + 1; // publishes the point to the writer
+        return true;
+    }
+
+    private void run() {
+        try {
+            while (mRunning) {
+                final long produced = mProduced;
+                if (produced > mConsumed) {
+                    encode(produced);
+                } else if (mBlockSize > 0 && System.nanoTime() - mLastBlockNanos > kMaxBlockAge * 1e9) {
+                    writeBlock();
+                } else {
+                    LockSupport.parkNanos(kIdleParkNanos);
+                }
+            }
+            encode(mProduced);
+            if (mBlockSize > 0) {
+                writeBlock();
+            }
+            writeIndex();
+        } catch (IOException e) {
+            System.err.println("Lidar log writer stopped:");
+            e.printStackTrace();
+        }
+        if (sThreadMXBean.isThreadCpuTimeSupported()) {
+            mFinishedCpuNanos = sThreadMXBean.getCurrentThreadCpuTime();
+        }
+    }
+
+    /**
+     * Takes the queued points up to <code>produced</code> from the ring and
+     * delta encodes them, writing blocks as scans end or blocks fill. Writer
+     * thread only.
+     */
+    private void encode(long produced) throws IOException {
+        for (long n = mConsumed; n < produced; n++) {
+            int i = (int) (n % mCapacity);
+            if (mBlockSize == mBlockPoints || (mNewScans[i] && mBlockSize > 0)) {
+                writeBlock();
+            }
+            if (mBlockSize == 0) {
+                mBlockStartsScan = mNewScans[i];
+                mBlockFirstMicros = mPrevMicros = mMicros[i];
+                mPrevAngle = mPrevDistance = 0;
+            }
+            // Deltas are small, and zigzagging makes small negative ones small too
+            putVarint(zigzag(mMicros[i] - mPrevMicros));
+            putVarint(zigzag(mAngles[i] - mPrevAngle));
+            putVarint(zigzag(mDistances[i] - mPrevDistance));
+            mPrevMicros = mMicros[i];
+            mPrevAngle = mAngles[i];
+            mPrevDistance = mDistances[i];
+            mBlockSize++;
+        }
+        mConsumed = produced; // the slots can be refilled now
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private void putVarint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            mRaw[mRawLength++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        mRaw[mRawLength++] = (byte) v;
+    }
+
+    /**
+     * Compresses and writes the block being encoded. Writer thread only.
+     */
+    private void writeBlock() throws IOException {
+        mDeflater.reset();
+        mDeflater.setInput(mRaw, 0, mRawLength);
+        mDeflater.finish();
+        int compressedLength = 0;
+        while (!mDeflater.finished()) {
+            compressedLength += mDeflater.deflate(mCompressed, compressedLength, mCompressed.length - compressedLength);
+        }
+
+        ensureMapped(kBlockHeaderBytes + compressedLength);
+        final long offset = mMapStart + mMap.position();
+        mMap.putInt(mBlockSize);
+        mMap.putInt(compressedLength);
+        mMap.putInt(mBlockStartsScan ? kFlagNewScan : 0);
+        mMap.putLong(mBlockFirstMicros);
+        mMap.putLong(mPrevMicros);
+        putPose(mBlockFirstMicros);
+        putPose(mPrevMicros);
+        mMap.put(mCompressed, 0, compressedLength);
+        mBytesWritten = mMapStart + mMap.position();
+        addToIndex(offset, mBlockFirstMicros, mPrevMicros, mBlockSize);
+
+        mBlockSize = 0;
+        mRawLength = 0;
+        mLastBlockNanos = System.nanoTime();
+    }
+
+    private void putPose(long micros) {
+        Pose2d pose = mPoseSource == null ? null : mPoseSource.apply(micros / 1e6);
+        if (pose == null) {
+            pose = Pose2d.identity();
+        }
+        mMap.putDouble(pose.getTranslation().x());
+        mMap.putDouble(pose.getTranslation().y());
+        mMap.putDouble(pose.getRotation().getDegrees());
+    }
+
+    private void addToIndex(long offset, long firstMicros, long lastMicros, int points) {
+        if (mBlocks == mIndexPoints.length) {
+            mIndex = Arrays.copyOf(mIndex, mIndex.length * 2);
+            mIndexPoints = Arrays.copyOf(mIndexPoints, mIndexPoints.length * 2);
+        }
+        mIndex[3 * mBlocks] = offset;
+        mIndex[3 * mBlocks + 1] = firstMicros;
+        mIndex[3 * mBlocks + 2] = lastMicros;
+        mIndexPoints[mBlocks] = points;
+        mBlocks++;
+    }
+
+    /**
+     * Ends the blocks with a point count of 0, then writes the index and the
+     * trailer that points to it. Writer thread only.
+     */
+    private void writeIndex() throws IOException {
+        ensureMapped(4 + mBlocks * kIndexEntryBytes + kTrailerBytes);
+        mMap.putInt(0);
+        final long indexOffset = mMapStart + mMap.position();
+        for (int b = 0; b < mBlocks; b++) {
+            mMap.putLong(mIndex[3 * b]);
+            mMap.putLong(mIndex[3 * b + 1]);
+            mMap.putLong(mIndex[3 * b + 2]);
+            mMap.putInt(mIndexPoints[b]);
+        }
+        mMap.putLong(indexOffset);
+        mMap.putInt(mBlocks);
+        mMap.putInt(kIndexMagic);
+        mBytesWritten = mMapStart + mMap.position();
+    }
+
+    /**
+     * Moves the mapped window along if there's less than <code>bytes</code>
+     * left in it.
+     */
+    private void ensureMapped(int bytes) throws IOException {
+        if (mMap.remaining() >= bytes) {
+            return;
+        }
+        mMapStart += mMap.position();
+        mMap = mChannel.map(FileChannel.MapMode.READ_WRITE, mMapStart, Math.max(kMapWindowBytes, bytes));
+    }
+
+    /**
+     * Writes out everything queued and the index, trims the file to what was
+     * written, and closes it. Points logged after this are never written.
+     */
+    public void close() throws IOException {
+        mRunning = false;
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mMap.force();
+        mChannel.truncate(mBytesWritten);
+        mFile.close();
+        mDeflater.end();
+    }
+
+    /**
+     * @return How many points have been dropped because the queue was full
+     */
+    public long getDroppedPoints() {
+        return mDropped;
+    }
+
+    /**
+     * @return How many points the writer has taken from the queue
+     */
+    public long getWrittenPoints() {
+        return mConsumed;
+    }
+
+    /**
+     * @return The size of the log so far, in bytes
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * @return The CPU time the writer thread has used compressing and
+     *         writing, in seconds, or -1 if the JVM can't measure it
+     */
+    public double getWriterCpuTime() {
+        if (!sThreadMXBean.isThreadCpuTimeSupported()) {
+            return -1;
+        }
+        long nanos = mFinishedCpuNanos;
+        if (nanos < 0) {
+            nanos = sThreadMXBean.getThreadCpuTime(mThread.getId());
+            if (nanos < 0) {
+                nanos = mFinishedCpuNanos; // it exited just now
+            }
+        }
+        return nanos < 0 ? -1 : nanos / 1e9;
+    }
+}
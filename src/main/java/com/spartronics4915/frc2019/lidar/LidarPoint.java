@@ -4,9 +4,6 @@ import com.spartronics4915.frc2019.RobotState;
 import com.spartronics4915.lib.math.Translation2d;
 import com.spartronics4915.lib.math.Pose2d;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-
 /**
  * Represents a single point from the LIDAR sensor. This consists of
  * an angle, distance, and timestamp.
@@ -15,15 +12,6 @@ class LidarPoint {
     public final double timestamp;
     public final double angle;
     public final double distance;
-    private RobotState mRobotState = RobotState.getInstance();
-
-    private final static int MAX_ENTRIES = 10;
-    private final static LinkedHashMap<Double, Pose2d> mRobotPoseMap = new LinkedHashMap<Double, Pose2d>() {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Double, Pose2d> eldest) {
-            return this.size() > MAX_ENTRIES;
-        }
-    };
 
     public static final double MM_TO_IN = 1 / 25.4; // 1 inch = 25.4 millimeters
 
@@ -34,25 +22,31 @@ class LidarPoint {
     }
 
     /**
-     * Convert this point into a {@link Translation2d} in cartesian (x, y)
-     * coordinates. The point's timestamp is used along with the {@link RobotState}
-     * to take into account the robot's pose at the time the point was detected.
+     * @return The point's x coordinate in the lidar's frame, in inches
      */
-    public Translation2d toCartesian() {
-        // convert the polar coords to cartesian coords
-        double radians = Math.toRadians(angle);
-        Translation2d cartesian = new Translation2d(Math.cos(radians) * distance, Math.sin(radians) * distance);
+    public double getLidarX() {
+        return Math.cos(Math.toRadians(angle)) * distance;
+    }
 
-        // transform by the robot's pose
-        Pose2d robotPose;
-        if (mRobotPoseMap.containsKey(timestamp)) {
-            robotPose = mRobotPoseMap.get(timestamp);
-        } else {
-            robotPose = mRobotState.getFieldToLidar(timestamp);
-            mRobotPoseMap.put(timestamp, robotPose);
-        }
+    /**
+     * @return The point's y coordinate in the lidar's frame, in inches
+     */
+    public double getLidarY() {
+        return Math.sin(Math.toRadians(angle)) * distance;
+    }
 
-        robotPose.transformBy(Pose2d.fromTranslation(cartesian));
-        return robotPose.getTranslation();
+    /**
+     * Convert this point into a {@link Translation2d} in cartesian (x, y)
+     * field coordinates. The point's timestamp is used along with the
+     * {@link RobotState} to take into account the robot's pose at the time the
+     * point was detected.
+     * <p>
+     * This looks up the robot's pose for every point; to convert a whole scan,
+     * use a {@link ScanDeskewer}.
+     */
+    public Translation2d toCartesian() {
+        Pose2d fieldToLidar = RobotState.getInstance().getFieldToLidar(timestamp);
+        return fieldToLidar.transformBy(Pose2d.fromTranslation(new Translation2d(getLidarX(), getLidarY())))
+                .getTranslation();
     }
-}
\ No newline at end of file
+}
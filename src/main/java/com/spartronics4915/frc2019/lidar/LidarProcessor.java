@@ -3,6 +3,7 @@ package com.spartronics4915.frc2019.lidar;
 import com.spartronics4915.frc2019.Constants;
 import com.spartronics4915.frc2019.RobotState;
 import com.spartronics4915.frc2019.lidar.icp.ICP;
+import com.spartronics4915.frc2019.lidar.icp.NoMatchingPointsException;
 import com.spartronics4915.frc2019.lidar.icp.Point;
 import com.spartronics4915.frc2019.lidar.icp.ReferenceModel;
 import com.spartronics4915.frc2019.lidar.icp.Transform;
@@ -12,15 +13,10 @@ import com.spartronics4915.lib.math.Pose2d;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Receives LIDAR points from the {@link LidarServer}, stores a set number of
@@ -46,17 +42,22 @@ public class LidarProcessor implements Loop {
 
     private RobotState mRobotState = RobotState.getInstance();
     private LidarServer mLidarServer = LidarServer.getInstance();
+    private LidarLocalizer mLocalizer = LidarLocalizer.getInstance();
 
-    private LinkedList<LidarScan> mScans = new LinkedList<>();
-    private double prev_timestamp;
+    // Written only by the lidar reader thread (through addPoint()), read by
+    // anyone without locking
+    private final LidarScanBuffer mScans = new LidarScanBuffer(Constants.kLidarNumScansToStore);
+    private volatile double prev_timestamp;
+    private double mLastSampleTime = Double.NaN;
+    private double mLastReaderCpuTime;
+    private long mLastLogBytes;
+    private double mLastLogCpuTime;
 
-    private ICP icp = new ICP(ReferenceModel.TOWER, 100);
+    private ICP icp = new ICP(ReferenceModel.TOWER, Constants.kLidarICPTimeoutMs);
 
-    private DataOutputStream dataLogFile;
+    private LidarLogWriter mLogWriter;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-
-    private static FileOutputStream newLogFile() throws IOException {
+    private static File newLogFile() throws IOException {
         // delete old files if we're over the limit
         File logDir = new File(Constants.kLidarLogDir);
         File[] logFiles = logDir.listFiles();
@@ -71,67 +72,99 @@ public class LidarProcessor implements Loop {
 
         // create the new file and return
         String dateStr = new SimpleDateFormat("MM-dd-HH_mm_ss").format(new Date());
-        File newFile = new File(logDir, "lidarLog-" + dateStr + ".dat");
-        newFile.createNewFile();
-        return new FileOutputStream(newFile, false);
+        return new File(logDir, "lidarLog-" + dateStr + ".lidr");
     }
 
     private LidarProcessor() {
-        mScans.add(new LidarScan());
         try {
-            dataLogFile = new DataOutputStream(new GZIPOutputStream(newLogFile()));
+            mLogWriter = new LidarLogWriter(newLogFile(), mRobotState::getFieldToVehicle,
+                    Constants.kLidarLogQueuePoints, Constants.kLidarLogBlockPoints);
+            // A log that isn't closed is still readable, just padded with zeros
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    mLogWriter.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
         } catch (IOException e) {
             System.err.println("Failed to open lidar log file:");
             e.printStackTrace();
         }
     }
 
-    private void logPoint(double angle, double dist, double x, double y) {
-        try {
-            dataLogFile.writeInt((int) (angle * 100));
-            dataLogFile.writeInt((int) (dist * 256));
-            dataLogFile.writeInt((int) (x * 256));
-            dataLogFile.writeInt((int) (y * 256));
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void logPoint(LidarPoint point, boolean newScan) {
+        if (mLogWriter != null) {
+            // Never blocks; counts a drop if the writer's behind
+            mLogWriter.log(point.timestamp, point.angle, point.distance / LidarPoint.MM_TO_IN, newScan);
         }
     }
 
     public void addPoint(LidarPoint point, boolean newScan) {
-        SmartDashboard.putNumber("Lidar/angle", point.angle);
+        logPoint(point, newScan);
 
-        Translation2d cartesian = point.toCartesian();
-        logPoint(point.angle, point.distance, cartesian.x(), cartesian.y());
+        if (newScan) { // crosses the 360-0 threshold. start a new scan
+            prev_timestamp = Timer.getFPGATimestamp();
 
-        lock.writeLock().lock();
-        try {
-            if (newScan) { // crosses the 360-0 threshold. start a new scan
-                prev_timestamp = Timer.getFPGATimestamp();
-
-                SmartDashboard.putString(kPointCloudDashboardKey, "new");
-                // long start = System.nanoTime();
-                // Translation2d towerPos = getTowerPosition();
-                // long end = System.nanoTime();
-                // SmartDashboard.putNumber("towerPos_ms", (end-start)/1000000);
-                // SmartDashboard.putNumber("towerPosX", towerPos.x());
-                // SmartDashboard.putNumber("towerPosY", towerPos.y());
-
-                mScans.add(new LidarScan());
-                if (mScans.size() > Constants.kLidarNumScansToStore) {
-                    mScans.removeFirst();
-                }
-            }
+            // long start = System.nanoTime();
+            // Translation2d towerPos = getTowerPosition();
+            // long end = System.nanoTime();
+            // SmartDashboard.putNumber("towerPos_ms", (end-start)/1000000);
+            // SmartDashboard.putNumber("towerPosX", towerPos.x());
+            // SmartDashboard.putNumber("towerPosY", towerPos.y());
+
+            finishScan(mScans.getFillingScan());
+            mScans.startNewScan();
+            mLocalizer.onScanCompleted(); // never blocks
+        }
+
+        // Points stay in the lidar's frame until their scan is finished
+        mScans.addPoint(point.getLidarX(), point.getLidarY(), point.timestamp);
+    }
 
-            if (!excludePoint(cartesian.x(), cartesian.y())) {
-                getCurrentScan().addPoint(new Point(cartesian), point.timestamp);
+    // Only used by the lidar reader thread
+    private final ScanDeskewer mDeskewer = new ScanDeskewer();
+    private double[] mPointCloud = new double[0]; // x0, y0, x1, y1...
 
-                // The point cloud output is relative to the robot's position, so it probably
-                // won't look to good if you move the robot around.
-                SmartDashboard.putString(kPointCloudDashboardKey, cartesian.x() + " " + cartesian.y());
+    /**
+     * Moves a completed scan from the lidar's frame into the field frame, and
+     * drops the points outside the area we care about, before it's published.
+     * Looks up the lidar's pose twice per scan rather than once per point.
+     */
+    private void finishScan(LidarScan scan) {
+        final int n = scan.size();
+        if (n == 0) {
+            return;
+        }
+        Pose2d start = mRobotState.getFieldToLidar(scan.getPointTimestamp(0));
+        Pose2d end = mRobotState.getFieldToLidar(scan.getPointTimestamp(n - 1));
+        mDeskewer.deskew(scan.getXs(), scan.getYs(), scan.getPointTimestamps(), n, start, end);
+
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (!excludePoint(scan.getX(i), scan.getY(i))) {
+                scan.copyPoint(i, kept++);
             }
-        } finally {
-            lock.writeLock().unlock();
         }
+        scan.truncate(kept);
+        publishPointCloud(scan);
+    }
+
+    /**
+     * Publishes a finished scan's points, in the field frame, as one array
+     * of interleaved x and y coordinates. Once per scan, rather than once per
+     * point, keeps the dashboard off the reader thread's per-point path.
+     */
+    private void publishPointCloud(LidarScan scan) {
+        final int n = scan.size();
+        if (mPointCloud.length != 2 * n) {
+            mPointCloud = new double[2 * n];
+        }
+        for (int i = 0; i < n; i++) {
+            mPointCloud[2 * i] = scan.getX(i);
+            mPointCloud[2 * i + 1] = scan.getY(i);
+        }
+        SmartDashboard.putNumberArray(kPointCloudDashboardKey, mPointCloud);
     }
 
     private static final double FIELD_WIDTH = 27 * 12, FIELD_HEIGHT = 54 * 12;
@@ -144,98 +177,70 @@ public class LidarProcessor implements Loop {
         return x < RECT_X_MIN || x > RECT_X_MAX || y < RECT_Y_MIN || y > RECT_Y_MAX;
     }
 
-    private LidarScan getCurrentScan() {
-        return mScans.getLast();
-    }
-
-    private ArrayList<Point> getAllPoints() {
-        ArrayList<Point> list = new ArrayList<>();
-        for (LidarScan scan : mScans) {
-            list.addAll(scan.getPoints());
-        }
-        return list;
-    }
-
-    private Point getAveragePoint() {
+    private static Point getAveragePoint(LidarScan points) {
         double sumX = 0, sumY = 0;
-        int n = 0;
-        for (Point p : getAllPoints()) {
-            sumX += p.x;
-            sumY += p.y;
-            n++;
+        for (int i = 0; i < points.size(); i++) {
+            sumX += points.getX(i);
+            sumY += points.getY(i);
         }
-        return new Point(sumX / n, sumY / n);
+        return new Point(sumX / points.size(), sumY / points.size());
     }
 
-    private static final double BUCKET_SIZE = 3.0; // inches
+    // Culling scratch space, one per consumer thread, with a grid over the
+    // area points aren't excluded from
+    private final ThreadLocal<PointCuller> mCuller = ThreadLocal
+            .withInitial(() -> new PointCuller(RECT_X_MIN, RECT_Y_MIN, RECT_X_MAX, RECT_Y_MAX));
 
     /**
-     * Cantor pairing function (to bucket & hash two doubles)
+     * Copies a roughly uniformly thinned version of the completed scans into
+     * <code>out</code>. Never blocks {@link #addPoint}, so the caller can
+     * run ICP on the result at its leisure.
+     *
+     * @return The timestamp of the newest scan in the copy, or 0 if there are
+     *         no completed scans yet
      */
-    private int getBucket(double x, double y) {
-        int ix = (int) (x / BUCKET_SIZE);
-        int iy = (int) (y / BUCKET_SIZE);
-        int a = ix >= 0 ? 2 * ix : -2 * ix - 1;
-        int b = iy >= 0 ? 2 * iy : -2 * iy - 1;
-        int sum = a + b;
-        return sum * (sum + 1) / 2 + a;
+    double copyCulledPoints(LidarScan out) {
+        return mScans.copyCompletedScans(out, mCuller.get());
     }
 
+    // Copy of the points for doICP() and getTowerPosition(), guarded by
+    // synchronizing on it
+    private final LidarScan mCulledPoints = new LidarScan();
+
     /**
-     * Returns a list of points that have been thinned roughly uniformly.
+     * Runs ICP on the calling thread. Prefer {@link LidarLocalizer}, which
+     * does this in the background whenever a scan completes.
      */
-    private ArrayList<Point> getCulledPoints() {
-        ArrayList<Point> list = new ArrayList<>();
-        HashSet<Integer> buckets = new HashSet<>();
-        for (Point p : getAllPoints()) {
-            if (buckets.add(getBucket(p.x, p.y)))
-                list.add(p);
-        }
-        return list;
-    }
-
-    public Pose2d doICP() {
-        lock.readLock().lock();
-        try {
-            Pose2d guess = mRobotState.getFieldToLidar(getCurrentScan().getTimestamp());
-            Pose2d finalPose = icp.doICP(getCulledPoints(), new Transform(guess).inverse()).inverse().toPose2d();
-            SmartDashboard.putString("Lidar/pose", finalPose.getTranslation().x() + " " + finalPose.getTranslation().y()
-                    + " " + finalPose.getRotation().getDegrees());
-            // TODO: Maybe put the processing into its own looper and save past poses (like
-            // RobotState)
-            return finalPose;
-        } finally {
-            lock.readLock().unlock();
+    public Pose2d doICP() throws NoMatchingPointsException {
+        Pose2d finalPose;
+        synchronized (mCulledPoints) {
+            double timestamp = copyCulledPoints(mCulledPoints);
+            finalPose = LidarLocalizer.solveFieldToLidar(icp, mCulledPoints.getXs(), mCulledPoints.getYs(),
+                    mCulledPoints.size(), mRobotState.getFieldToLidar(timestamp));
         }
+        SmartDashboard.putString("Lidar/pose", finalPose.getTranslation().x() + " " + finalPose.getTranslation().y()
+                + " " + finalPose.getRotation().getDegrees());
+        return finalPose;
     }
 
-    public Translation2d getTowerPosition() {
-        lock.readLock().lock();
-        try {
-            Point avg = getAveragePoint();
-            Transform trans = icp.doICP(getCulledPoints(), new Transform(0, avg.x, avg.y));
-            return trans.apply(icp.reference).getMidpoint().toTranslation2d();
-        } finally {
-            lock.readLock().unlock();
+    public Translation2d getTowerPosition() throws NoMatchingPointsException {
+        Transform trans;
+        synchronized (mCulledPoints) {
+            mScans.copyCompletedScans(mCulledPoints);
+            Point avg = getAveragePoint(mCulledPoints); // of all the points, not just the culled ones
+            mCuller.get().cull(mCulledPoints);
+            trans = icp.solve(mCulledPoints.getXs(), mCulledPoints.getYs(), mCulledPoints.size(),
+                    new Transform(0, avg.x, avg.y));
         }
+        return trans.apply(icp.reference).getMidpoint().toTranslation2d();
     }
 
     public void setPrevTimestamp(double time) {
-        lock.writeLock().lock();
-        try {
-            prev_timestamp = time;
-        } finally {
-            lock.writeLock().unlock();
-        }
+        prev_timestamp = time;
     }
 
     public double getPrevTimestamp() {
-        lock.readLock().lock();
-        try {
-            return prev_timestamp;
-        } finally {
-            lock.readLock().unlock();
-        }
+        return prev_timestamp;
     }
 
     @Override
@@ -256,6 +261,43 @@ public class LidarProcessor implements Loop {
                 }
             }
         }
+        updateUsageStats(timestamp);
+    }
+
+    /**
+     * Publishes the share of one core the {@link LidarServer} reader thread
+     * used since the last sample, and how the log writer is keeping up.
+     * Sampled about once a second. The CPU shares are left out if the JVM
+     * can't measure thread CPU time; the log's throughput and drop count
+     * don't need it.
+     */
+    private void updateUsageStats(double timestamp) {
+        if (!Double.isNaN(mLastSampleTime) && timestamp - mLastSampleTime < 1.0) {
+            return;
+        }
+        double cpuTime = mLidarServer.getReaderCpuTime();
+        double logCpuTime = mLogWriter == null ? 0 : mLogWriter.getWriterCpuTime();
+        long logBytes = mLogWriter == null ? 0 : mLogWriter.getBytesWritten();
+        if (!Double.isNaN(mLastSampleTime)) {
+            double elapsed = timestamp - mLastSampleTime;
+            if (cpuTime >= 0 && mLastReaderCpuTime >= 0) {
+                SmartDashboard.putNumber("Lidar/readerCpuPercent", 100 * (cpuTime - mLastReaderCpuTime) / elapsed);
+            }
+            if (logCpuTime >= 0 && mLastLogCpuTime >= 0) {
+                SmartDashboard.putNumber("Lidar/logCpuPercent", 100 * (logCpuTime - mLastLogCpuTime) / elapsed);
+            }
+            SmartDashboard.putNumber("Lidar/logBytesPerSec", (logBytes - mLastLogBytes) / elapsed);
+        }
+        if (cpuTime >= 0) {
+            SmartDashboard.putNumber("Lidar/readerCpuSeconds", cpuTime);
+        }
+        if (mLogWriter != null) {
+            SmartDashboard.putNumber("Lidar/logDroppedPoints", mLogWriter.getDroppedPoints());
+        }
+        mLastSampleTime = timestamp;
+        mLastReaderCpuTime = cpuTime;
+        mLastLogCpuTime = logCpuTime;
+        mLastLogBytes = logBytes;
     }
 
     @Override
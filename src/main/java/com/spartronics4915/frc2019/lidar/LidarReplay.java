@@ -0,0 +1,185 @@
+package com.spartronics4915.frc2019.lidar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import com.spartronics4915.frc2019.Constants;
+import com.spartronics4915.frc2019.RobotState;
+import com.spartronics4915.frc2019.lidar.icp.ICP;
+import com.spartronics4915.frc2019.lidar.icp.NoMatchingPointsException;
+import com.spartronics4915.frc2019.lidar.icp.ReferenceModel;
+import com.spartronics4915.lib.util.LatencyHistogram;
+
+/**
+ * Plays a log written by {@link LidarLogWriter} back through the
+ * {@link LidarProcessor}, so ICP can be tried and timed on real match data
+ * off the robot.
+ * <p>
+ * Each block's logged poses are added to {@link RobotState} as observations,
+ * so the processor sees the odometry it saw on the robot. Then its points go
+ * to {@link LidarProcessor#addPoint}. Every time a scan completes, the culled
+ * cloud that {@link LidarProcessor#doICP} would solve is solved with both
+ * the point-to-point and the point-to-line ICP, from the same guess, and each
+ * solve's time and iteration count are recorded. Replay can go as fast as
+ * the solves allow, or keep to the recorded pace to see how ICP keeps up with
+ * a real lidar.
+ * <p>
+ * The processor and RobotState are singletons, so replay one log per JVM:
+ * <pre>
+ * java ... com.spartronics4915.frc2019.lidar.LidarReplay lidarLog-03-02-14_05_11.lidr [realtime]
+ * </pre>
+ */
+public class LidarReplay {
+    /**
+     * How one ICP method did on the replayed scans.
+     */
+    public static class SolverResult {
+        public final String name;
+        public long solves = 0;
+        public long failedSolves = 0;
+        public long iterations = 0;
+        public final LatencyHistogram solveTimes = new LatencyHistogram();
+
+        SolverResult(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%s: %d solves, %d failed, %.1f iterations/solve, mean %.2fms, p50 %.2fms, p99 %.2fms, max %.2fms",
+                    name, solves, failedSolves, solves > 0 ? (double) iterations / solves : 0,
+                    solveTimes.getMean() / 1e6, solveTimes.getPercentile(50) / 1e6,
+                    solveTimes.getPercentile(99) / 1e6, solveTimes.getMax() / 1e6);
+        }
+    }
+
+    /**
+     * What a replay did, and how long the solves took.
+     */
+    public static class Result {
+        public long points = 0;
+        public long scans = 0;
+        public double logSeconds = 0; // from the first point to the last
+        public double wallSeconds = 0;
+        public final SolverResult pointToPoint = new SolverResult("point-to-point");
+        public final SolverResult pointToLine = new SolverResult("point-to-line");
+
+        @Override
+        public String toString() {
+            return String.format("%d points, %d scans in %.1fs of log, replayed in %.1fs (%.1fx)%n%s%n%s",
+                    points, scans, logSeconds, wallSeconds, wallSeconds > 0 ? logSeconds / wallSeconds : 0,
+                    pointToPoint, pointToLine);
+        }
+    }
+
+    private final LidarProcessor mProcessor;
+    private final RobotState mRobotState;
+    private final ICP mICP = new ICP(ReferenceModel.TOWER, Constants.kLidarICPTimeoutMs);
+    private final LidarScan mCloud = new LidarScan();
+
+    public LidarReplay() {
+        this(LidarProcessor.getInstance(), RobotState.getInstance());
+    }
+
+    LidarReplay(LidarProcessor processor, RobotState robotState) {
+        mProcessor = processor;
+        mRobotState = robotState;
+    }
+
+    /**
+     * Replays every block of <code>log</code>, in order.
+     *
+     * @param realTime whether to keep to the pace the points were recorded
+     *        at, rather than going as fast as possible
+     */
+    public Result replay(LidarLogReader log, boolean realTime) throws IOException {
+        return replay(log, 0, log.getBlockCount(), realTime);
+    }
+
+    /**
+     * Replays blocks <code>[firstBlock, endBlock)</code> of <code>log</code>.
+     * Use {@link LidarLogReader#findBlock} to start at a time in the match.
+     */
+    public Result replay(LidarLogReader log, int firstBlock, int endBlock, boolean realTime) throws IOException {
+        final Result result = new Result();
+        if (firstBlock >= endBlock) {
+            return result;
+        }
+        final double logStart = log.getFirstTimestamp(firstBlock);
+        final long wallStart = System.nanoTime();
+        final boolean[] scanStarted = { false };
+
+        for (int b = firstBlock; b < endBlock; b++) {
+            if (realTime) {
+                long due = wallStart + (long) ((log.getFirstTimestamp(b) - logStart) * 1e9);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            mRobotState.addFieldToVehicleObservation(log.getFirstTimestamp(b), log.getFirstPose(b));
+            mRobotState.addFieldToVehicleObservation(log.getLastTimestamp(b), log.getLastPose(b));
+
+            result.points += log.readBlock(b, (timestamp, angle, distance, newScan) -> {
+                mProcessor.addPoint(new LidarPoint(timestamp, angle, distance), newScan);
+                if (newScan) {
+                    if (scanStarted[0]) {
+                        solve(result); // the scan before this one is complete
+                    }
+                    scanStarted[0] = true;
+                }
+            });
+        }
+
+        result.logSeconds = log.getLastTimestamp(endBlock - 1) - logStart;
+        result.wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+        return result;
+    }
+
+    private void solve(Result result) {
+        mProcessor.copyCulledPoints(mCloud);
+        if (mCloud.size() == 0) {
+            return;
+        }
+        result.scans++;
+        solve(result.pointToPoint, false);
+        solve(result.pointToLine, true);
+    }
+
+    /**
+     * Solves the way {@link LidarLocalizer#solveFieldToLidar} does: the cloud
+     * is already placed on the field by odometry, so both methods start from
+     * the identity.
+     */
+    private void solve(SolverResult result, boolean pointToLine) {
+        long start = System.nanoTime();
+        try {
+            if (pointToLine) {
+                mICP.doPointToLineICP(mCloud.getXs(), mCloud.getYs(), mCloud.size(), null);
+            } else {
+                mICP.doICP(mCloud.getXs(), mCloud.getYs(), mCloud.size(), null);
+            }
+        } catch (NoMatchingPointsException e) {
+            result.failedSolves++;
+            return;
+        }
+        result.solveTimes.record(System.nanoTime() - start);
+        result.iterations += mICP.getLastIterations();
+        result.solves++;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: LidarReplay <log file> [realtime]");
+            System.exit(1);
+        }
+        boolean realTime = args.length > 1 && args[1].equals("realtime");
+        try (LidarLogReader log = new LidarLogReader(new File(args[0]))) {
+            System.out.println(log.getBlockCount() + " blocks, " + log.getPointCount() + " points"
+                    + (log.isIndexed() ? "" : " (the log wasn't closed; its index was rebuilt)"));
+            System.out.println(new LidarReplay().replay(log, realTime));
+        }
+    }
+}
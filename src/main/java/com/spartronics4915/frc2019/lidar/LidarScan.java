@@ -1,21 +1,29 @@
 package com.spartronics4915.frc2019.lidar;
 
 import com.spartronics4915.frc2019.Constants;
-import com.spartronics4915.frc2019.lidar.icp.Point;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Holds a single 360 degree scan from the lidar
+ * <p>
+ * Points are stored as parallel primitive arrays rather than as
+ * {@link com.spartronics4915.frc2019.lidar.icp.Point} objects, and scans are
+ * recycled with {@link #clear()} instead of being reallocated, so a running
+ * lidar doesn't produce garbage once the arrays have grown to fit a full
+ * revolution.
  */
 class LidarScan {
-    private ArrayList<Point> points = new ArrayList<>(Constants.kLidarScanSize);
+    private double[] xs = new double[Constants.kLidarScanSize];
+    private double[] ys = new double[Constants.kLidarScanSize];
+    private double[] timestamps = new double[Constants.kLidarScanSize];
+    private int size = 0;
     private double timestamp = 0;
 
     public String toJsonString() {
         String json = "{\"timestamp\": " + timestamp + ", \"scan\": [";
-        for (Point point : points) {
-            json += "{\"x\":" + point.x + ", \"y\":" + point.y + "},";
+        for (int i = 0; i < size; i++) {
+            json += "{\"x\":" + xs[i] + ", \"y\":" + ys[i] + "},";
         }
         json = json.substring(0, json.length() - 1);
         json += "]}";
@@ -24,24 +32,131 @@ class LidarScan {
 
     public String toString() {
         String s = "";
-        for (Point point : points) {
-            s += "x: " + point.x + ", y: " + point.y + "\n";
+        for (int i = 0; i < size; i++) {
+            s += "x: " + xs[i] + ", y: " + ys[i] + "\n";
         }
         return s;
     }
 
-    public ArrayList<Point> getPoints() {
-        return points;
+    /**
+     * @return The x coordinates of the points; only the first {@link #size()}
+     *         entries are valid
+     */
+    public double[] getXs() {
+        return xs;
     }
 
+    /**
+     * @return The y coordinates of the points; only the first {@link #size()}
+     *         entries are valid
+     */
+    public double[] getYs() {
+        return ys;
+    }
+
+    /**
+     * @return When each point was measured; only the first {@link #size()}
+     *         entries are valid
+     */
+    public double[] getPointTimestamps() {
+        return timestamps;
+    }
+
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    public double getY(int i) {
+        return ys[i];
+    }
+
+    public double getPointTimestamp(int i) {
+        return timestamps[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The timestamp of the first point in the scan
+     */
     public double getTimestamp() {
         return timestamp;
     }
 
-    public void addPoint(Point point, double time) {
+    /**
+     * Empties the scan so it can be refilled, keeping its arrays.
+     */
+    public void clear() {
+        size = 0;
+        timestamp = 0;
+    }
+
+    /**
+     * Drops all but the first <code>newSize</code> points.
+     */
+    public void truncate(int newSize) {
+        size = Math.min(size, newSize);
+        if (size == 0) {
+            timestamp = 0;
+        }
+    }
+
+    /**
+     * Overwrites point <code>to</code> with point <code>from</code>.
+     */
+    public void copyPoint(int from, int to) {
+        xs[to] = xs[from];
+        ys[to] = ys[from];
+        timestamps[to] = timestamps[from];
+    }
+
+    /**
+     * Appends all of <code>src</code>'s points to this scan.
+     * <p>
+     * This tolerates <code>src</code> being modified concurrently (it won't
+     * throw), but in that case the appended points are garbage and the caller
+     * must throw them away with {@link #truncate(int)}.
+     *
+     * @return <code>src</code>'s timestamp
+     */
+    public double appendFrom(LidarScan src) {
+        double[] srcXs = src.xs, srcYs = src.ys, srcTimestamps = src.timestamps;
+        double srcTimestamp = src.timestamp;
+        int n = Math.min(src.size, Math.min(srcXs.length, Math.min(srcYs.length, srcTimestamps.length)));
+        if (n == 0) {
+            return srcTimestamp;
+        }
+        if (timestamp == 0) {
+            timestamp = srcTimestamps[0];
+        }
+        ensureCapacity(size + n);
+        System.arraycopy(srcXs, 0, xs, size, n);
+        System.arraycopy(srcYs, 0, ys, size, n);
+        System.arraycopy(srcTimestamps, 0, timestamps, size, n);
+        size += n;
+        return srcTimestamp;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > xs.length) {
+            // Only happens until the arrays fit the most points we've seen
+            capacity = Math.max(capacity, xs.length * 2);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+    }
+
+    public void addPoint(double x, double y, double time) {
         if (timestamp == 0) {
             timestamp = time;
         }
-        points.add(point);
+        ensureCapacity(size + 1);
+        xs[size] = x;
+        ys[size] = y;
+        timestamps[size] = time;
+        size++;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+package com.spartronics4915.frc2019.lidar;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Hands completed scans from the single lidar reader thread to any number of
+ * consumers without either side blocking.
+ * <p>
+ * The producer fills a private scan from a pool of
+ * <code>scansToKeep + 1</code>. When a scan completes, the producer publishes
+ * it (along with the older completed scans) with a single volatile write, and
+ * starts refilling the oldest slot, which is no longer part of the published
+ * set.
+ * <p>
+ * Consumers copy the published scans out. A consumer that is still copying
+ * the oldest scan when the producer starts refilling it can't block the
+ * producer, so every slot has a {@link StampedLock} that the producer holds
+ * for writing while the slot is being filled and consumers only use for
+ * optimistic reads: if a slot changed under a consumer, that scan is left out
+ * of the copy. Each slot also records the sequence number of the scan in it,
+ * so a consumer that stalls long enough for a slot to be refilled and
+ * published again doesn't mistake the newer scan for the one it expected.
+ * Since the producer only reuses the oldest slot, normally at most the oldest
+ * scan is lost this way.
+ */
+class LidarScanBuffer {
+    private final int mScansToKeep;
+    // Scan number n (counting from 1) lives in slot n % mPool.length
+    private final LidarScan[] mPool;
+    private final StampedLock[] mSlotLocks;
+    private final long[] mSlotSequence; // written under the slot's write lock
+
+    // Producer-only state
+    private long mFillingSequence = 1;
+    private int mCurrentSlot;
+    private long mCurrentStamp;
+
+    // Sequence number of the newest completed scan, or 0 if there are none
+    private volatile long mPublished = 0;
+
+    LidarScanBuffer(int scansToKeep) {
+        mScansToKeep = scansToKeep;
+        mPool = new LidarScan[scansToKeep + 1];
+        mSlotLocks = new StampedLock[scansToKeep + 1];
+        mSlotSequence = new long[scansToKeep + 1];
+        for (int i = 0; i < mPool.length; i++) {
+            mPool[i] = new LidarScan();
+            mSlotLocks[i] = new StampedLock();
+        }
+        startFilling();
+    }
+
+    private void startFilling() {
+        mCurrentSlot = (int) (mFillingSequence % mPool.length);
+        mCurrentStamp = mSlotLocks[mCurrentSlot].writeLock();
+        mSlotSequence[mCurrentSlot] = mFillingSequence;
+        mPool[mCurrentSlot].clear();
+    }
+
+    /**
+     * Adds a point to the scan being filled. Only call from the producer.
+     */
+    void addPoint(double x, double y, double timestamp) {
+        mPool[mCurrentSlot].addPoint(x, y, timestamp);
+    }
+
+    /**
+     * @return The scan being filled, which consumers can't see until
+     *         {@link #startNewScan()}, so the producer can finish it in place.
+     *         Only call from the producer.
+     */
+    LidarScan getFillingScan() {
+        return mPool[mCurrentSlot];
+    }
+
+    /**
+     * Publishes the scan being filled and starts a new one. Only call from the
+     * producer. Never blocks: consumers never hold the slot locks.
+     */
+    void startNewScan() {
+        if (mPool[mCurrentSlot].size() == 0) {
+            return; // nothing worth publishing
+        }
+        mSlotLocks[mCurrentSlot].unlockWrite(mCurrentStamp);
+        mPublished = mFillingSequence;
+
+        mFillingSequence++;
+        startFilling();
+    }
+
+    /**
+     * @return The number of completed scans currently published
+     */
+    int getNumCompletedScans() {
+        return (int) Math.min(mPublished, mScansToKeep);
+    }
+
+    /**
+     * Replaces the contents of <code>out</code> with the points of every
+     * published scan, oldest first. Safe to call from any thread; never
+     * blocks or waits on the producer.
+     *
+     * @return The timestamp of the newest scan copied, or 0 if none were
+     */
+    double copyCompletedScans(LidarScan out) {
+        return copyCompletedScans(out, null);
+    }
+
+    /**
+     * Like {@link #copyCompletedScans(LidarScan)}, but culls each scan with
+     * <code>culler</code> as soon as it's been copied and checked, while its
+     * points are still in cache, so the copy is thinned in one pass.
+     *
+     * @param culler culls the copy as one cloud, or null to keep every point
+     */
+    double copyCompletedScans(LidarScan out, PointCuller culler) {
+        out.clear();
+        if (culler != null) {
+            culler.startCull();
+        }
+        long newest = mPublished;
+        double timestamp = 0;
+        for (long sequence = Math.max(1, newest - mScansToKeep + 1); sequence <= newest; sequence++) {
+            int slot = (int) (sequence % mPool.length);
+            StampedLock slotLock = mSlotLocks[slot];
+            long stamp = slotLock.tryOptimisticRead();
+            if (stamp == 0) {
+                continue; // already being refilled
+            }
+            int start = out.size();
+            double scanTimestamp = out.appendFrom(mPool[slot]);
+            long slotSequence = mSlotSequence[slot];
+            if (!slotLock.validate(stamp) || slotSequence != sequence) {
+                out.truncate(start); // refilled since we read mPublished
+                continue;
+            }
+            if (culler != null) {
+                culler.cull(out, start);
+            }
+            timestamp = scanTimestamp;
+        }
+        return timestamp;
+    }
+}
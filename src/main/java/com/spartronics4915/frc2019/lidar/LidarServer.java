@@ -7,6 +7,9 @@ import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.Channels;
 
 /**
  * Starts the <code>chezy_lidar</code> C++ program, parses its
@@ -16,15 +19,25 @@ import java.io.InputStreamReader;
  * <code>chezy_lidar</code> process and parses the (angle, distance)
  * values in each line. Each resulting {@link LidarPoint} is passed
  * to {@link LidarProcessor.addPoint(...)}.
+ * <p>
+ * If {@link Constants#kLidarUseBinaryFrames} is set, <code>chezy_lidar</code>
+ * is asked for fixed-size binary frames instead of text lines, and those
+ * are decoded by a {@link LidarFrameDecoder}.
+ * <p>
+ * The reader thread blocks on the process pipe, so it costs nothing while
+ * the lidar is idle. {@link #stop()} kills the process and closes the pipe,
+ * which wakes the reader and lets it exit.
  */
 public class LidarServer {
     private static LidarServer mInstance = null;
-    private final LidarProcessor mLidarProcessor = LidarProcessor.getInstance();
     private static BufferedReader mBufferedReader;
+    private LidarFrameDecoder mFrameDecoder;
     private boolean mRunning = false;
     private Thread mThread;
     private Process mProcess;
     private boolean mEnding = false;
+    private static final ThreadMXBean sThreadMXBean = ManagementFactory.getThreadMXBean();
+    private long mFinishedReaderCpuNanos = 0; // CPU time of reader threads that have exited
 
     public static LidarServer getInstance() {
         if (mInstance == null) {
@@ -71,10 +84,17 @@ public class LidarServer {
 
         System.out.println("Starting lidar");
         try {
-            mProcess = new ProcessBuilder().command(Constants.kLidarPath).start();
+            mFrameDecoder = null;
+            if (Constants.kLidarUseBinaryFrames) {
+                mProcess = new ProcessBuilder().command(Constants.kLidarPath, Constants.kLidarBinaryArg).start();
+                mFrameDecoder = new LidarFrameDecoder(Channels.newChannel(mProcess.getInputStream()),
+                        Constants.kLidarFramesPerRead, mPointHandler);
+            } else {
+                mProcess = new ProcessBuilder().command(Constants.kLidarPath).start();
+                InputStreamReader reader = new InputStreamReader(mProcess.getInputStream());
+                mBufferedReader = new BufferedReader(reader);
+            }
             mThread = new Thread(new ReaderThread());
-            InputStreamReader reader = new InputStreamReader(mProcess.getInputStream());
-            mBufferedReader = new BufferedReader(reader);
             mThread.start();
         } catch (Exception e) {
             e.printStackTrace();
@@ -96,9 +116,18 @@ public class LidarServer {
         System.out.println("Stopping Lidar...");
 
         try {
+            // Killing chezy_lidar closes its stdout, which unblocks the reader
             mProcess.destroyForcibly();
             mProcess.waitFor();
-            mThread.join();
+            try {
+                mProcess.getInputStream().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (Thread.currentThread() != mThread) { // the reader stops itself on error
+                mThread.interrupt();
+                mThread.join();
+            }
         } catch (InterruptedException e) {
             System.err.println("Error: Interrupted while stopping lidar");
             e.printStackTrace();
@@ -122,30 +151,74 @@ public class LidarServer {
         return mEnding;
     }
 
+    /**
+     * @return Total CPU time spent in reader threads since startup, in
+     *         seconds, or a negative number if the JVM can't measure it
+     */
+    public synchronized double getReaderCpuTime() {
+        if (!sThreadMXBean.isThreadCpuTimeSupported()) {
+            return -1;
+        }
+        long nanos = mFinishedReaderCpuNanos;
+        if (mThread != null && mThread.isAlive()) {
+            long live = sThreadMXBean.getThreadCpuTime(mThread.getId());
+            if (live > 0) {
+                nanos += live;
+            }
+        }
+        return nanos / 1e9;
+    }
+
+
+    // Sampled once per read, rather than once per point
+    private long mReadSystemTime;
+    private double mReadFPGATime;
+    private final LidarFrameDecoder.Listener mPointHandler = this::handleFrame;
+
+    private void sampleReadTime() {
+        mReadSystemTime = System.currentTimeMillis();
+        mReadFPGATime = Timer.getFPGATimestamp();
+    }
 
     private void handleLine(String line) {
+        sampleReadTime();
+        parseLine(line, mPointHandler);
+    }
+
+    /**
+     * Parses one line of <code>chezy_lidar</code> text output of the form
+     * <code>timestamp,angle,distance[s]</code>, where the trailing
+     * <code>s</code> marks the first point of a new scan.
+     *
+     * @return false if the line was malformed
+     */
+    static boolean parseLine(String line, LidarFrameDecoder.Listener listener) {
         boolean isNewScan = line.substring(line.length() - 1).equals("s");
         if (isNewScan) {
             line = line.substring(0, line.length() - 1);
         }
 
-        long curSystemTime = System.currentTimeMillis();
-        double curFPGATime = Timer.getFPGATimestamp();
-
         String[] parts = line.split(",");
         if (parts.length == 3) {
             try {
                 long ts = Long.parseLong(parts[0]);
-                long ms_ago = curSystemTime - ts;
-                double normalizedTs = curFPGATime - (ms_ago / 1000.0f);
                 double angle = Double.parseDouble(parts[1]);
                 double distance = Double.parseDouble(parts[2]);
-                if (distance != 0)
-                    mLidarProcessor.addPoint(new LidarPoint(normalizedTs, angle, distance), isNewScan);
+                listener.onPoint(ts, angle, distance, isNewScan);
+                return true;
             } catch (java.lang.NumberFormatException e) {
                 e.printStackTrace();
             }
         }
+        return false;
+    }
+
+    private void handleFrame(long ts, double angle, double distance, boolean isNewScan) {
+        long ms_ago = mReadSystemTime - ts;
+        double normalizedTs = mReadFPGATime - (ms_ago / 1000.0f);
+        if (distance != 0)
+            // Not kept in a field: LidarProcessor's constructor gets this instance
+            LidarProcessor.getInstance().addPoint(new LidarPoint(normalizedTs, angle, distance), isNewScan);
     }
 
     private class ReaderThread implements Runnable {
@@ -153,7 +226,14 @@ public class LidarServer {
         public void run() {
             while (isRunning()) {
                 try {
-                    if (mBufferedReader.ready()) {
+                    // Both reads block until chezy_lidar writes something
+                    if (mFrameDecoder != null) {
+                        if (!mFrameDecoder.read()) { // EOF
+                            throw new EOFException("End of chezy-lidar process InputStream");
+                        }
+                        sampleReadTime();
+                        mFrameDecoder.decode();
+                    } else {
                         String line = mBufferedReader.readLine();
                         if (line == null) { // EOF
                             throw new EOFException("End of chezy-lidar process InputStream");
@@ -161,11 +241,21 @@ public class LidarServer {
                         handleLine(line);
                     }
                 } catch (IOException e) {
+                    if (!isRunning()) {
+                        break; // stop() closed the stream out from under us
+                    }
                     e.printStackTrace();
-                    if (isLidarConnected()) {
+                    if (!isLidarConnected()) {
                         System.err.println("Lidar sensor disconnected");
-                        stop();
                     }
+                    // LidarProcessor restarts the server after kLidarRestartTime
+                    stop();
+                    break;
+                }
+            }
+            synchronized (LidarServer.this) {
+                if (sThreadMXBean.isThreadCpuTimeSupported()) {
+                    mFinishedReaderCpuNanos += sThreadMXBean.getCurrentThreadCpuTime();
                 }
             }
         }
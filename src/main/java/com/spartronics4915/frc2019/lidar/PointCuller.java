@@ -0,0 +1,151 @@
+package com.spartronics4915.frc2019.lidar;
+
+import java.util.Arrays;
+
+/**
+ * Thins a point cloud roughly uniformly by keeping only the first point that
+ * lands in each {@link #BUCKET_SIZE} square.
+ * <p>
+ * Squares inside the area given to the constructor are an occupancy grid.
+ * Each cell holds the number of the last cull that put a point in it, so
+ * starting a cull is just incrementing that number, with nothing to clear.
+ * Points outside the area (normally there are none, since LidarProcessor
+ * excludes them when they arrive) go to an open-addressing hash table
+ * instead, which is only cleared if it was used.
+ * <p>
+ * A cull can be done a range at a time, as scans are copied out, with
+ * {@link #startCull()} and {@link #cull(LidarScan, int)}. Keeps its own
+ * scratch space, so each thread that culls needs its own instance.
+ */
+class PointCuller {
+    private static final double BUCKET_SIZE = 3.0; // inches
+
+    private final double mMinX, mMinY;
+    private final int mColumns, mRows;
+    private final int[] mGrid; // the cull number that last filled each cell
+    private int mCull = 0;
+
+    private int[] mBucketTable = new int[1024]; // open addressing, 0 is empty
+    private int mBucketsUsed = 0;
+    private static final int kBucketHashMultiplier = 0x9E3779B9;
+
+    /**
+     * @param minX, minY, maxX, maxY the area to keep a grid for, in inches
+     */
+    PointCuller(double minX, double minY, double maxX, double maxY) {
+        mMinX = minX;
+        mMinY = minY;
+        mColumns = (int) Math.ceil((maxX - minX) / BUCKET_SIZE) + 1;
+        mRows = (int) Math.ceil((maxY - minY) / BUCKET_SIZE) + 1;
+        mGrid = new int[mColumns * mRows];
+    }
+
+    /**
+     * Cantor pairing function (to bucket & hash two doubles)
+     */
+    private static int getBucket(double x, double y) {
+        int ix = (int) (x / BUCKET_SIZE);
+        int iy = (int) (y / BUCKET_SIZE);
+        int a = ix >= 0 ? 2 * ix : -2 * ix - 1;
+        int b = iy >= 0 ? 2 * iy : -2 * iy - 1;
+        int sum = a + b;
+        return sum * (sum + 1) / 2 + a;
+    }
+
+    /**
+     * Marks the square a point is in as filled.
+     *
+     * @return true if nothing had filled it yet in this cull
+     */
+    private boolean fill(double x, double y) {
+        // Doubles, so points far outside the grid can't overflow into it
+        double column = (x - mMinX) / BUCKET_SIZE;
+        double row = (y - mMinY) / BUCKET_SIZE;
+        if (column >= 0 && column < mColumns && row >= 0 && row < mRows) {
+            int cell = (int) row * mColumns + (int) column;
+            if (mGrid[cell] == mCull) {
+                return false;
+            }
+            mGrid[cell] = mCull;
+            return true;
+        }
+        return addBucket(getBucket(x, y));
+    }
+
+    /**
+     * Adds the bucket to {@link #mBucketTable} unless it's already there.
+     *
+     * @return true if the bucket wasn't already in the table
+     */
+    private boolean addBucket(int bucket) {
+        // Keep the table at most half full so probes stay short
+        if (mBucketsUsed * 2 >= mBucketTable.length) {
+            growBucketTable();
+        }
+        // Buckets are non-negative until the pairing overflows, which takes
+        // points miles away, so the key can't collide with the empty marker
+        int key = bucket + 1;
+        int mask = mBucketTable.length - 1;
+        int hash = key * kBucketHashMultiplier;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (mBucketTable[slot] != 0) {
+            if (mBucketTable[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        mBucketTable[slot] = key;
+        mBucketsUsed++;
+        return true;
+    }
+
+    private void growBucketTable() {
+        int[] old = mBucketTable;
+        mBucketTable = new int[old.length * 2];
+        mBucketsUsed = 0;
+        for (int key : old) {
+            if (key != 0) {
+                addBucket(key - 1);
+            }
+        }
+    }
+
+    /**
+     * Starts a new cull: every square is empty again.
+     */
+    public void startCull() {
+        if (++mCull == 0) { // wrapped around, after 2^32 culls
+            Arrays.fill(mGrid, 0);
+            mCull = 1;
+        }
+        if (mBucketsUsed > 0) {
+            Arrays.fill(mBucketTable, 0);
+            mBucketsUsed = 0;
+        }
+    }
+
+    /**
+     * Removes every point of <code>points</code> from <code>from</code> on
+     * that lands in a square already filled in this cull, in place, and fills
+     * the squares of those that are left.
+     */
+    public void cull(LidarScan points, int from) {
+        int total = points.size();
+        int kept = from;
+        for (int i = from; i < total; i++) {
+            if (fill(points.getX(i), points.getY(i))) {
+                points.copyPoint(i, kept++);
+            }
+        }
+        points.truncate(kept);
+    }
+
+    /**
+     * Removes every point of <code>points</code> that shares a square with an
+     * earlier point, in place.
+     */
+    public void cull(LidarScan points) {
+        startCull();
+        cull(points, 0);
+    }
+}
@@ -0,0 +1,55 @@
+package com.spartronics4915.frc2019.lidar;
+
+import com.spartronics4915.lib.math.MutablePose2d;
+import com.spartronics4915.lib.math.MutableTranslation2d;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Twist2d;
+
+/**
+ * Moves a scan's points from the lidar's frame into the field frame, taking
+ * the robot's motion during the scan into account.
+ * <p>
+ * A revolution takes long enough that the robot can move several inches
+ * while it's measured, so each point has to be placed using the lidar's pose
+ * when that point was measured. Rather than look up every point's pose in
+ * {@link com.spartronics4915.frc2019.RobotState}, this takes the lidar's pose
+ * at the scan's first and last points and interpolates between them along a
+ * constant-curvature arc, the same way {@link Pose2d#interpolate} does. The
+ * arc's twist is found once per scan; each point then costs a sin, a cos and
+ * a few multiplies, with no allocation.
+ * <p>
+ * Keeps its own scratch poses, so each thread that deskews needs its own
+ * instance.
+ */
+public class ScanDeskewer {
+    private final MutablePose2d mStart = new MutablePose2d();
+    private final MutablePose2d mPose = new MutablePose2d();
+    private final MutableTranslation2d mPoint = new MutableTranslation2d();
+
+    /**
+     * Transforms the first <code>n</code> points in place from the lidar's
+     * frame, at each point's timestamp, to the field frame.
+     *
+     * @param timestamps when each point was measured, in order
+     * @param start the field to lidar transform at <code>timestamps[0]</code>
+     * @param end the field to lidar transform at
+     *        <code>timestamps[n - 1]</code>
+     */
+    public void deskew(double[] xs, double[] ys, double[] timestamps, int n, Pose2d start, Pose2d end) {
+        if (n == 0) {
+            return;
+        }
+        final double t0 = timestamps[0];
+        final double duration = timestamps[n - 1] - t0;
+        final Twist2d twist = Pose2d.log(start.inverse().transformBy(end));
+        mStart.set(start);
+        for (int i = 0; i < n; i++) {
+            double t = duration > 0 ? (timestamps[i] - t0) / duration : 0;
+            t = Math.max(0, Math.min(1, t));
+            mPose.set(mStart).transformByExp(twist.dx * t, twist.dy * t, twist.dtheta * t);
+            mPose.applyInto(xs[i], ys[i], mPoint);
+            xs[i] = mPoint.x();
+            ys[i] = mPoint.y();
+        }
+    }
+}
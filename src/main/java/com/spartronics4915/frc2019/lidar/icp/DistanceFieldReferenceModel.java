@@ -0,0 +1,254 @@
+package com.spartronics4915.frc2019.lidar.icp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A {@link ReferenceModel} that precomputes, for every cell of a grid laid
+ * over the model, which segment is closest. A closest-point query is then an
+ * array lookup plus a projection onto that one segment.
+ * <p>
+ * Near the boundary between two segments' regions, the segment that was
+ * closest to a cell's center may not be closest everywhere in the cell.
+ * Because distance changes by at most the half-diagonal as you move within a
+ * cell, we know how large that mistake could be; cells where it could exceed
+ * <code>maxError</code> are marked, and queries in them (or outside the grid)
+ * fall back to the exact model. With <code>maxError</code> 0 the returned
+ * distances are always exact.
+ * <p>
+ * Building the table is O(cells * segments), so it can be saved with
+ * {@link #save(OutputStream)} and reloaded at startup.
+ */
+public class DistanceFieldReferenceModel extends ReferenceModel {
+
+    private static final int kMagic = 0x44465246; // "DFRF"
+    private static final int kVersion = 1;
+    private static final int kExact = -1; // cell needs the exact search
+
+    private final ReferenceModel mExact;
+    private final double mResolution, mMaxError;
+    private final double mOriginX, mOriginY;
+    private final int mCellsX, mCellsY;
+    private final int[] mCellSegment;
+
+    /**
+     * @param exact      Model to build the table from, and to fall back to
+     *                   when the table isn't accurate enough
+     * @param resolution Side length of a table cell
+     * @param padding    How far past the model's bounding box the table
+     *                   extends
+     * @param maxError   Largest distance error a table lookup may introduce
+     */
+    public DistanceFieldReferenceModel(ReferenceModel exact, double resolution, double padding, double maxError) {
+        this(exact, resolution, maxError, getBounds(exact.segments, padding), 0, 0, null);
+    }
+
+    /**
+     * @param bounds The area to cover, from {@link #getBounds(Segment[], double)};
+     *               only the origin is used when <code>cells</code> is given
+     * @param cells  A loaded table of <code>cellsX * cellsY</code> entries,
+     *               or null to size the table from the bounds and build it
+     */
+    private DistanceFieldReferenceModel(ReferenceModel exact, double resolution, double maxError,
+            double[] bounds, int cellsX, int cellsY, int[] cells) {
+        super(exact.segments);
+        if (!(resolution > 0)) throw new IllegalArgumentException("resolution must be positive");
+        mExact = exact;
+        mResolution = resolution;
+        mMaxError = maxError;
+        mOriginX = bounds[0];
+        mOriginY = bounds[1];
+        if (cells == null) {
+            mCellsX = (int) Math.ceil((bounds[2] - bounds[0]) / resolution);
+            mCellsY = (int) Math.ceil((bounds[3] - bounds[1]) / resolution);
+            mCellSegment = buildCells();
+        } else {
+            mCellsX = cellsX;
+            mCellsY = cellsY;
+            mCellSegment = cells;
+        }
+    }
+
+    /**
+     * @return {minX, minY, maxX, maxY}
+     */
+    private static double[] getBounds(Segment[] ss, double padding) {
+        double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (Segment s : ss) {
+            bounds[0] = Math.min(bounds[0], Math.min(s.pMin.x, s.pMax.x) - padding);
+            bounds[1] = Math.min(bounds[1], Math.min(s.pMin.y, s.pMax.y) - padding);
+            bounds[2] = Math.max(bounds[2], Math.max(s.pMin.x, s.pMax.x) + padding);
+            bounds[3] = Math.max(bounds[3], Math.max(s.pMin.y, s.pMax.y) + padding);
+        }
+        return bounds;
+    }
+
+    private int[] buildCells() {
+        int[] cells = new int[mCellsX * mCellsY];
+        double halfDiag = mResolution * Math.sqrt(0.5);
+        for (int cy = 0; cy < mCellsY; cy++) {
+            double centerY = mOriginY + (cy + 0.5) * mResolution;
+            for (int cx = 0; cx < mCellsX; cx++) {
+                double centerX = mOriginX + (cx + 0.5) * mResolution;
+                double best = Double.MAX_VALUE, second = Double.MAX_VALUE;
+                int bestSeg = 0;
+                for (int i = 0; i < segments.length; i++) {
+                    double dist = Math.sqrt(getDistanceSq(i, centerX, centerY));
+                    if (dist < best) {
+                        second = best;
+                        best = dist;
+                        bestSeg = i;
+                    } else if (dist < second) {
+                        second = dist;
+                    }
+                }
+                // Within the cell each distance is within halfDiag of its value
+                // at the center, so another segment can beat bestSeg by at most
+                // this much
+                double worstError = 2 * halfDiag - (second - best);
+                cells[cy * mCellsX + cx] = worstError <= mMaxError ? bestSeg : kExact;
+            }
+        }
+        return cells;
+    }
+
+    @Override
+    public Point getClosestPoint(Point p) {
+        double[] out = new double[2];
+        getClosestPoint(p.x, p.y, out);
+        return new Point(out[0], out[1]);
+    }
+
+    @Override
+    public void getClosestPoint(double x, double y, double[] out) {
+        double fx = (x - mOriginX) / mResolution, fy = (y - mOriginY) / mResolution;
+        int seg = kExact;
+        if (fx >= 0 && fx < mCellsX && fy >= 0 && fy < mCellsY) {
+            seg = mCellSegment[(int) fy * mCellsX + (int) fx];
+        }
+        if (seg == kExact) {
+            mExact.getClosestPoint(x, y, out);
+        } else {
+            getClosestPoint(seg, x, y, out);
+        }
+    }
+
+    /**
+     * @return The fraction of table cells that fall back to the exact model
+     */
+    public double getExactFraction() {
+        int n = 0;
+        for (int seg : mCellSegment) {
+            if (seg == kExact) n++;
+        }
+        return (double) n / mCellSegment.length;
+    }
+
+    /**
+     * Hashes the segment geometry so a saved table isn't loaded against a
+     * different model.
+     */
+    private static long getModelHash(Segment[] ss) {
+        long hash = ss.length;
+        for (Segment s : ss) {
+            double[] values = {s.pMin.x, s.pMin.y, s.pMax.x, s.pMax.y, s.tMin, s.tMax};
+            for (double v : values) {
+                hash = hash * 31 + Double.doubleToLongBits(v);
+            }
+        }
+        return hash;
+    }
+
+    public void save(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(kMagic);
+        out.writeInt(kVersion);
+        out.writeLong(getModelHash(segments));
+        out.writeDouble(mResolution);
+        out.writeDouble(mMaxError);
+        out.writeDouble(mOriginX);
+        out.writeDouble(mOriginY);
+        out.writeInt(mCellsX);
+        out.writeInt(mCellsY);
+        for (int seg : mCellSegment) {
+            out.writeInt(seg);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a table written by {@link #save(OutputStream)}.
+     *
+     * @param exact The model the table was built from
+     * @throws IOException if the data is malformed or was built from a
+     *                     different model
+     */
+    public static DistanceFieldReferenceModel load(InputStream is, ReferenceModel exact) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        if (in.readInt() != kMagic)
+            throw new IOException("Not a distance field file");
+        int version = in.readInt();
+        if (version != kVersion)
+            throw new IOException("Unsupported distance field version " + version);
+        if (in.readLong() != getModelHash(exact.segments))
+            throw new IOException("Distance field was built from a different model");
+        double resolution = in.readDouble();
+        double maxError = in.readDouble();
+        double[] origin = {in.readDouble(), in.readDouble()};
+        int cellsX = in.readInt();
+        int cellsY = in.readInt();
+        if (!(resolution > 0) || cellsX <= 0 || cellsY <= 0 || (long) cellsX * cellsY > Integer.MAX_VALUE)
+            throw new IOException("Bad distance field dimensions");
+        int[] cells = new int[cellsX * cellsY];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = in.readInt();
+            if (cells[i] < kExact || cells[i] >= exact.segments.length)
+                throw new IOException("Bad segment index " + cells[i] + " in distance field");
+        }
+        return new DistanceFieldReferenceModel(exact, resolution, maxError, origin, cellsX, cellsY, cells);
+    }
+
+    /**
+     * Loads the table from <code>file</code> if it exists and matches the
+     * given model and parameters, otherwise builds it and saves it there.
+     */
+    public static DistanceFieldReferenceModel loadOrBuild(File file, ReferenceModel exact, double resolution,
+            double padding, double maxError) {
+        if (file.exists()) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                DistanceFieldReferenceModel loaded = load(in, exact);
+                double[] bounds = getBounds(exact.segments, padding);
+                if (loaded.mResolution == resolution && loaded.mMaxError == maxError &&
+                        loaded.mOriginX == bounds[0] && loaded.mOriginY == bounds[1]) {
+                    return loaded;
+                }
+                System.err.println("Distance field " + file + " has different parameters; rebuilding");
+            } catch (IOException e) {
+                System.err.println("Couldn't load distance field " + file + "; rebuilding");
+                e.printStackTrace();
+            }
+        }
+
+        DistanceFieldReferenceModel built = new DistanceFieldReferenceModel(exact, resolution, padding, maxError);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            built.save(out);
+        } catch (IOException e) {
+            System.err.println("Couldn't save distance field " + file);
+            e.printStackTrace();
+        }
+        return built;
+    }
+
+    public String toString() {
+        return "DistanceField" + mCellsX + "x" + mCellsY + "@" + mResolution + super.toString();
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.spartronics4915.frc2019.lidar.icp;
+
+import java.util.Collection;
+
+/**
+ * A {@link ReferenceModel} that buckets its segments into a uniform grid so
+ * that closest-point queries only look at segments near the query point.
+ * This is meant for field-scale models with many walls; for a handful of
+ * segments the plain linear scan is just as fast.
+ * <p>
+ * Results are identical to {@link ReferenceModel#getClosestPoint(Point)},
+ * including which segment wins a tie (the one that comes first).
+ */
+public class GridReferenceModel extends ReferenceModel {
+
+    // Query coordinates further than this many cells outside the grid are
+    // clamped before being turned into indices, so they can't overflow
+    private static final double kMaxCellOffset = 1 << 20;
+
+    private final double mCellSize;
+    private final double mOriginX, mOriginY;
+    private final int mCellsX, mCellsY;
+
+    // Compressed rows: the segments overlapping cell c are
+    // mCellSegments[mCellStart[c] .. mCellStart[c + 1])
+    private final int[] mCellStart;
+    private final int[] mCellSegments;
+
+    /**
+     * @param cellSize Side length of a grid cell, in the same units as the
+     *                 segments. Something around the typical wall length works
+     *                 well.
+     */
+    public GridReferenceModel(double cellSize, Segment... ss) {
+        super(ss);
+        if (!(cellSize > 0)) throw new IllegalArgumentException("cellSize must be positive");
+        mCellSize = cellSize;
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (Segment s : ss) {
+            minX = Math.min(minX, Math.min(s.pMin.x, s.pMax.x));
+            minY = Math.min(minY, Math.min(s.pMin.y, s.pMax.y));
+            maxX = Math.max(maxX, Math.max(s.pMin.x, s.pMax.x));
+            maxY = Math.max(maxY, Math.max(s.pMin.y, s.pMax.y));
+        }
+        mOriginX = minX;
+        mOriginY = minY;
+        mCellsX = (int) Math.floor((maxX - minX) / cellSize) + 1;
+        mCellsY = (int) Math.floor((maxY - minY) / cellSize) + 1;
+
+        // A segment touches a cell only if it passes within half a diagonal of
+        // the cell's center. This can include a few extra corner cells, which
+        // only costs a redundant distance check. The first pass counts the
+        // segments per cell, the second fills them in.
+        double halfDiag = cellSize * Math.sqrt(0.5);
+        double halfDiagSq = halfDiag * halfDiag;
+        int numCells = mCellsX * mCellsY;
+        int[] starts = new int[numCells + 1];
+        int[] segs = null, fill = null;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < ss.length; i++) {
+                Segment s = ss[i];
+                int x0 = getCellX(Math.min(s.pMin.x, s.pMax.x)), x1 = getCellX(Math.max(s.pMin.x, s.pMax.x));
+                int y0 = getCellY(Math.min(s.pMin.y, s.pMax.y)), y1 = getCellY(Math.max(s.pMin.y, s.pMax.y));
+                for (int cy = y0; cy <= y1; cy++) {
+                    for (int cx = x0; cx <= x1; cx++) {
+                        double centerX = mOriginX + (cx + 0.5) * cellSize;
+                        double centerY = mOriginY + (cy + 0.5) * cellSize;
+                        if (getDistanceSq(i, centerX, centerY) > halfDiagSq) continue;
+                        int cell = cy * mCellsX + cx;
+                        if (pass == 0) {
+                            starts[cell + 1]++;
+                        } else {
+                            segs[starts[cell] + fill[cell]++] = i;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int c = 0; c < numCells; c++) {
+                    starts[c + 1] += starts[c];
+                }
+                segs = new int[starts[numCells]];
+                fill = new int[numCells];
+            }
+        }
+        mCellStart = starts;
+        mCellSegments = segs;
+    }
+
+    public GridReferenceModel(double cellSize, Collection<Segment> ss) {
+        this(cellSize, ss.toArray(new Segment[ss.size()]));
+    }
+
+    private int getCellX(double x) {
+        return Math.min(mCellsX - 1, Math.max(0, (int) Math.floor((x - mOriginX) / mCellSize)));
+    }
+
+    private int getCellY(double y) {
+        return Math.min(mCellsY - 1, Math.max(0, (int) Math.floor((y - mOriginY) / mCellSize)));
+    }
+
+    @Override
+    public Point getClosestPoint(Point p) {
+        double[] out = new double[2];
+        getClosestPoint(p.x, p.y, out);
+        return new Point(out[0], out[1]);
+    }
+
+    /**
+     * Searches rings of cells outward from the cell containing (x, y) until
+     * the next ring can't hold anything closer than the best match so far.
+     */
+    @Override
+    public void getClosestPoint(double x, double y, double[] out) {
+        // Cell coordinates of the query, which may lie outside the grid
+        int cx = (int) Math.floor(clampOffset((x - mOriginX) / mCellSize));
+        int cy = (int) Math.floor(clampOffset((y - mOriginY) / mCellSize));
+
+        // Rings closer than this don't overlap the grid at all
+        int firstRing = Math.max(cx < 0 ? -cx : Math.max(0, cx - mCellsX + 1),
+                cy < 0 ? -cy : Math.max(0, cy - mCellsY + 1));
+        // ... and this one covers all of it
+        int lastRing = Math.max(Math.max(Math.abs(cx), Math.abs(cx - mCellsX + 1)),
+                Math.max(Math.abs(cy), Math.abs(cy - mCellsY + 1)));
+
+        double minDist = Double.MAX_VALUE;
+        int minSeg = -1;
+        for (int ring = firstRing; ring <= lastRing; ring++) {
+            // Every cell in this ring is at least ring - 1 whole cells away
+            double reach = (ring - 1) * mCellSize;
+            if (minSeg >= 0 && reach > 0 && reach * reach > minDist) {
+                break;
+            }
+
+            int rowMin = Math.max(cy - ring, 0), rowMax = Math.min(cy + ring, mCellsY - 1);
+            int colMin = Math.max(cx - ring, 0), colMax = Math.min(cx + ring, mCellsX - 1);
+            for (int row = rowMin; row <= rowMax; row++) {
+                boolean edgeRow = row == cy - ring || row == cy + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int col = edgeRow ? colMin : cx - ring; col <= colMax; col += step) {
+                    if (col < colMin) continue;
+                    int cell = row * mCellsX + col;
+                    for (int k = mCellStart[cell]; k < mCellStart[cell + 1]; k++) {
+                        int seg = mCellSegments[k];
+                        double dist = getDistanceSq(seg, x, y);
+                        if (dist < minDist || (dist == minDist && seg < minSeg)) {
+                            minDist = dist;
+                            minSeg = seg;
+                        }
+                    }
+                }
+            }
+        }
+        getClosestPoint(minSeg, x, y, out);
+    }
+
+    private static double clampOffset(double cells) {
+        return Math.max(-kMaxCellOffset, Math.min(kMaxCellOffset, cells));
+    }
+
+    public String toString() {
+        return "Grid" + mCellsX + "x" + mCellsY + "@" + mCellSize + super.toString();
+    }
+
+}
@@ -6,9 +6,31 @@ public class ICP {
 
     public static final double OUTLIER_THRESH = 1.0; // multiplier of the mean distance
 
+    // Point-to-line: every kStrides[k]th point on each pass, coarse to fine,
+    // skipping coarse passes that would have fewer than kMinCoarsePoints
+    private static final int[] kStrides = {16, 4, 1};
+    private static final int kMinCoarsePoints = 32;
+    private static final int kMaxPassIterations = 20;
+    private static final double kCoarseEpsilonScale = 4; // coarse passes only need to get close
+    // Cauchy weights: w = 1 / (1 + (r / (kCauchyScale * sigma))^2), where sigma
+    // is the residuals' robust spread, but no tighter than the lidar's noise
+    private static final double kCauchyScale = 2.3849;
+    private static final double kMinSigma = 0.25; // inches
+    private static final double kMadToSigma = 1.4826;
+    // Keeps directions the model doesn't constrain (like along a lone face)
+    // from being solved for
+    private static final double kDamping = 1e-6;
+
     public ReferenceModel reference;
     public long timeoutNs;
 
+    private int mLastIterations = 0;
+
+    // Point-to-line scratch, grown to fit the largest cloud
+    private final double[] mClosest = new double[4];
+    private double[] mP2x = new double[0], mP2y = new double[0], mNx = new double[0], mNy = new double[0],
+            mResiduals = new double[0], mAbsResiduals = new double[0];
+
     public ICP(ReferenceModel ref, long timeoutMs) {
         reference = ref;
         timeoutNs = timeoutMs * 1000000;
@@ -26,14 +48,18 @@ public class ICP {
      * @param points The point cloud to align
      * @param trans  An initial guess Transform (if null, the identity is used)
      * @return The computed Transform
+     * @throws NoMatchingPointsException if no point could be matched to the
+     *         model, as when the cloud is empty
      */
-    public Transform doICP(Iterable<Point> points, Transform trans) {
+    public Transform doICP(Iterable<Point> points, Transform trans) throws NoMatchingPointsException {
         long startTime = System.nanoTime();
 
         double lastMeanDist = Double.POSITIVE_INFINITY;
 
         trans = trans == null ? new Transform() : trans;
+        mLastIterations = 0;
         while (System.nanoTime() - startTime < timeoutNs) {
+            mLastIterations++;
             final Transform transInv = trans.inverse();
 
             final double threshold = lastMeanDist * OUTLIER_THRESH;
@@ -64,11 +90,11 @@ public class ICP {
                 Syy += p.y * rp.y;
             }
 
+            requireMatches(N);
             lastMeanDist = sumDists / N;
 
             /// calculate the new transform
             // code based on http://mrpt.ual.es/reference/devel/se2__l2_8cpp_source.html#l00158
-            if (N == 0) throw new RuntimeException("ICP: no matching points"); // TODO: handle this better, or avoid it
             final double N_inv = 1.0 / N;
 
             final double mean_x_a = SumXa * N_inv;
@@ -98,10 +124,326 @@ public class ICP {
         return trans;
     }
 
+    /**
+     * Same as {@link #doICP(Iterable, Transform)}, but reads the point cloud
+     * straight out of parallel coordinate arrays and keeps the transform,
+     * the closest-point projection and the sums in scalar locals, so a solve
+     * allocates nothing per point or per iteration.
+     *
+     * @param xs    The x coordinates of the point cloud
+     * @param ys    The y coordinates of the point cloud
+     * @param n     The number of points to use from the arrays
+     * @param trans An initial guess Transform (if null, the identity is used)
+     * @return The computed Transform
+     * @throws NoMatchingPointsException as for
+     *         {@link #doICP(Iterable, Transform)}
+     */
+    public Transform doICP(double[] xs, double[] ys, int n, Transform trans) throws NoMatchingPointsException {
+        long startTime = System.nanoTime();
+
+        double lastMeanDist = Double.POSITIVE_INFINITY;
+        final double[] rp = new double[2]; // closest reference point
+
+        trans = trans == null ? new Transform() : trans;
+        double theta = trans.theta, tx = trans.tx, ty = trans.ty, sin = trans.sin, cos = trans.cos;
+        mLastIterations = 0;
+        while (System.nanoTime() - startTime < timeoutNs) {
+            mLastIterations++;
+            // trans.inverse()
+            final double invSin = -sin, invCos = cos;
+            final double invTx = -tx * cos - ty * sin, invTy = tx * sin - ty * cos;
+
+            final double threshold = lastMeanDist * OUTLIER_THRESH;
+            double sumDists = 0;
+
+            /// get pairs of corresponding points
+            double SumXa = 0, SumXb = 0, SumYa = 0, SumYb = 0;
+            double Sxx = 0, Sxy = 0, Syx = 0, Syy = 0;
+            int N = 0;
+            for (int i = 0; i < n; i++) {
+                final double px = xs[i], py = ys[i];
+                final double p2x = px * invCos - py * invSin + invTx;
+                final double p2y = px * invSin + py * invCos + invTy;
+                reference.getClosestPoint(p2x, p2y, rp);
+                final double rx = rp[0], ry = rp[1];
+                final double dx = p2x - rx, dy = p2y - ry;
+                final double dist = Math.sqrt(dx * dx + dy * dy);
+                sumDists += dist;
+                if (dist > threshold) continue;
+                N++;
+
+                // Compute the terms:
+                SumXa += px;
+                SumYa += py;
+
+                SumXb += rx;
+                SumYb += ry;
+
+                Sxx += px * rx;
+                Sxy += px * ry;
+                Syx += py * rx;
+                Syy += py * ry;
+            }
+
+            requireMatches(N);
+            lastMeanDist = sumDists / N;
+
+            /// calculate the new transform (same closed form as the Point version)
+            final double N_inv = 1.0 / N;
+
+            final double mean_x_a = SumXa * N_inv;
+            final double mean_y_a = SumYa * N_inv;
+            final double mean_x_b = SumXb * N_inv;
+            final double mean_y_b = SumYb * N_inv;
+
+            final double Ax = N * (Sxx + Syy) - SumXa * SumXb - SumYa * SumYb;
+            final double Ay = SumXa * SumYb + N * (Syx - Sxy) - SumXb * SumYa;
+
+            final double newTheta = (Ax == 0 && Ay == 0) ? 0.0 : Math.atan2(Ay, Ax);
+
+            final double ccos = Math.cos(newTheta);
+            final double csin = Math.sin(newTheta);
+
+            final double newTx = mean_x_a - mean_x_b * ccos + mean_y_b * csin;
+            final double newTy = mean_y_a - mean_x_b * csin - mean_y_b * ccos;
+
+            final boolean converged = isConverged(theta, tx, ty, newTheta, newTx, newTy);
+            theta = newTheta;
+            tx = newTx;
+            ty = newTy;
+            sin = csin;
+            cos = ccos;
+            if (converged) {
+                break;
+            }
+        }
+
+        return new Transform(theta, tx, ty, sin, cos);
+    }
+
+    /**
+     * Solves with whichever method {@link Constants#kLidarICPPointToLine}
+     * picks.
+     *
+     * @see #doICP(double[], double[], int, Transform)
+     * @see #doPointToLineICP(double[], double[], int, Transform)
+     */
+    public Transform solve(double[] xs, double[] ys, int n, Transform trans) throws NoMatchingPointsException {
+        return Constants.kLidarICPPointToLine ? doPointToLineICP(xs, ys, n, trans) : doICP(xs, ys, n, trans);
+    }
+
+    /**
+     * @return How many iterations the last solve took, over all of its passes
+     */
+    public int getLastIterations() {
+        return mLastIterations;
+    }
+
+    /**
+     * Finds the same Transform as {@link #doICP(double[], double[], int, Transform)},
+     * but minimizes each point's distance to the model's surface rather than
+     * to a matched point on it, which converges in far fewer iterations
+     * because points are free to slide along the faces they're matched to.
+     * <p>
+     * Each iteration is a Gauss-Newton step on the point-to-line residuals
+     * (point-to-point past the ends of a segment). Instead of a hard outlier
+     * cutoff, residuals are Cauchy weighted, scaled by their median absolute
+     * deviation, so clutter fades out smoothly as the fit improves. The
+     * first passes use a thinned cloud (see {@link #kStrides}) to get close
+     * cheaply, and the last refines on every point. Allocates nothing once
+     * its scratch arrays fit the cloud.
+     *
+     * @param xs    The x coordinates of the point cloud
+     * @param ys    The y coordinates of the point cloud
+     * @param n     The number of points to use from the arrays
+     * @param trans An initial guess Transform (if null, the identity is used)
+     * @return The computed Transform
+     * @throws NoMatchingPointsException as for
+     *         {@link #doICP(Iterable, Transform)}
+     */
+    public Transform doPointToLineICP(double[] xs, double[] ys, int n, Transform trans)
+            throws NoMatchingPointsException {
+        final long startTime = System.nanoTime();
+        trans = trans == null ? new Transform() : trans;
+        ensureScratch(n);
+
+        // Solve for the inverse, which takes the cloud into the model's frame
+        final Transform inverse = trans.inverse();
+        double theta = inverse.theta, sin = inverse.sin, cos = inverse.cos, tx = inverse.tx, ty = inverse.ty;
+
+        mLastIterations = 0;
+        solving:
+        for (int pass = 0; pass < kStrides.length; pass++) {
+            final int stride = kStrides[pass];
+            final boolean last = pass == kStrides.length - 1;
+            if (!last && n / stride < kMinCoarsePoints) {
+                continue;
+            }
+            final double scale = last ? 1 : kCoarseEpsilonScale;
+            for (int iteration = 0; iteration < kMaxPassIterations; iteration++) {
+                if (System.nanoTime() - startTime >= timeoutNs) {
+                    break solving;
+                }
+                mLastIterations++;
+
+                /// match each point to the model
+                int m = 0;
+                double sumX = 0, sumY = 0;
+                for (int i = 0; i < n; i += stride) {
+                    final double p2x = xs[i] * cos - ys[i] * sin + tx;
+                    final double p2y = xs[i] * sin + ys[i] * cos + ty;
+                    reference.getClosestPoint(p2x, p2y, mClosest);
+                    final double ex = p2x - mClosest[0], ey = p2y - mClosest[1];
+                    double nx = mClosest[2], ny = mClosest[3];
+                    if (nx == 0 && ny == 0) {
+                        // Past an end of a segment: the distance is to the end point
+                        final double dist = Math.sqrt(ex * ex + ey * ey);
+                        if (dist > 0) {
+                            nx = ex / dist;
+                            ny = ey / dist;
+                        }
+                    }
+                    final double r = nx * ex + ny * ey;
+                    mP2x[m] = p2x;
+                    mP2y[m] = p2y;
+                    mNx[m] = nx;
+                    mNy[m] = ny;
+                    mResiduals[m] = r;
+                    mAbsResiduals[m] = Math.abs(r);
+                    sumX += p2x;
+                    sumY += p2y;
+                    m++;
+                }
+                requireMatches(m);
+
+                final double sigma = Math.max(kMinSigma, kMadToSigma * select(mAbsResiduals, m, m / 2));
+                final double invC2 = 1 / (kCauchyScale * sigma * kCauchyScale * sigma);
+                // Rotate about the centroid, so the rotation and translation
+                // columns are on similar scales
+                final double cx = sumX / m, cy = sumY / m;
+
+                /// accumulate the weighted normal equations, J = [d/dtheta, d/dx, d/dy]
+                double h00 = 0, h01 = 0, h02 = 0, h11 = 0, h12 = 0, h22 = 0;
+                double g0 = 0, g1 = 0, g2 = 0;
+                for (int j = 0; j < m; j++) {
+                    final double r = mResiduals[j];
+                    final double w = 1 / (1 + r * r * invC2);
+                    final double nx = mNx[j], ny = mNy[j];
+                    final double j0 = ny * (mP2x[j] - cx) - nx * (mP2y[j] - cy);
+                    h00 += w * j0 * j0;
+                    h01 += w * j0 * nx;
+                    h02 += w * j0 * ny;
+                    h11 += w * nx * nx;
+                    h12 += w * nx * ny;
+                    h22 += w * ny * ny;
+                    g0 += w * j0 * r;
+                    g1 += w * nx * r;
+                    g2 += w * ny * r;
+                }
+                final double damping = kDamping * (h00 + h11 + h22) + Double.MIN_NORMAL;
+                h00 += damping;
+                h11 += damping;
+                h22 += damping;
+
+                /// solve H * delta = -g (Cramer's rule on the symmetric 3x3)
+                final double c00 = h11 * h22 - h12 * h12;
+                final double c01 = h02 * h12 - h01 * h22;
+                final double c02 = h01 * h12 - h02 * h11;
+                final double det = h00 * c00 + h01 * c01 + h02 * c02;
+                if (det == 0) {
+                    // Only possible if every weight underflowed; the damping
+                    // keeps H invertible otherwise. Keep the current estimate.
+                    break solving;
+                }
+                final double c11 = h00 * h22 - h02 * h02;
+                final double c12 = h01 * h02 - h00 * h12;
+                final double c22 = h00 * h11 - h01 * h01;
+                final double dTheta = -(c00 * g0 + c01 * g1 + c02 * g2) / det;
+                final double dx = -(c01 * g0 + c11 * g1 + c12 * g2) / det;
+                final double dy = -(c02 * g0 + c12 * g1 + c22 * g2) / det;
+
+                /// apply it: rotate by dTheta about the centroid, then move by (dx, dy)
+                final double dCos = Math.cos(dTheta), dSin = Math.sin(dTheta);
+                final double newTx = (tx - cx) * dCos - (ty - cy) * dSin + cx + dx;
+                final double newTy = (tx - cx) * dSin + (ty - cy) * dCos + cy + dy;
+                final double newTheta = theta + dTheta;
+                final boolean converged = Math.abs(dTheta) < Constants.kLidarICPAngleEpsilon * scale
+                        && Math.abs(newTx - tx) < Constants.kLidarICPTranslationEpsilon * scale
+                        && Math.abs(newTy - ty) < Constants.kLidarICPTranslationEpsilon * scale;
+                theta = newTheta;
+                sin = Math.sin(theta);
+                cos = Math.cos(theta);
+                tx = newTx;
+                ty = newTy;
+                if (converged) {
+                    break;
+                }
+            }
+        }
+
+        return new Transform(theta, tx, ty, sin, cos).inverse();
+    }
+
+    /**
+     * How every solve handles a cloud that nothing in it matched.
+     */
+    private static void requireMatches(int matched) throws NoMatchingPointsException {
+        if (matched == 0) {
+            throw new NoMatchingPointsException();
+        }
+    }
+
+    private void ensureScratch(int n) {
+        if (mP2x.length < n) {
+            mP2x = new double[n];
+            mP2y = new double[n];
+            mNx = new double[n];
+            mNy = new double[n];
+            mResiduals = new double[n];
+            mAbsResiduals = new double[n];
+        }
+    }
+
+    /**
+     * @return The <code>k</code>th smallest of the first <code>n</code>
+     *         values, which are reordered
+     */
+    private static double select(double[] a, int n, int k) {
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            final double pivot = a[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    double tmp = a[i];
+                    a[i] = a[j];
+                    a[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+        return a[k];
+    }
+
     private boolean isConverged(Transform prev, Transform cur) {
-        return Math.abs(prev.theta - cur.theta) < Constants.kLidarICPAngleEpsilon &&
-                Math.abs(prev.tx - cur.tx) < Constants.kLidarICPTranslationEpsilon &&
-                Math.abs(prev.ty - cur.ty) < Constants.kLidarICPTranslationEpsilon;
+        return isConverged(prev.theta, prev.tx, prev.ty, cur.theta, cur.tx, cur.ty);
+    }
+
+    private static boolean isConverged(double prevTheta, double prevTx, double prevTy,
+            double theta, double tx, double ty) {
+        return Math.abs(prevTheta - theta) < Constants.kLidarICPAngleEpsilon &&
+                Math.abs(prevTx - tx) < Constants.kLidarICPTranslationEpsilon &&
+                Math.abs(prevTy - ty) < Constants.kLidarICPTranslationEpsilon;
     }
 
-}
\ No newline at end of file
+}
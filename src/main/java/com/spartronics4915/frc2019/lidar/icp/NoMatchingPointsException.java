@@ -0,0 +1,16 @@
+package com.spartronics4915.frc2019.lidar.icp;
+
+/**
+ * Thrown by {@link ICP} when none of the point cloud could be matched to the
+ * reference model, which in practice means the cloud was empty. There's no
+ * fix to report then, so callers should skip the solve rather than use the
+ * guess as if it were one.
+ */
+public class NoMatchingPointsException extends Exception {
+
+    private static final long serialVersionUID = 2964712043521785318L;
+
+    public NoMatchingPointsException() {
+        super("ICP: no matching points");
+    }
+}
@@ -20,9 +20,47 @@ public class ReferenceModel {
 
     public final Segment[] segments;
 
+    // The segments flattened into parallel arrays for the allocation-free
+    // getClosestPoint(), captured at construction time
+    private final double[] x0, y0, vx, vy, r, tMin, tMax, xMin, yMin, xMax, yMax;
+    // Unit normals, for point-to-line ICP
+    private final double[] nx, ny;
+
     public ReferenceModel(Segment... ss) {
         if (ss.length == 0) throw new IllegalArgumentException("zero Segments passed to ReferenceModel");
         segments = ss;
+
+        int n = ss.length;
+        x0 = new double[n];
+        y0 = new double[n];
+        vx = new double[n];
+        vy = new double[n];
+        r = new double[n];
+        tMin = new double[n];
+        tMax = new double[n];
+        xMin = new double[n];
+        yMin = new double[n];
+        xMax = new double[n];
+        yMax = new double[n];
+        nx = new double[n];
+        ny = new double[n];
+        for (int i = 0; i < n; i++) {
+            Segment s = ss[i];
+            x0[i] = s.line.x0;
+            y0[i] = s.line.y0;
+            vx[i] = s.line.vx;
+            vy[i] = s.line.vy;
+            r[i] = s.line.r;
+            tMin[i] = s.tMin;
+            tMax[i] = s.tMax;
+            xMin[i] = s.pMin.x;
+            yMin[i] = s.pMin.y;
+            xMax[i] = s.pMax.x;
+            yMax[i] = s.pMax.y;
+            double length = Math.hypot(s.line.vx, s.line.vy);
+            nx[i] = s.line.vy / length;
+            ny[i] = -s.line.vx / length;
+        }
     }
 
     public ReferenceModel(Collection<Segment> ss) {
@@ -42,6 +80,63 @@ public class ReferenceModel {
         return minSeg.getClosestPoint(p);
     }
 
+    /**
+     * Allocation-free version of {@link #getClosestPoint(Point)}; writes the
+     * closest point's x and y into <code>out[0]</code> and <code>out[1]</code>.
+     * <p>
+     * If <code>out</code> has room, the unit normal of the segment there goes
+     * in <code>out[2]</code> and <code>out[3]</code>, or 0, 0 if the closest
+     * point is an end of the segment, where the normal isn't defined.
+     */
+    public void getClosestPoint(double x, double y, double[] out) {
+        double minDist = Double.MAX_VALUE;
+        int minSeg = -1;
+        for (int i = 0; i < x0.length; i++) {
+            double dist = getDistanceSq(i, x, y);
+            if (dist < minDist) {
+                minDist = dist;
+                minSeg = i;
+            }
+        }
+        getClosestPoint(minSeg, x, y, out);
+    }
+
+    /**
+     * Primitive version of {@link Segment#getDistanceSq(Point)} for
+     * <code>segments[i]</code>.
+     */
+    final double getDistanceSq(int i, double x, double y) {
+        double t = vx[i] * (x - x0[i]) + vy[i] * (y - y0[i]);
+        if (t <= tMin[i]) return (xMin[i] - x) * (xMin[i] - x) + (yMin[i] - y) * (yMin[i] - y);
+        if (t >= tMax[i]) return (xMax[i] - x) * (xMax[i] - x) + (yMax[i] - y) * (yMax[i] - y);
+        double d = vy[i] * x - vx[i] * y - r[i];
+        return d * d;
+    }
+
+    /**
+     * Primitive version of {@link Segment#getClosestPoint(Point)} for
+     * <code>segments[i]</code>.
+     */
+    final void getClosestPoint(int i, double x, double y, double[] out) {
+        double t = vx[i] * (x - x0[i]) + vy[i] * (y - y0[i]);
+        boolean end = true;
+        if (t <= tMin[i]) {
+            out[0] = xMin[i];
+            out[1] = yMin[i];
+        } else if (t >= tMax[i]) {
+            out[0] = xMax[i];
+            out[1] = yMax[i];
+        } else {
+            out[0] = x0[i] + vx[i] * t;
+            out[1] = y0[i] + vy[i] * t;
+            end = false;
+        }
+        if (out.length >= 4) {
+            out[2] = end ? 0 : nx[i];
+            out[3] = end ? 0 : ny[i];
+        }
+    }
+
     public Point getMidpoint() {
         if (segments.length > 1)
             throw new RuntimeException("getMidpoint() called on multi-segment ReferenceModel");
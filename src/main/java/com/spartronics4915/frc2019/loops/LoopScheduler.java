@@ -0,0 +1,318 @@
+package com.spartronics4915.frc2019.loops;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs one {@link Looper} tick's worth of tasks, spreading the ones that
+ * allow it across a small fixed pool of worker threads.
+ * <p>
+ * Tasks run once per {@link #runTick()}, in an order that respects their
+ * dependencies. A task that isn't parallel-safe is a barrier: it runs after
+ * every task added before it has finished, and every task added after it
+ * waits for it, which is exactly the order the Looper has always used. A
+ * parallel-safe task only waits for the last barrier and the dependencies it
+ * names, so parallel-safe tasks added next to each other can run at the same
+ * time.
+ * <p>
+ * The thread calling {@link #runTick()} works through the ready tasks
+ * alongside the workers, so with no workers everything runs on the calling
+ * thread, one task at a time, in dependency order.
+ */
+public class LoopScheduler
+{
+
+    private final ReentrantLock lock_ = new ReentrantLock();
+    private final Condition changed_ = lock_.newCondition();
+
+    // Fixed once the first tick runs; only changed by add(), between ticks
+    private Runnable[] tasks_ = new Runnable[0];
+    private int[][] dependents_ = new int[0][];
+    private int[] numDependencies_ = new int[0];
+    private int numTasks_ = 0;
+    private int lastBarrier_ = -1;
+
+    // Guarded by lock_
+    private int[] remainingDependencies_ = new int[0];
+    private int[] ready_ = new int[0]; // a FIFO ring
+    private int readyHead_ = 0;
+    private int readyCount_ = 0;
+    private int finished_ = 0;
+    private boolean inTick_ = false;
+    private boolean shutdown_ = false;
+    private Throwable failure_ = null;
+
+    private final Random pickOrder_; // null for FIFO
+    private final Thread[] workers_;
+
+    /**
+     * @param numWorkers
+     *        Threads to run tasks on besides the one calling
+     *        {@link #runTick()}; 0 runs everything on that one
+     */
+    public LoopScheduler(int numWorkers)
+    {
+        this(numWorkers, null);
+    }
+
+    /**
+     * @param pickOrder
+     *        If not null, ready tasks are run in a random order drawn from
+     *        this instead of the order they became ready in. With no workers,
+     *        that gives a repeatable but arbitrary order that tests can use
+     *        to check the dependencies are what's keeping tasks in order.
+     */
+    public LoopScheduler(int numWorkers, Random pickOrder)
+    {
+        pickOrder_ = pickOrder;
+        workers_ = new Thread[numWorkers];
+        for (int i = 0; i < numWorkers; i++)
+        {
+            workers_[i] = new Thread(this::work, "Looper worker " + i);
+            workers_[i].setDaemon(true);
+            workers_[i].start();
+        }
+    }
+
+    /**
+     * Adds a task to run every tick.
+     *
+     * @param dependencies
+     *        Ids of tasks that have to finish before this one starts each
+     *        tick; all must already have been added
+     * @return This task's id
+     */
+    public int add(Runnable task, boolean parallelSafe, int... dependencies)
+    {
+        lock_.lock();
+        try
+        {
+            if (inTick_)
+            {
+                throw new IllegalStateException("Can't add a task during a tick");
+            }
+            int id = numTasks_++;
+            tasks_ = Arrays.copyOf(tasks_, numTasks_);
+            dependents_ = Arrays.copyOf(dependents_, numTasks_);
+            numDependencies_ = Arrays.copyOf(numDependencies_, numTasks_);
+            remainingDependencies_ = new int[numTasks_];
+            ready_ = new int[numTasks_];
+            tasks_[id] = task;
+            dependents_[id] = new int[0];
+
+            if (parallelSafe)
+            {
+                if (lastBarrier_ >= 0)
+                {
+                    addDependency(lastBarrier_, id);
+                }
+                for (int dependency : dependencies)
+                {
+                    if (dependency < 0 || dependency >= id)
+                    {
+                        throw new IllegalArgumentException("Task " + dependency + " hasn't been added yet");
+                    }
+                    if (dependency > lastBarrier_) // anything earlier is implied by the barrier
+                    {
+                        addDependency(dependency, id);
+                    }
+                }
+            }
+            else
+            {
+                // After everything since the last barrier (and so, transitively, everything before it)
+                for (int earlier = Math.max(0, lastBarrier_); earlier < id; earlier++)
+                {
+                    addDependency(earlier, id);
+                }
+                lastBarrier_ = id;
+            }
+            return id;
+        }
+        finally
+        {
+            lock_.unlock();
+        }
+    }
+
+    private void addDependency(int from, int to)
+    {
+        for (int existing : dependents_[from])
+        {
+            if (existing == to)
+            {
+                return;
+            }
+        }
+        dependents_[from] = Arrays.copyOf(dependents_[from], dependents_[from].length + 1);
+        dependents_[from][dependents_[from].length - 1] = to;
+        numDependencies_[to]++;
+    }
+
+    public int getNumTasks()
+    {
+        return numTasks_;
+    }
+
+    /**
+     * Runs every task once, and returns when they've all finished. If a task
+     * throws, the tick carries on (the failed task counts as finished, so its
+     * dependents still run) and the first exception is rethrown at the end.
+     */
+    public void runTick()
+    {
+        Throwable failure;
+        lock_.lock();
+        try
+        {
+            if (inTick_ || shutdown_)
+            {
+                throw new IllegalStateException(shutdown_ ? "Shut down" : "Already in a tick");
+            }
+            if (numTasks_ == 0)
+            {
+                return;
+            }
+            inTick_ = true;
+            finished_ = 0;
+            failure_ = null;
+            readyHead_ = 0;
+            readyCount_ = 0;
+            for (int i = 0; i < numTasks_; i++)
+            {
+                remainingDependencies_[i] = numDependencies_[i];
+                if (numDependencies_[i] == 0)
+                {
+                    pushReady(i);
+                }
+            }
+            changed_.signalAll();
+
+            while (finished_ < numTasks_)
+            {
+                if (readyCount_ == 0)
+                {
+                    changed_.awaitUninterruptibly();
+                    continue;
+                }
+                runTask(popReady());
+            }
+            inTick_ = false;
+            failure = failure_;
+        }
+        finally
+        {
+            lock_.unlock();
+        }
+
+        if (failure instanceof RuntimeException)
+        {
+            throw (RuntimeException) failure;
+        }
+        else if (failure instanceof Error)
+        {
+            throw (Error) failure;
+        }
+        else if (failure != null)
+        {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * Runs a task with lock_ released, then marks it finished and queues any
+     * dependents it was the last thing holding up. Call with lock_ held.
+     */
+    private void runTask(int id)
+    {
+        lock_.unlock();
+        Throwable failure = null;
+        try
+        {
+            tasks_[id].run();
+        }
+        catch (Throwable t)
+        {
+            failure = t;
+        }
+        finally
+        {
+            lock_.lock();
+        }
+
+        if (failure != null && failure_ == null)
+        {
+            failure_ = failure;
+        }
+        for (int dependent : dependents_[id])
+        {
+            if (--remainingDependencies_[dependent] == 0)
+            {
+                pushReady(dependent);
+            }
+        }
+        finished_++;
+        changed_.signalAll();
+    }
+
+    private void pushReady(int id)
+    {
+        ready_[(readyHead_ + readyCount_) % numTasks_] = id;
+        readyCount_++;
+    }
+
+    private int popReady()
+    {
+        if (pickOrder_ != null)
+        {
+            int pick = (readyHead_ + pickOrder_.nextInt(readyCount_)) % numTasks_;
+            int swap = ready_[pick];
+            ready_[pick] = ready_[readyHead_];
+            ready_[readyHead_] = swap;
+        }
+        int id = ready_[readyHead_];
+        readyHead_ = (readyHead_ + 1) % numTasks_;
+        readyCount_--;
+        return id;
+    }
+
+    private void work()
+    {
+        lock_.lock();
+        try
+        {
+            while (!shutdown_)
+            {
+                if (readyCount_ == 0)
+                {
+                    changed_.awaitUninterruptibly();
+                    continue;
+                }
+                runTask(popReady());
+            }
+        }
+        finally
+        {
+            lock_.unlock();
+        }
+    }
+
+    /**
+     * Stops the workers. No more ticks can be run afterwards.
+     */
+    public void shutdown()
+    {
+        lock_.lock();
+        try
+        {
+            shutdown_ = true;
+            changed_.signalAll();
+        }
+        finally
+        {
+            lock_.unlock();
+        }
+    }
+}
@@ -4,31 +4,98 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.spartronics4915.frc2019.Constants;
+import com.spartronics4915.lib.util.Clock;
 import com.spartronics4915.lib.util.CrashTrackingRunnable;
+import com.spartronics4915.lib.util.LatencyHistogram;
 import com.spartronics4915.lib.util.Logger;
 
-import edu.wpi.first.wpilibj.Notifier;
-import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
  * This code runs all of the robot's loops. Loop objects are stored in a List
  * object. They are started when the robot
  * powers up and stopped after the match.
+ * <p>
+ * Loops can run slower than every {@link #kPeriod} tick: a loop registered
+ * with a longer period runs every Nth tick, where N is the period rounded to
+ * a whole number of ticks. Each slow loop is given the phase (which of its N
+ * ticks it runs on) that collides with the fewest other slow loops, so they
+ * don't all pile onto the same tick.
+ * <p>
+ * Loops registered with {@link #registerParallel(Loop, double, Loop...)} may
+ * run at the same time as each other, on a pool of
+ * {@link Constants#kLooperWorkerThreads} worker threads, waiting only for the
+ * loops they name as dependencies (see {@link LoopScheduler}). Loops
+ * registered the usual way still run strictly in registration order.
+ * <p>
+ * Ticks come from a {@link TickSource} and times from the {@link Clock}, so a
+ * Looper can run off-robot against a {@link SimulatedClock}.
+ * <p>
+ * Each loop's onLoop and each whole iteration are timed into preallocated
+ * {@link LatencyHistogram}s, and iterations that take longer than
+ * {@link #kPeriod} are counted as overruns. Every
+ * {@link #kTimingReportPeriod} seconds, {@link #outputToSmartDashboard()}
+ * publishes the p50/p99/max of each, and logs them if there were overruns.
  */
 public class Looper
 {
 
     public final double kPeriod = Constants.kLooperDt;
+    private static final double kTimingReportPeriod = 1.0; // seconds
 
     private boolean running_;
 
-    private final Notifier notifier_;
-    private final List<Loop> loops_;
+    private class ScheduledLoop implements Runnable
+    {
+
+        final Loop loop;
+        final String name;
+        final int divisor; // runs every divisor ticks...
+        final int phase; // ...on the ticks where tick % divisor == phase
+        int ticksUntilRun;
+
+        final LatencyHistogram times = new LatencyHistogram(); // recorded by the loop thread(s)
+        final LatencyHistogram reportTimes = new LatencyHistogram(); // the last complete report period's
+        int id; // in scheduler_
+
+        ScheduledLoop(String name, Loop loop, int divisor, int phase)
+        {
+            this.loop = loop;
+            this.name = name;
+            this.divisor = divisor;
+            this.phase = phase;
+        }
+
+        @Override
+        public void run()
+        {
+            if (--ticksUntilRun > 0)
+            {
+                return;
+            }
+            ticksUntilRun = divisor;
+            long loopStart = System.nanoTime();
+            loop.onLoop(now_);
+            times.record(System.nanoTime() - loopStart);
+        }
+    }
+
+    private final TickSource tickSource_;
+    private final List<ScheduledLoop> loops_;
+    private final LoopScheduler scheduler_ = new LoopScheduler(Constants.kLooperWorkerThreads);
     private final Object taskRunningLock_ = new Object();
     private double timestamp_ = 0;
+    private double now_ = 0; // the current tick's timestamp; published to workers by scheduler_
     private double dt_ = 0;
 
+    private final LatencyHistogram iterationTimes_ = new LatencyHistogram();
+    private final long periodNanos_ = (long) (kPeriod * 1e9);
+    private volatile long overruns_ = 0;
+
+    private final LatencyHistogram reportIterationTimes_ = new LatencyHistogram();
+    private double lastReportTime_ = Double.NaN;
+    private long lastReportOverruns_ = 0;
+
     private final CrashTrackingRunnable runnable_ = new CrashTrackingRunnable()
     {
 
@@ -39,11 +106,17 @@ public class Looper
             {
                 if (running_)
                 {
-                    double now = Timer.getFPGATimestamp();
+                    double now = Clock.getTimestamp();
+                    long iterationStart = System.nanoTime();
+
+                    now_ = now;
+                    scheduler_.runTick(); // returns once every loop has finished
 
-                    for (Loop loop : loops_)
+                    long iterationTime = System.nanoTime() - iterationStart;
+                    iterationTimes_.record(iterationTime);
+                    if (iterationTime > periodNanos_)
                     {
-                        loop.onLoop(now);
+                        overruns_++; // only written by this thread
                     }
 
                     dt_ = now - timestamp_;
@@ -55,19 +128,153 @@ public class Looper
 
     public Looper()
     {
-        notifier_ = new Notifier(runnable_);
+        this(new NotifierTickSource());
+    }
+
+    public Looper(TickSource tickSource)
+    {
+        tickSource_ = tickSource;
         running_ = false;
         loops_ = new ArrayList<>();
     }
 
+    /**
+     * @return The name a loop's times are reported under when it's
+     *         registered without one: its class's simple name, or the full
+     *         binary name (like "...subsystems.Drive$1") for an anonymous
+     *         class, whose simple name is empty
+     */
+    private static String getDefaultName(Loop loop)
+    {
+        String name = loop.getClass().getSimpleName();
+        return name.isEmpty() ? loop.getClass().getName() : name;
+    }
+
+    /**
+     * Registers a loop to run every tick.
+     */
     public synchronized void register(Loop loop)
     {
+        register(getDefaultName(loop), loop, kPeriod);
+    }
+
+    /**
+     * Registers a loop to run every tick, with its times reported under
+     * <code>name</code>.
+     */
+    public synchronized void register(String name, Loop loop)
+    {
+        register(name, loop, kPeriod);
+    }
+
+    /**
+     * Registers a loop to run about every <code>period</code> seconds (the
+     * nearest whole number of ticks, and at least every tick).
+     */
+    public synchronized void register(Loop loop, double period)
+    {
+        register(getDefaultName(loop), loop, period);
+    }
+
+    /**
+     * As {@link #register(Loop, double)}, with the loop's times reported
+     * under <code>name</code>.
+     */
+    public synchronized void register(String name, Loop loop, double period)
+    {
+        add(name, loop, period, false);
+    }
+
+    /**
+     * Registers a loop that's safe to run at the same time as other loops
+     * (on one of the worker threads) as long as each of its
+     * <code>dependencies</code> has finished first that tick.
+     *
+     * @param period
+     *        As for {@link #register(Loop, double)}
+     * @param dependencies
+     *        Already-registered loops that have to run before this one
+     */
+    public synchronized void registerParallel(Loop loop, double period, Loop... dependencies)
+    {
+        registerParallel(getDefaultName(loop), loop, period, dependencies);
+    }
+
+    /**
+     * As {@link #registerParallel(Loop, double, Loop...)}, with the loop's
+     * times reported under <code>name</code>.
+     */
+    public synchronized void registerParallel(String name, Loop loop, double period, Loop... dependencies)
+    {
+        add(name, loop, period, true, dependencies);
+    }
+
+    private void add(String name, Loop loop, double period, boolean parallelSafe, Loop... dependencies)
+    {
+        int divisor = Math.max(1, (int) Math.round(period / kPeriod));
         synchronized (taskRunningLock_)
         {
-            loops_.add(loop);
+            int[] dependencyIds = new int[dependencies.length];
+            for (int i = 0; i < dependencies.length; i++)
+            {
+                dependencyIds[i] = -1;
+                for (ScheduledLoop other : loops_)
+                {
+                    if (other.loop == dependencies[i])
+                    {
+                        dependencyIds[i] = other.id;
+                    }
+                }
+                if (dependencyIds[i] < 0)
+                {
+                    throw new IllegalArgumentException(dependencies[i] + " isn't registered");
+                }
+            }
+            ScheduledLoop scheduled = new ScheduledLoop(name, loop, divisor, pickPhase(divisor));
+            scheduled.id = scheduler_.add(scheduled, parallelSafe, dependencyIds);
+            loops_.add(scheduled);
         }
     }
 
+    private static int gcd(int a, int b)
+    {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Picks the phase for a loop that runs every <code>divisor</code> ticks
+     * that shares ticks with the fewest existing slow loops. Two loops with
+     * divisors a and b and phases p and q ever run on the same tick if and
+     * only if p and q are congruent modulo gcd(a, b).
+     */
+    private int pickPhase(int divisor)
+    {
+        int bestPhase = 0;
+        int bestCollisions = Integer.MAX_VALUE;
+        for (int phase = 0; phase < divisor; phase++)
+        {
+            int collisions = 0;
+            for (ScheduledLoop other : loops_)
+            {
+                if (other.divisor == 1)
+                {
+                    continue; // collides with everything anyway
+                }
+                int g = gcd(divisor, other.divisor);
+                if (phase % g == other.phase % g)
+                {
+                    collisions++;
+                }
+            }
+            if (collisions < bestCollisions)
+            {
+                bestPhase = phase;
+                bestCollisions = collisions;
+            }
+        }
+        return bestPhase;
+    }
+
     public synchronized void start()
     {
         if (!running_)
@@ -75,14 +282,15 @@ public class Looper
             Logger.notice("Looper starting subsystem loops");
             synchronized (taskRunningLock_)
             {
-                timestamp_ = Timer.getFPGATimestamp();
-                for (Loop loop : loops_)
+                timestamp_ = Clock.getTimestamp();
+                for (ScheduledLoop scheduled : loops_)
                 {
-                    loop.onStart(timestamp_);
+                    scheduled.loop.onStart(timestamp_);
+                    scheduled.ticksUntilRun = scheduled.phase + 1; // so it runs on tick "phase", counting from 0
                 }
                 running_ = true;
             }
-            notifier_.startPeriodic(kPeriod);
+            tickSource_.start(runnable_, kPeriod);
         }
     }
 
@@ -91,22 +299,92 @@ public class Looper
         if (running_)
         {
             Logger.notice("Looper stopping subsystem loops");
-            notifier_.stop();
+            tickSource_.stop();
             synchronized (taskRunningLock_)
             {
                 running_ = false;
-                timestamp_ = Timer.getFPGATimestamp();
-                for (Loop loop : loops_)
+                timestamp_ = Clock.getTimestamp();
+                for (ScheduledLoop scheduled : loops_)
                 {
-                    Logger.notice("Looper stopping " + loop);
-                    loop.onStop(timestamp_);
+                    Logger.notice("Looper stopping " + scheduled.loop);
+                    scheduled.loop.onStop(timestamp_);
                 }
             }
         }
     }
 
-    public void outputToSmartDashboard()
+    /**
+     * @return The number of iterations that have taken longer than
+     *         {@link #kPeriod}
+     */
+    public long getOverruns()
+    {
+        return overruns_;
+    }
+
+    /**
+     * @return p50/p99/max of each loop and of the whole iteration over the
+     *         last complete report period, one per line
+     */
+    public synchronized String getTimingReport()
+    {
+        StringBuilder report = new StringBuilder();
+        appendTimes(report, "iteration", reportIterationTimes_);
+        for (ScheduledLoop scheduled : loops_)
+        {
+            appendTimes(report, scheduled.name, scheduled.reportTimes);
+        }
+        return report.toString();
+    }
+
+    private static void appendTimes(StringBuilder report, String name, LatencyHistogram times)
+    {
+        report.append(name)
+                .append(": p50 ").append(times.getPercentile(50) / 1e6)
+                .append(" ms, p99 ").append(times.getPercentile(99) / 1e6)
+                .append(" ms, max ").append(times.getMax() / 1e6)
+                .append(" ms\n");
+    }
+
+    private static void putTimes(String name, LatencyHistogram times)
+    {
+        SmartDashboard.putNumber("Looper/" + name + "/p50Ms", times.getPercentile(50) / 1e6);
+        SmartDashboard.putNumber("Looper/" + name + "/p99Ms", times.getPercentile(99) / 1e6);
+        SmartDashboard.putNumber("Looper/" + name + "/maxMs", times.getMax() / 1e6);
+    }
+
+    public synchronized void outputToSmartDashboard()
     {
         SmartDashboard.putNumber("looper_dt", dt_);
+
+        double now = Clock.getTimestamp();
+        if (!(now - lastReportTime_ < kTimingReportPeriod)) // also true the first time, when it's NaN
+        {
+            synchronized (taskRunningLock_)
+            {
+                // Held only long enough to copy, so a register() can't resize the lists under us
+                iterationTimes_.drainTo(reportIterationTimes_);
+                for (ScheduledLoop scheduled : loops_)
+                {
+                    scheduled.times.drainTo(scheduled.reportTimes);
+                }
+            }
+
+            putTimes("iteration", reportIterationTimes_);
+            for (ScheduledLoop scheduled : loops_)
+            {
+                putTimes(scheduled.name, scheduled.reportTimes);
+            }
+            long overruns = overruns_;
+            SmartDashboard.putNumber("Looper/overruns", overruns);
+            if (overruns != lastReportOverruns_)
+            {
+                Logger.warning("Looper overran its " + kPeriod * 1000 + " ms period "
+                        + (overruns - lastReportOverruns_) + " times:\n" + getTimingReport());
+            }
+
+            lastReportTime_ = now;
+            lastReportOverruns_ = overruns;
+        }
     }
 }
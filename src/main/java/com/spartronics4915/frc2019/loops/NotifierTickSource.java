@@ -0,0 +1,33 @@
+package com.spartronics4915.frc2019.loops;
+
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+ * Ticks from a WPILib {@link Notifier}, in real time.
+ */
+public class NotifierTickSource implements TickSource
+{
+
+    private Notifier notifier_ = null;
+    private Runnable tick_ = null;
+
+    @Override
+    public synchronized void start(Runnable tick, double period)
+    {
+        if (notifier_ == null || tick != tick_)
+        {
+            notifier_ = new Notifier(tick);
+            tick_ = tick;
+        }
+        notifier_.startPeriodic(period);
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        if (notifier_ != null)
+        {
+            notifier_.stop();
+        }
+    }
+}
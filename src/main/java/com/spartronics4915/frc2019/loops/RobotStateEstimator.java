@@ -1,16 +1,23 @@
 package com.spartronics4915.frc2019.loops;
 
+import com.spartronics4915.frc2019.Constants;
 import com.spartronics4915.frc2019.Kinematics;
 import com.spartronics4915.frc2019.RobotState;
+import com.spartronics4915.frc2019.lidar.LidarLocalizer;
 import com.spartronics4915.frc2019.subsystems.Drive;
+import com.spartronics4915.lib.math.Pose2d;
 import com.spartronics4915.lib.math.Rotation2d;
 import com.spartronics4915.lib.math.Twist2d;
+import com.spartronics4915.lib.util.InterpolatingDouble;
+
+import java.util.Map;
 
 /**
  * Periodically estimates the state of the robot using the robot's distance
  * traveled (compares two waypoints), gyroscope
  * orientation, and velocity, among various other factors. Similar to a car's
- * odometer.
+ * odometer. Lidar fixes from the {@link LidarLocalizer} are fused in as
+ * they arrive.
  */
 public class RobotStateEstimator implements Loop
 {
@@ -32,6 +39,7 @@ public class RobotStateEstimator implements Loop
 
     RobotState mRobotState = RobotState.getInstance();
     Drive mDrive = Drive.getInstance();
+    LidarLocalizer mLidar = LidarLocalizer.getInstance();
     double mLeftEncoderPrevDist = 0;
     double mRightEncoderPrevDist = 0;
 
@@ -55,6 +63,12 @@ public class RobotStateEstimator implements Loop
         mRobotState.addObservations(timestamp, odometry_velocity, predicted_velocity);
         mLeftEncoderPrevDist = left_distance;
         mRightEncoderPrevDist = right_distance;
+
+        final Map.Entry<InterpolatingDouble, Pose2d> lidar_fix = mLidar.takeNewFix();
+        if (Constants.kLidarFuseIntoOdometry && lidar_fix != null)
+        {
+            mRobotState.addFieldToLidarFix(lidar_fix.getKey().value, lidar_fix.getValue());
+        }
     }
 
     @Override
@@ -0,0 +1,105 @@
+package com.spartronics4915.frc2019.loops;
+
+import com.spartronics4915.lib.util.Clock;
+
+/**
+ * Simulated time that only moves when told to, for running the loop stack
+ * off-robot and faster than real time.
+ * <p>
+ * Use it as both the {@link Clock} source and a {@link Looper}'s
+ * {@link TickSource}: {@link #runFor(double)} then advances time one Looper
+ * period at a time and runs the Looper's tick synchronously after each step,
+ * so the loops see exactly the timestamps they would on the robot no matter
+ * how long they take to run. Threads that {@link Clock#sleep(double)} (like
+ * auto modes) wake when simulated time passes their wake-up time, but aren't
+ * kept in lockstep with the ticks.
+ */
+public class SimulatedClock implements Clock.Source, TickSource
+{
+
+    private double time_;
+    private Runnable tick_ = null;
+    private double period_ = 0;
+
+    public SimulatedClock(double startTime)
+    {
+        time_ = startTime;
+    }
+
+    @Override
+    public synchronized double getTimestamp()
+    {
+        return time_;
+    }
+
+    @Override
+    public synchronized void sleep(double seconds) throws InterruptedException
+    {
+        final double wakeTime = time_ + seconds;
+        while (time_ < wakeTime)
+        {
+            wait();
+        }
+    }
+
+    @Override
+    public synchronized void start(Runnable tick, double period)
+    {
+        tick_ = tick;
+        period_ = period;
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        tick_ = null;
+    }
+
+    private synchronized void step(double seconds)
+    {
+        time_ += seconds;
+        notifyAll();
+    }
+
+    /**
+     * Advances time by <code>seconds</code> without ticking.
+     */
+    public void advance(double seconds)
+    {
+        step(seconds);
+    }
+
+    /**
+     * Advances time by <code>seconds</code> (rounded to a whole number of
+     * ticks), running the tick after each period, as a Notifier would. If
+     * nothing has been started, time just advances.
+     */
+    public void runFor(double seconds)
+    {
+        Runnable tick;
+        double period;
+        synchronized (this)
+        {
+            tick = tick_;
+            period = period_;
+        }
+        if (tick == null)
+        {
+            advance(seconds);
+            return;
+        }
+        long ticks = Math.round(seconds / period);
+        for (long i = 0; i < ticks; i++)
+        {
+            step(period);
+            tick.run();
+            synchronized (this)
+            {
+                if (tick_ != tick)
+                {
+                    return; // stopped (or restarted) by the tick itself
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.spartronics4915.frc2019.loops;
+
+/**
+ * Calls a {@link Looper}'s tick periodically: a WPILib Notifier on the robot
+ * ({@link NotifierTickSource}), or a {@link SimulatedClock} in simulation.
+ */
+public interface TickSource
+{
+
+    /**
+     * Starts calling <code>tick</code> every <code>period</code> seconds.
+     */
+    public void start(Runnable tick, double period);
+
+    public void stop();
+}
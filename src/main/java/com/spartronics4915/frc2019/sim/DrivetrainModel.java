@@ -0,0 +1,28 @@
+package com.spartronics4915.frc2019.sim;
+
+import com.spartronics4915.frc2019.Constants;
+import com.spartronics4915.lib.sim.DifferentialDrivePlant;
+
+/**
+ * Our drivetrain, as {@link DifferentialDrivePlant} sees it.
+ */
+public class DrivetrainModel
+{
+
+    public static DifferentialDrivePlant.Parameters getParameters()
+    {
+        return new DifferentialDrivePlant.Parameters(
+                Constants.kDriveWheelDiameterInches,
+                Constants.kEncoderCodesPerRev * 4, // quadrature
+                Constants.kTrackWidthInches / Constants.kTrackScrubFactor,
+                Constants.kSimDriveKv,
+                Constants.kSimDriveKa,
+                Constants.kSimDriveKs,
+                Constants.kSimDriveMaxVoltage,
+                Constants.kSimDriveMaxTractionAccel,
+                Constants.kSimDriveEncoderLatency,
+                Constants.kSimDriveGyroLatency,
+                Constants.kSimDriveGyroDrift,
+                Constants.kSimDriveDt);
+    }
+}
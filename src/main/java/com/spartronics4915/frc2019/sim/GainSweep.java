@@ -0,0 +1,346 @@
+package com.spartronics4915.frc2019.sim;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.spartronics4915.frc2019.Constants;
+import com.spartronics4915.frc2019.paths.CrossBaselinePath;
+import com.spartronics4915.frc2019.paths.PathBuilder.Waypoint;
+import com.spartronics4915.frc2019.paths.PathContainer;
+import com.spartronics4915.lib.control.Lookahead;
+import com.spartronics4915.lib.control.PathFollower;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.sim.DifferentialDrivePlant;
+
+/**
+ * Tunes the PathFollower offline: drives a set of paths in
+ * {@link PathSimulation} with every candidate set of
+ * {@link PathFollower.Parameters} from a grid or a random search, spread
+ * across all cores with a {@link ForkJoinPool}, and ranks the candidates.
+ * <p>
+ * Each candidate's cross-track error, along-track error (both RMS over the
+ * run) and completion time are averaged over the paths and divided by the
+ * same averages for the current Constants, so the current gains score 1 on
+ * each and 3 in total; lower is better. A candidate that fails to finish any
+ * path ranks below every one that finishes them all. The ranking is written
+ * to a report, and the winner to a constants file to paste into Constants.
+ * <p>
+ * Run it with <code>./gradlew gainSweep</code>, or
+ * <code>./gradlew gainSweep -PsweepArgs="random 2000 17"</code>; see
+ * {@link #main(String[])} for the arguments. The simulated drivetrain is
+ * {@link DrivetrainModel}, so results are only as good as its constants.
+ */
+public class GainSweep
+{
+
+    private static final double kTimeout = 20.0; // seconds per path
+    private static final int kNumToReport = 25;
+
+    public static class Candidate
+    {
+
+        public final PathFollower.Parameters parameters;
+        public int paths_finished = 0;
+        public double cross_track_error = 0; // mean over the paths of the RMS error, inches
+        public double along_track_error = 0;
+        public double time = 0; // mean seconds to finish
+        public double score = Double.POSITIVE_INFINITY;
+
+        public Candidate(PathFollower.Parameters parameters)
+        {
+            this.parameters = parameters;
+        }
+    }
+
+    private final List<PathContainer> mPaths;
+    private final DifferentialDrivePlant.Parameters mPlant;
+
+    public GainSweep(List<PathContainer> paths, DifferentialDrivePlant.Parameters plant)
+    {
+        mPaths = paths;
+        mPlant = plant;
+    }
+
+    /**
+     * @return The paths we sweep over by default: the real autos that can be
+     *         driven from their start poses, and some turns and a reverse
+     */
+    public static List<PathContainer> getDefaultPaths()
+    {
+        return Arrays.asList(
+                new CrossBaselinePath(),
+                new WaypointPath("RightTurn", Pose2d.identity(), false,
+                        new Waypoint(0, 0, 0, 0),
+                        new Waypoint(100, 0, 30, 80),
+                        new Waypoint(100, -100, 0, 80)),
+                new WaypointPath("SCurve", Pose2d.identity(), false,
+                        new Waypoint(0, 0, 0, 0),
+                        new Waypoint(80, 0, 30, 100),
+                        new Waypoint(80, 80, 30, 100),
+                        new Waypoint(180, 80, 0, 60)),
+                new WaypointPath("Reverse", Pose2d.identity(), true,
+                        new Waypoint(0, 0, 0, 0),
+                        new Waypoint(-120, 0, 0, 60)));
+    }
+
+    private static PathFollower.Parameters makeParameters(double minLookahead, double maxLookahead,
+            double inertiaGain, double kp, double ki, double kv, double kffv, double kffa)
+    {
+        return new PathFollower.Parameters(
+                new Lookahead(minLookahead, maxLookahead,
+                        Constants.kMinLookAheadSpeed, Constants.kMaxLookAheadSpeed),
+                inertiaGain, kp, ki, kv, kffv, kffa,
+                Constants.kPathFollowingMaxVel, Constants.kPathFollowingMaxAccel,
+                Constants.kPathFollowingGoalPosTolerance,
+                Constants.kPathFollowingGoalVelTolerance,
+                Constants.kPathStopSteeringDistance);
+    }
+
+    /**
+     * @return Every combination of a few values of each profile gain and the
+     *         lookahead distance
+     */
+    public static List<PathFollower.Parameters> grid()
+    {
+        final double[] kps = { 1, 2, 4, 6 };
+        final double[] kis = { 0, 0.04, 0.08 };
+        final double[] kvs = { 0, 0.02, 0.05 };
+        final double[] kffvs = { 0.8, 0.9, 1.0 };
+        final double[] kffas = { 0, 0.05 };
+        final double[] minLookaheads = { 9, 12, 16 };
+        List<PathFollower.Parameters> grid = new ArrayList<>();
+        for (double kp : kps)
+            for (double ki : kis)
+                for (double kv : kvs)
+                    for (double kffv : kffvs)
+                        for (double kffa : kffas)
+                            for (double minLookahead : minLookaheads)
+                                grid.add(makeParameters(minLookahead, minLookahead + Constants.kDeltaLookAhead,
+                                        Constants.kInertiaSteeringGain, kp, ki, kv, kffv, kffa));
+        return grid;
+    }
+
+    /**
+     * @return <code>count</code> candidates drawn uniformly from ranges
+     *         around the grid's, the same ones for the same seed
+     */
+    public static List<PathFollower.Parameters> random(int count, long seed)
+    {
+        final Random random = new Random(seed);
+        List<PathFollower.Parameters> candidates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            final double minLookahead = 6 + 14 * random.nextDouble();
+            candidates.add(makeParameters(minLookahead, minLookahead + 16 * random.nextDouble(),
+                    0.01 * random.nextDouble(), // inertia gain
+                    0.5 + 7.5 * random.nextDouble(), // kp
+                    0.2 * random.nextDouble(), // ki
+                    0.1 * random.nextDouble(), // kv
+                    0.6 + 0.5 * random.nextDouble(), // kffv
+                    0.1 * random.nextDouble())); // kffa
+        }
+        return candidates;
+    }
+
+    /**
+     * Drives every path with one candidate's parameters and fills in its
+     * (unnormalized) results.
+     */
+    private void evaluate(Candidate candidate)
+    {
+        double crossTrack = 0, alongTrack = 0, time = 0;
+        for (PathContainer path : mPaths)
+        {
+            PathSimulation.Result result = PathSimulation.run(path, candidate.parameters, mPlant, kTimeout);
+            if (result.finished)
+                candidate.paths_finished++;
+            crossTrack += result.rms_cross_track_error;
+            alongTrack += result.rms_along_track_error;
+            time += result.time;
+        }
+        candidate.cross_track_error = crossTrack / mPaths.size();
+        candidate.along_track_error = alongTrack / mPaths.size();
+        candidate.time = time / mPaths.size();
+    }
+
+    /**
+     * Evaluates a range of candidates, splitting it in half until each piece
+     * is a single candidate, so the pool's workers can steal work from each
+     * other as some candidates take longer than others.
+     */
+    private class EvaluateRange extends RecursiveAction
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Candidate[] mCandidates;
+        private final int mFrom, mTo;
+
+        EvaluateRange(Candidate[] candidates, int from, int to)
+        {
+            mCandidates = candidates;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (mTo - mFrom == 1)
+            {
+                evaluate(mCandidates[mFrom]);
+                return;
+            }
+            final int mid = (mFrom + mTo) >>> 1;
+            invokeAll(new EvaluateRange(mCandidates, mFrom, mid), new EvaluateRange(mCandidates, mid, mTo));
+        }
+    }
+
+    /**
+     * Evaluates the baseline and every candidate on <code>pool</code>, and
+     * scores them against the baseline.
+     *
+     * @return The candidates, best first; the baseline is scored but not
+     *         included
+     */
+    public List<Candidate> run(Candidate baseline, List<PathFollower.Parameters> parameters, ForkJoinPool pool)
+    {
+        final Candidate[] candidates = new Candidate[parameters.size() + 1];
+        candidates[0] = baseline;
+        for (int i = 0; i < parameters.size(); i++)
+        {
+            candidates[i + 1] = new Candidate(parameters.get(i));
+        }
+        pool.invoke(new EvaluateRange(candidates, 0, candidates.length));
+
+        for (Candidate candidate : candidates)
+        {
+            candidate.score = candidate.cross_track_error / baseline.cross_track_error
+                    + candidate.along_track_error / baseline.along_track_error
+                    + candidate.time / baseline.time;
+        }
+        List<Candidate> ranked = new ArrayList<>(Arrays.asList(candidates).subList(1, candidates.length));
+        ranked.sort(Comparator.comparingInt((Candidate c) -> -c.paths_finished)
+                .thenComparingDouble(c -> c.score));
+        return ranked;
+    }
+
+    private static String describe(PathFollower.Parameters p)
+    {
+        return String.format("lookahead %5.1f-%5.1f inertia %.4f kp %6.3f ki %6.4f kv %6.4f kffv %5.3f kffa %6.4f",
+                p.lookahead.min_distance, p.lookahead.max_distance, p.inertia_gain, p.profile_kp,
+                p.profile_ki, p.profile_kv, p.profile_kffv, p.profile_kffa);
+    }
+
+    private static String describe(Candidate c)
+    {
+        return String.format("%6.3f  CTE %6.3f  ATE %6.3f  time %6.2f  finished %d", c.score,
+                c.cross_track_error, c.along_track_error, c.time, c.paths_finished);
+    }
+
+    public void writeReport(PrintWriter out, String search, Candidate baseline, List<Candidate> ranked)
+    {
+        out.println("PathFollower gain sweep: " + search + ", " + ranked.size() + " candidates");
+        List<String> pathNames = new ArrayList<>();
+        for (PathContainer path : mPaths)
+        {
+            pathNames.add(path instanceof WaypointPath ? path.toString() : path.getClass().getSimpleName());
+        }
+        out.println("Paths: " + pathNames);
+        out.println("Score = CTE / baseline CTE + ATE / baseline ATE + time / baseline time"
+                + " (CTE and ATE are RMS inches, averaged over the paths)");
+        out.println();
+        out.println("Baseline (Constants):");
+        out.println("  " + describe(baseline));
+        out.println("  " + describe(baseline.parameters));
+        out.println();
+        out.println("Best " + Math.min(kNumToReport, ranked.size()) + ":");
+        for (int i = 0; i < Math.min(kNumToReport, ranked.size()); i++)
+        {
+            out.println(String.format("%3d %s", i + 1, describe(ranked.get(i))));
+            out.println("    " + describe(ranked.get(i).parameters));
+        }
+    }
+
+    public static void writeConstants(PrintWriter out, Candidate best, Candidate baseline)
+    {
+        final PathFollower.Parameters p = best.parameters;
+        out.println("    // Path following constants from the gain sweep; score " + String.format("%.3f", best.score)
+                + " against " + String.format("%.3f", baseline.score) + " for the previous values");
+        out.println("    public static final double kMinLookAhead = " + p.lookahead.min_distance + "; // inches");
+        out.println("    public static final double kMaxLookAhead = " + p.lookahead.max_distance + "; // inches");
+        out.println("    public static final double kInertiaSteeringGain = " + p.inertia_gain + ";");
+        out.println("    public static final double kPathFollowingProfileKp = " + p.profile_kp + ";");
+        out.println("    public static final double kPathFollowingProfileKi = " + p.profile_ki + ";");
+        out.println("    public static final double kPathFollowingProfileKv = " + p.profile_kv + ";");
+        out.println("    public static final double kPathFollowingProfileKffv = " + p.profile_kffv + ";");
+        out.println("    public static final double kPathFollowingProfileKffa = " + p.profile_kffa + ";");
+    }
+
+    /**
+     * Arguments: <code>grid</code> (the default) or
+     * <code>random [count [seed]]</code>, optionally followed by the directory
+     * to write <code>gain-sweep-report.txt</code> and
+     * <code>gain-sweep-constants.txt</code> to (default build/gainSweep).
+     */
+    public static void main(String[] args) throws IOException
+    {
+        List<PathFollower.Parameters> parameters;
+        String search;
+        int arg = 0;
+        if (args.length > 0 && args[0].equals("random"))
+        {
+            arg++;
+            int count = 1000;
+            long seed = 0;
+            if (arg < args.length && args[arg].matches("\\d+"))
+                count = Integer.parseInt(args[arg++]);
+            if (arg < args.length && args[arg].matches("-?\\d+"))
+                seed = Long.parseLong(args[arg++]);
+            parameters = random(count, seed);
+            search = "random search, seed " + seed;
+        }
+        else
+        {
+            if (args.length > 0 && args[0].equals("grid"))
+                arg++;
+            parameters = grid();
+            search = "grid search";
+        }
+        final File outputDir = new File(arg < args.length ? args[arg] : "build/gainSweep");
+        outputDir.mkdirs();
+
+        final GainSweep sweep = new GainSweep(getDefaultPaths(), DrivetrainModel.getParameters());
+        final Candidate baseline = new Candidate(PathSimulation.getDefaultFollowerParameters());
+        final ForkJoinPool pool = new ForkJoinPool();
+        System.out.println("Running " + parameters.size() + " candidates on " + pool.getParallelism() + " threads");
+        final long start = System.nanoTime();
+        final List<Candidate> ranked = sweep.run(baseline, parameters, pool);
+        pool.shutdown();
+        System.out.println(String.format("Done in %.1fs", (System.nanoTime() - start) / 1E9));
+
+        final File report = new File(outputDir, "gain-sweep-report.txt");
+        try (PrintWriter out = new PrintWriter(new FileWriter(report)))
+        {
+            sweep.writeReport(out, search, baseline, ranked);
+        }
+        final File constants = new File(outputDir, "gain-sweep-constants.txt");
+        try (PrintWriter out = new PrintWriter(new FileWriter(constants)))
+        {
+            writeConstants(out, ranked.get(0), baseline);
+        }
+        System.out.println("Wrote " + report + " and " + constants);
+        PrintWriter console = new PrintWriter(System.out, true);
+        sweep.writeReport(console, search, baseline, ranked.subList(0, Math.min(5, ranked.size())));
+        console.flush();
+    }
+}
@@ -0,0 +1,177 @@
+package com.spartronics4915.frc2019.sim;
+
+import com.spartronics4915.frc2019.Constants;
+import com.spartronics4915.frc2019.Kinematics;
+import com.spartronics4915.frc2019.loops.SimulatedClock;
+import com.spartronics4915.frc2019.paths.PathContainer;
+import com.spartronics4915.lib.control.Lookahead;
+import com.spartronics4915.lib.control.PathFollower;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+import com.spartronics4915.lib.math.Twist2d;
+import com.spartronics4915.lib.sim.DifferentialDrivePlant;
+import com.spartronics4915.lib.sim.SimulatedTalonSRX4915Drive;
+
+/**
+ * Drives one path on a simulated drivetrain, the way Drive, RobotState and
+ * RobotStateEstimator do it on the robot, and reports how well it went.
+ * <p>
+ * Everything is local to the run (its own clock, plant, Talons and odometry),
+ * so runs are repeatable and any number of them can go at once on different
+ * threads. Each Looper period the odometry is updated from the (delayed)
+ * encoders and gyro as RobotStateEstimator does, then the PathFollower is
+ * updated with it and its command goes to the Talons as
+ * Drive.updatePathFollower sends it. Lidar fixes aren't simulated.
+ */
+public class PathSimulation
+{
+
+    private static final int kVelocityControlSlot = 1; // as in Drive
+
+    public static class Result
+    {
+
+        public final boolean finished; // false if the run timed out
+        public final double time; // seconds to finish (or the timeout)
+        public final double max_cross_track_error; // inches, as the follower saw it
+        public final double rms_cross_track_error;
+        public final double max_along_track_error;
+        public final double rms_along_track_error;
+        public final double odometry_error; // inches between the estimated and true final positions
+        public final Pose2d final_pose; // where the robot really ended up
+
+        public Result(boolean finished, double time, double max_cross_track_error, double rms_cross_track_error,
+                double max_along_track_error, double rms_along_track_error, double odometry_error,
+                Pose2d final_pose)
+        {
+            this.finished = finished;
+            this.time = time;
+            this.max_cross_track_error = max_cross_track_error;
+            this.rms_cross_track_error = rms_cross_track_error;
+            this.max_along_track_error = max_along_track_error;
+            this.rms_along_track_error = rms_along_track_error;
+            this.odometry_error = odometry_error;
+            this.final_pose = final_pose;
+        }
+
+        @Override
+        public String toString()
+        {
+            return (finished ? "finished in " + time + "s" : "timed out") +
+                    ", CTE max " + max_cross_track_error + " rms " + rms_cross_track_error +
+                    ", ATE max " + max_along_track_error + " rms " + rms_along_track_error +
+                    ", odometry error " + odometry_error + ", final pose " + final_pose;
+        }
+    }
+
+    /**
+     * @return The follower parameters Drive.setWantDrivePath uses
+     */
+    public static PathFollower.Parameters getDefaultFollowerParameters()
+    {
+        return new PathFollower.Parameters(
+                new Lookahead(Constants.kMinLookAhead, Constants.kMaxLookAhead,
+                        Constants.kMinLookAheadSpeed, Constants.kMaxLookAheadSpeed),
+                Constants.kInertiaSteeringGain, Constants.kPathFollowingProfileKp,
+                Constants.kPathFollowingProfileKi, Constants.kPathFollowingProfileKv,
+                Constants.kPathFollowingProfileKffv,
+                Constants.kPathFollowingProfileKffa,
+                Constants.kPathFollowingMaxVel, Constants.kPathFollowingMaxAccel,
+                Constants.kPathFollowingGoalPosTolerance,
+                Constants.kPathFollowingGoalVelTolerance,
+                Constants.kPathStopSteeringDistance);
+    }
+
+    /**
+     * Drives <code>path</code> from its start pose until the follower says it's
+     * finished or <code>timeout</code> seconds pass.
+     */
+    public static Result run(PathContainer path, PathFollower.Parameters followerParameters,
+            DifferentialDrivePlant.Parameters plantParameters, double timeout)
+    {
+        final double dt = Constants.kLooperDt;
+        final SimulatedClock clock = new SimulatedClock(0);
+        final DifferentialDrivePlant plant = new DifferentialDrivePlant(plantParameters);
+        final SimulatedTalonSRX4915Drive drive = new SimulatedTalonSRX4915Drive(plant, clock);
+        final Pose2d start = path.getStartPose();
+        plant.reset(start);
+
+        // What Drive does on construction and when it starts following a path
+        drive.reloadGains(kVelocityControlSlot,
+                Constants.kDriveVelocityKp,
+                Constants.kDriveVelocityKi,
+                Constants.kDriveVelocityKd,
+                Constants.kDriveVelocityKf, // left
+                Constants.kDriveVelocityKf, // right
+                Constants.kDriveVelocityIZone,
+                Constants.kDriveVelocityMaxIAccum,
+                Constants.kDriveVelocityRampRate);
+        drive.enableBraking(true);
+        drive.resetIntegralAccumulator();
+        drive.beginClosedLoopVelocity(kVelocityControlSlot, Constants.kDriveHighGearNominalOutput);
+        final PathFollower follower = new PathFollower(path.buildPath(), path.isReversed(), followerParameters);
+
+        // What RobotState keeps
+        Pose2d fieldToVehicle = start;
+        double distanceDriven = 0;
+        double leftPrevDistance = drive.getLeftDistanceInches();
+        double rightPrevDistance = drive.getRightDistanceInches();
+
+        double maxCrossTrackError = 0, crossTrackSquares = 0;
+        double maxAlongTrackError = 0, alongTrackSquares = 0;
+        int updates = 0;
+        double t = 0;
+        boolean finished = false;
+        while (t < timeout)
+        {
+            clock.advance(dt);
+            t = clock.getTimestamp();
+
+            // RobotStateEstimator
+            final double leftDistance = drive.getLeftDistanceInches();
+            final double rightDistance = drive.getRightDistanceInches();
+            final Twist2d odometry = Kinematics.forwardKinematics(fieldToVehicle.getRotation(),
+                    leftDistance - leftPrevDistance, rightDistance - rightPrevDistance,
+                    Rotation2d.fromDegrees(drive.getGyroAngle()));
+            distanceDriven += odometry.dx;
+            fieldToVehicle = Kinematics.integrateForwardKinematics(fieldToVehicle, odometry);
+            final Twist2d predictedVelocity = Kinematics.forwardKinematics(drive.getLeftVelocityInchesPerSec(),
+                    drive.getRightVelocityInchesPerSec());
+            leftPrevDistance = leftDistance;
+            rightPrevDistance = rightDistance;
+
+            // Drive.updatePathFollower
+            final Twist2d command = follower.update(t, fieldToVehicle, distanceDriven, predictedVelocity.dx);
+            final double crossTrackError = Math.abs(follower.getCrossTrackError());
+            final double alongTrackError = Math.abs(follower.getAlongTrackError());
+            maxCrossTrackError = Math.max(maxCrossTrackError, crossTrackError);
+            maxAlongTrackError = Math.max(maxAlongTrackError, alongTrackError);
+            crossTrackSquares += crossTrackError * crossTrackError;
+            alongTrackSquares += alongTrackError * alongTrackError;
+            updates++;
+            if (follower.isFinished())
+            {
+                drive.driveVelocityInchesPerSec(0, 0);
+                finished = true;
+                break;
+            }
+            final Kinematics.DriveVelocity setpoint = Kinematics.inverseKinematics(command);
+            double left = setpoint.left, right = setpoint.right;
+            final double maxDesired = Math.max(Math.abs(left), Math.abs(right));
+            if (maxDesired > Constants.kDriveHighGearMaxSetpoint)
+            {
+                final double scale = Constants.kDriveHighGearMaxSetpoint / maxDesired;
+                left *= scale;
+                right *= scale;
+            }
+            drive.driveVelocityInchesPerSec(left, right);
+        }
+
+        final Pose2d truth = plant.getPose();
+        return new Result(finished, t,
+                maxCrossTrackError, Math.sqrt(crossTrackSquares / Math.max(updates, 1)),
+                maxAlongTrackError, Math.sqrt(alongTrackSquares / Math.max(updates, 1)),
+                truth.getTranslation().distance(fieldToVehicle.getTranslation()),
+                truth);
+    }
+}
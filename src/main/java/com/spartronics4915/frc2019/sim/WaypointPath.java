@@ -0,0 +1,62 @@
+package com.spartronics4915.frc2019.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.spartronics4915.frc2019.paths.PathBuilder;
+import com.spartronics4915.frc2019.paths.PathBuilder.Waypoint;
+import com.spartronics4915.frc2019.paths.PathContainer;
+import com.spartronics4915.lib.control.Path;
+import com.spartronics4915.lib.math.Pose2d;
+
+/**
+ * A {@link PathContainer} made on the fly from waypoints, for simulations
+ * that want test paths without adding them to the paths package.
+ */
+public class WaypointPath implements PathContainer
+{
+
+    private final String mName;
+    private final Pose2d mStartPose;
+    private final boolean mReversed;
+    private final ArrayList<Waypoint> mWaypoints;
+
+    public WaypointPath(String name, Pose2d startPose, boolean reversed, Waypoint... waypoints)
+    {
+        mName = name;
+        mStartPose = startPose;
+        mReversed = reversed;
+        mWaypoints = new ArrayList<>(Arrays.asList(waypoints));
+    }
+
+    @Override
+    public Path buildPath()
+    {
+        return PathBuilder.buildPathFromWaypoints(mWaypoints);
+    }
+
+    @Override
+    public List<Waypoint> getWaypoints()
+    {
+        return mWaypoints;
+    }
+
+    @Override
+    public Pose2d getStartPose()
+    {
+        return mStartPose;
+    }
+
+    @Override
+    public boolean isReversed()
+    {
+        return mReversed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return mName;
+    }
+}
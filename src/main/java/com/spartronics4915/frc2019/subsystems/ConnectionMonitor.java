@@ -1,5 +1,6 @@
 package com.spartronics4915.frc2019.subsystems;
 
+import com.spartronics4915.frc2019.Constants;
 import com.spartronics4915.frc2019.loops.Loop;
 import com.spartronics4915.frc2019.loops.Looper;
 import com.spartronics4915.lib.util.LatchedBoolean;
@@ -43,7 +44,7 @@ public class ConnectionMonitor extends Subsystem
     @Override
     public void registerEnabledLoops(Looper enabledLooper)
     {
-        enabledLooper.register(new Loop()
+        enabledLooper.register(getName(), new Loop()
         {
 
             @Override
@@ -88,7 +89,7 @@ public class ConnectionMonitor extends Subsystem
             {
 
             }
-        });
+        }, Constants.kLooperSlowDt);
     }
 
     @Override
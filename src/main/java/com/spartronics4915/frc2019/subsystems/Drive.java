@@ -5,6 +5,7 @@ import com.spartronics4915.frc2019.Kinematics;
 import com.spartronics4915.frc2019.RobotState;
 import com.spartronics4915.frc2019.loops.Loop;
 import com.spartronics4915.frc2019.loops.Looper;
+import com.spartronics4915.frc2019.sim.DrivetrainModel;
 import com.spartronics4915.lib.util.DriveSignal;
 import com.spartronics4915.lib.util.ReflectingCSVWriter;
 import com.spartronics4915.lib.util.Util;
@@ -15,10 +16,13 @@ import com.spartronics4915.lib.drivers.TalonSRX4915Drive;
 import com.spartronics4915.lib.math.Pose2d;
 import com.spartronics4915.lib.math.Rotation2d;
 import com.spartronics4915.lib.math.Twist2d;
+import com.spartronics4915.lib.sim.DifferentialDrivePlant;
+import com.spartronics4915.lib.sim.SimulatedTalonSRX4915Drive;
 
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.Timer;
 
 /**
@@ -159,15 +163,24 @@ public class Drive extends Subsystem
         mVisionTargetAngleEntry = table.getEntry(Constants.kVisionTargetAngleName);
         mVisionTargetAngleEntry.forceSetNumber(0);
 
-        // encoder phase must match output sense or PID will spiral out of control
-        mMotorGroup = new TalonSRX4915Drive(Constants.kDriveWheelDiameterInches,
-                Constants.kEncoderCodesPerRev,
-                Constants.kLeftDriveMasterId,
-                Constants.kLeftDriveSlaveId,
-                Constants.kRightDriveMasterId,
-                Constants.kRightDriveSlaveId,
-                Constants.kDriveIMUTalonId,
-                TalonSRX4915Drive.Config.kLeftNormalRightInverted);
+        if (RobotBase.isSimulation())
+        {
+            // no Talons to talk to, so drive a model of the drivetrain instead
+            mMotorGroup = new SimulatedTalonSRX4915Drive(
+                    new DifferentialDrivePlant(DrivetrainModel.getParameters()));
+        }
+        else
+        {
+            // encoder phase must match output sense or PID will spiral out of control
+            mMotorGroup = new TalonSRX4915Drive(Constants.kDriveWheelDiameterInches,
+                    Constants.kEncoderCodesPerRev,
+                    Constants.kLeftDriveMasterId,
+                    Constants.kLeftDriveSlaveId,
+                    Constants.kRightDriveMasterId,
+                    Constants.kRightDriveSlaveId,
+                    Constants.kDriveIMUTalonId,
+                    TalonSRX4915Drive.Config.kLeftNormalRightInverted);
+        }
 
         if (mMotorGroup.isInitialized())
         {
@@ -196,7 +209,7 @@ public class Drive extends Subsystem
         if (!this.isInitialized())
             return;
 
-        in.register(mLoop);
+        in.register(getName(), mLoop);
     }
 
     /**
@@ -281,7 +281,7 @@ public class LED extends Subsystem
     {
         if (!this.isInitialized())
             return;
-        enabledLooper.register(mLoop);
+        enabledLooper.register(getName(), mLoop);
     }
 
     // when setWantedState is invoked, we merely trigger a behavior change
@@ -184,7 +184,7 @@ public class Superstructure extends Subsystem
     @Override
     public void registerEnabledLoops(Looper enabledLooper)
     {
-        enabledLooper.register(mLoop);
+        enabledLooper.register(getName(), mLoop);
     }
 
     @Override
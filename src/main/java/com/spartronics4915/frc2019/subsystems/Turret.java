@@ -3,16 +3,19 @@ package com.spartronics4915.frc2019.subsystems;
 import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.spartronics4915.frc2019.Constants;
 import com.spartronics4915.frc2019.RobotState;
-import com.spartronics4915.frc2019.lidar.LidarProcessor;
+import com.spartronics4915.frc2019.lidar.LidarLocalizer;
 import com.spartronics4915.frc2019.loops.Loop;
 import com.spartronics4915.frc2019.loops.Looper;
 import com.spartronics4915.lib.drivers.TalonSRX4915;
 import com.spartronics4915.lib.math.Pose2d;
 import com.spartronics4915.lib.math.Rotation2d;
 import com.spartronics4915.lib.math.Translation2d;
+import com.spartronics4915.lib.util.InterpolatingDouble;
 
 import edu.wpi.first.wpilibj.Timer;
 
+import java.util.Map;
+
 public class Turret extends Subsystem
 {
 
@@ -40,7 +43,7 @@ public class Turret extends Subsystem
     private static final boolean kOutputInverted = false;
 
     private TalonSRX4915 mMotor;
-    private LidarProcessor mLidar;
+    private LidarLocalizer mLidar;
     private RobotState mOdometry;
     private WantedState mWantedState = WantedState.DISABLED;
     private SystemState mSystemState = SystemState.DISABLING;
@@ -49,7 +52,7 @@ public class Turret extends Subsystem
 
     private Turret()
     {
-        mLidar = LidarProcessor.getInstance();
+        mLidar = LidarLocalizer.getInstance();
         mOdometry = RobotState.getInstance();
 
         mMotor = new TalonSRX4915(Constants.kTurretMotorId);
@@ -83,16 +86,7 @@ public class Turret extends Subsystem
                 switch (mSystemState)
                 {
                     case FOLLOWING:
-                        Pose2d pose;
-                        if (mUseLidar)
-                        {
-                            pose = mLidar.doICP();
-                        }
-                        else
-                        {
-                            pose = mOdometry.getFieldToVehicle(Timer.getFPGATimestamp());
-                        }
-
+                        Pose2d pose = getFieldToVehicle(Timer.getFPGATimestamp());
                         double newAbsoluteAngle = calculateAbsoluteTurretAngle(pose, Constants.kTurretTargetFieldPosition);
                         mMotor.setPositionRotations(
                                 mMotor.getSensorPositionRotations() + (newAbsoluteAngle - mLastTurretAngle) / 360);
@@ -117,6 +111,34 @@ public class Turret extends Subsystem
         }
     };
 
+    /**
+     * @return Where the robot is on the field now. When lidar fixes are fused
+     *         into odometry, that's just odometry. Otherwise, when following
+     *         the lidar, the newest fix is applied as a correction to odometry,
+     *         as long as it's no older than
+     *         {@link Constants#kTurretMaxLidarFixAge}, so the turret never aims
+     *         from a frozen pose if the lidar stops.
+     */
+    private Pose2d getFieldToVehicle(double timestamp)
+    {
+        final Pose2d odometry = mOdometry.getFieldToVehicle(timestamp);
+        if (!mUseLidar || Constants.kLidarFuseIntoOdometry)
+        {
+            return odometry;
+        }
+        // The localizer solves in the background, so this never waits on ICP
+        final Map.Entry<InterpolatingDouble, Pose2d> fix = mLidar.getLatestFieldToLidar();
+        if (fix == null || timestamp - fix.getKey().value > Constants.kTurretMaxLidarFixAge)
+        {
+            return odometry;
+        }
+        // Where odometry put the lidar when the fix was taken, moved to where
+        // the fix says it was, and the odometry since then replayed on top
+        final Pose2d correction = fix.getValue()
+                .transformBy(mOdometry.getFieldToLidar(fix.getKey().value).inverse());
+        return correction.transformBy(odometry);
+    }
+
     /**
      * Calculates an absolute turret angle in degrees. The range is 0-360 degrees.
      * 
@@ -171,7 +193,7 @@ public class Turret extends Subsystem
     @Override
     public void registerEnabledLoops(Looper enabledLooper)
     {
-        enabledLooper.register(mLoop);
+        enabledLooper.register(getName(), mLoop);
     }
 
     @Override
@@ -1,5 +1,6 @@
 package com.spartronics4915.lib.control;
 
+import com.spartronics4915.lib.math.MutableRotation2d;
 import com.spartronics4915.lib.math.Pose2d;
 import com.spartronics4915.lib.math.Rotation2d;
 import com.spartronics4915.lib.math.Translation2d;
@@ -22,6 +23,8 @@ public class AdaptivePurePursuitController
 {
 
     private static final double kReallyBigNumber = 1E6;
+    private static final double kEpsilon = 1E-9;
+    private static final Rotation2d kHalfTurn = Rotation2d.fromRadians(Math.PI);
 
     public static class Command
     {
@@ -53,6 +56,7 @@ public class AdaptivePurePursuitController
     boolean mAtEndOfPath = false;
     final boolean mReversed;
     final Lookahead mLookahead;
+    private final MutableRotation2d mArcScratch = new MutableRotation2d();
 
     public AdaptivePurePursuitController(Path path, boolean reversed, Lookahead lookahead)
     {
@@ -71,10 +75,14 @@ public class AdaptivePurePursuitController
      */
     public Command update(Pose2d pose)
     {
+        final double x = pose.getTranslation().x(), y = pose.getTranslation().y();
+        double cos = pose.getRotation().cos(), sin = pose.getRotation().sin();
         if (mReversed)
         {
-            pose = new Pose2d(pose.getTranslation(),
-                    pose.getRotation().rotateBy(Rotation2d.fromRadians(Math.PI)));
+            // Turned around, as pose.getRotation().rotateBy(Rotation2d.fromRadians(Math.PI))
+            mArcScratch.set(cos, sin, false).rotateBy(kHalfTurn);
+            cos = mArcScratch.cos();
+            sin = mArcScratch.sin();
         }
 
         final Path.TargetPointReport report = mPath.getTargetPoint(pose.getTranslation(), mLookahead);
@@ -85,12 +93,14 @@ public class AdaptivePurePursuitController
                     report.lookahead_point, report.remaining_path_distance);
         }
 
-        final Arc arc = new Arc(pose, report.lookahead_point);
+        final double point_x = report.lookahead_point.x(), point_y = report.lookahead_point.y();
+        final double arc_radius = getRadius(x, y, cos, sin, point_x, point_y);
+        final double arc_length = getLength(x, y, cos, sin, point_x, point_y, arc_radius);
         double scale_factor = 1.0;
         // Ensure we don't overshoot the end of the path (once the lookahead speed drops to zero).
-        if (report.lookahead_point_speed < 1E-6 && report.remaining_path_distance < arc.length)
+        if (report.lookahead_point_speed < 1E-6 && report.remaining_path_distance < arc_length)
         {
-            scale_factor = Math.max(0.0, report.remaining_path_distance / arc.length);
+            scale_factor = Math.max(0.0, report.remaining_path_distance / arc_length);
             mAtEndOfPath = true;
         }
         else
@@ -103,13 +113,69 @@ public class AdaptivePurePursuitController
         }
 
         return new Command(
-                new Twist2d(scale_factor * arc.length, 0.0,
-                        arc.length * getDirection(pose, report.lookahead_point) * Math.abs(scale_factor) / arc.radius),
+                new Twist2d(scale_factor * arc_length, 0.0,
+                        arc_length * getDirection(x, y, cos, sin, point_x, point_y) * Math.abs(scale_factor)
+                                / arc_radius),
                 report.closest_point_distance, report.max_speed,
                 report.lookahead_point_speed * Math.signum(scale_factor), report.lookahead_point,
                 report.remaining_path_distance);
     }
 
+    /**
+     * {@link #getRadius(Pose2d, Translation2d)} on primitives, for update(). The
+     * circle through the point that's tangent to the robot's heading has its
+     * center on the robot's normal, at the signed distance that makes it as far
+     * from the point as from the robot.
+     */
+    private static double getRadius(double x, double y, double cos, double sin, double point_x, double point_y)
+    {
+        final double dx = point_x - x, dy = point_y - y;
+        final double dist2 = dx * dx + dy * dy;
+        if (dist2 < kEpsilon * kEpsilon)
+        {
+            return 0.0;
+        }
+        final double along_normal = -sin * dx + cos * dy;
+        if (Math.abs(along_normal) < kEpsilon)
+        {
+            return Double.POSITIVE_INFINITY; // the point is dead ahead or behind
+        }
+        return Math.abs(dist2 / (2.0 * along_normal));
+    }
+
+    /**
+     * {@link #getLength(Pose2d, Translation2d, Translation2d, double)} on
+     * primitives, for update().
+     */
+    private static double getLength(double x, double y, double cos, double sin, double point_x, double point_y,
+            double radius)
+    {
+        final double dx = point_x - x, dy = point_y - y;
+        if (radius < kReallyBigNumber)
+        {
+            if (radius == 0.0)
+            {
+                return 0.0;
+            }
+            // The angle at the center between the robot and the point, from the chord between them
+            final double half_chord = 0.5 * Math.hypot(dx, dy);
+            final double angle = 2.0 * Math.asin(Math.min(1.0, half_chord / radius));
+            // The point is behind the robot if it's against the heading
+            final boolean behind = cos * dx + sin * dy < 0.0;
+            return radius * (behind ? 2.0 * Math.PI - angle : angle);
+        }
+        else
+        {
+            return Math.hypot(dx, dy);
+        }
+    }
+
+    private static int getDirection(double x, double y, double cos, double sin, double point_x, double point_y)
+    {
+        double cross = cos * (point_y - y) - sin * (point_x - x);
+        return (cross < 0) ? -1 : 1; // if robot < pose turn left
+    }
+
     public boolean hasPassedMarker(String marker)
     {
         return mPath.hasPassedMarker(marker);
@@ -24,6 +24,11 @@ public class Path
     List<PathSegment> segments;
     PathSegment prevSegment;
     HashSet<String> mMarkersCrossed = new HashSet<String>();
+    // mLengthAfter[i] is the total length of the segments after the i'th one
+    // there was when it was computed, so the remaining path length is a lookup
+    // rather than a sum. Null when a segment's been added since.
+    double[] mLengthAfter;
+    int mSegmentsRemoved; // since mLengthAfter was computed
 
     public void extrapolateLast()
     {
@@ -50,6 +55,36 @@ public class Path
     public void addSegment(PathSegment segment)
     {
         segments.add(segment);
+        mLengthAfter = null;
+    }
+
+    /**
+     * Works out how much of the path follows each segment. It's done when
+     * the path's built (see verifySpeeds), or on first use after a segment is
+     * added.
+     */
+    private void precomputeLengths()
+    {
+        mLengthAfter = new double[segments.size()];
+        double lengthAfter = 0.0;
+        for (int i = segments.size() - 1; i >= 0; i--)
+        {
+            mLengthAfter[i] = lengthAfter;
+            lengthAfter += segments.get(i).getLength();
+        }
+        mSegmentsRemoved = 0;
+    }
+
+    /**
+     * @return the total length of the segments after the current one
+     */
+    private double getLengthAfterCurrentSegment()
+    {
+        if (mLengthAfter == null)
+        {
+            precomputeLengths();
+        }
+        return mLengthAfter[mSegmentsRemoved];
     }
 
     /**
@@ -137,11 +172,7 @@ public class Path
          * removeCurrentSegment(); currentSegment = segments.get(0); } }
          */
         rv.remaining_segment_distance = currentSegment.getRemainingDistance(rv.closest_point);
-        rv.remaining_path_distance = rv.remaining_segment_distance;
-        for (int i = 1; i < segments.size(); ++i)
-        {
-            rv.remaining_path_distance += segments.get(i).getLength();
-        }
+        rv.remaining_path_distance = rv.remaining_segment_distance + getLengthAfterCurrentSegment();
         rv.closest_point_speed = currentSegment
                 .getSpeedByDistance(currentSegment.getLength() - rv.remaining_segment_distance);
         double lookahead_distance = lookahead.getLookaheadForSpeed(rv.closest_point_speed) + rv.closest_point_distance;
@@ -169,7 +200,12 @@ public class Path
         rv.max_speed = currentSegment.getMaxSpeed();
         rv.lookahead_point = currentSegment.getPointByDistance(lookahead_distance);
         rv.lookahead_point_speed = currentSegment.getSpeedByDistance(lookahead_distance);
-        checkSegmentDone(rv.closest_point);
+        // As checkSegmentDone(rv.closest_point), without working out the
+        // remaining distance to the closest point again
+        if (rv.remaining_segment_distance < Constants.kSegmentCompletionTolerance)
+        {
+            removeCurrentSegment();
+        }
         return rv;
     }
 
@@ -206,6 +242,7 @@ public class Path
     public void removeCurrentSegment()
     {
         prevSegment = segments.remove(0);
+        mSegmentsRemoved++;
         String marker = prevSegment.getMarker();
         if (marker != null)
             mMarkersCrossed.add(marker);
@@ -242,6 +279,7 @@ public class Path
             startState = new MotionState(0, 0, startState.vel(), startState.vel());
             segment.createMotionProfiler(startState, endSpeed);
         }
+        precomputeLengths();
     }
 
     public boolean hasPassedMarker(String marker)
@@ -4,7 +4,6 @@ import java.util.Optional;
 
 import com.spartronics4915.frc2019.Constants;
 import com.spartronics4915.lib.util.Logger;
-import com.spartronics4915.lib.math.Rotation2d;
 import com.spartronics4915.lib.math.Translation2d;
 import com.spartronics4915.lib.motion.MotionProfile;
 import com.spartronics4915.lib.motion.MotionProfileConstraints;
@@ -30,6 +29,13 @@ public class PathSegment
     private boolean extrapolateLookahead;
     private String marker;
 
+    // Geometry that doesn't change once the segment's made, so the follower
+    // needn't redo the norms and inverse trig every loop; see precompute()
+    private double length;
+    private double radius; // arcs only
+    private double totalAngle; // arcs only; unsigned radians swept
+    private double sweepSign; // arcs only; 1 if counter-clockwise
+
     /**
      * Constructor for a linear segment
      * 
@@ -55,6 +61,7 @@ public class PathSegment
         this.maxSpeed = maxSpeed;
         extrapolateLookahead = false;
         isLine = true;
+        precompute();
         createMotionProfiler(startState, endSpeed);
     }
 
@@ -70,6 +77,7 @@ public class PathSegment
         extrapolateLookahead = false;
         isLine = true;
         this.marker = marker;
+        precompute();
         createMotionProfiler(startState, endSpeed);
     }
 
@@ -104,6 +112,7 @@ public class PathSegment
         this.maxSpeed = maxSpeed;
         extrapolateLookahead = false;
         isLine = false;
+        precompute();
         createMotionProfiler(startState, endSpeed);
     }
 
@@ -121,6 +130,7 @@ public class PathSegment
         extrapolateLookahead = false;
         isLine = false;
         this.marker = marker;
+        precompute();
         createMotionProfiler(startState, endSpeed);
     }
 
@@ -157,21 +167,29 @@ public class PathSegment
         return end;
     }
 
-    /**
-     * @return the total length of the segment
-     */
-    public double getLength()
+    private void precompute()
     {
+        radius = deltaStart.norm();
         if (isLine)
         {
-            return deltaStart.norm();
+            length = radius;
         }
         else
         {
-            return deltaStart.norm() * Translation2d.getAngle(deltaStart, deltaEnd).getRadians();
+            totalAngle = Translation2d.getAngle(deltaStart, deltaEnd).getRadians();
+            sweepSign = (Translation2d.cross(deltaStart, deltaEnd) >= 0) ? 1 : -1;
+            length = radius * totalAngle;
         }
     }
 
+    /**
+     * @return the total length of the segment
+     */
+    public double getLength()
+    {
+        return length;
+    }
+
     /**
      * Set whether or not to extrapolate the lookahead point. Should only be
      * true for the last segment in the path
@@ -194,30 +212,38 @@ public class PathSegment
     {
         if (isLine)
         {
-            Translation2d delta = new Translation2d(start, end);
-            double u = ((position.x() - start.x()) * delta.x() + (position.y() - start.y()) * delta.y())
-                    / (delta.x() * delta.x() + delta.y() * delta.y());
+            double u = ((position.x() - start.x()) * deltaStart.x() + (position.y() - start.y()) * deltaStart.y())
+                    / deltaStart.norm2();
             if (u >= 0 && u <= 1)
-                return new Translation2d(start.x() + u * delta.x(), start.y() + u * delta.y());
+                return new Translation2d(start.x() + u * deltaStart.x(), start.y() + u * deltaStart.y());
             return (u < 0) ? start : end;
         }
         else
         {
-            Translation2d deltaPosition = new Translation2d(center, position);
-            deltaPosition = deltaPosition.scale(deltaStart.norm() / deltaPosition.norm());
-            if (Translation2d.cross(deltaPosition, deltaStart) * Translation2d.cross(deltaPosition, deltaEnd) < 0)
+            double dx = position.x() - center.x(), dy = position.y() - center.y();
+            double scale = radius / Math.hypot(dx, dy);
+            dx *= scale;
+            dy *= scale;
+            double crossStart = dx * deltaStart.y() - dy * deltaStart.x();
+            double crossEnd = dx * deltaEnd.y() - dy * deltaEnd.x();
+            if (crossStart * crossEnd < 0)
             {
-                return center.translateBy(deltaPosition);
+                return new Translation2d(center.x() + dx, center.y() + dy);
             }
             else
             {
-                Translation2d startDist = new Translation2d(position, start);
-                Translation2d endDist = new Translation2d(position, end);
-                return (endDist.norm() < startDist.norm()) ? end : start;
+                double startDist2 = square(start.x() - position.x()) + square(start.y() - position.y());
+                double endDist2 = square(end.x() - position.x()) + square(end.y() - position.y());
+                return (endDist2 < startDist2) ? end : start;
             }
         }
     }
 
+    private static double square(double x)
+    {
+        return x * x;
+    }
+
     /**
      * Calculates the point on the segment <code>dist</code> distance from the
      * starting point along the segment.
@@ -229,22 +255,21 @@ public class PathSegment
      */
     public Translation2d getPointByDistance(double dist)
     {
-        double length = getLength();
         if (!extrapolateLookahead && dist > length)
         {
             dist = length;
         }
         if (isLine)
         {
-            return start.translateBy(deltaStart.scale(dist / length));
+            double scale = dist / length;
+            return new Translation2d(start.x() + deltaStart.x() * scale, start.y() + deltaStart.y() * scale);
         }
         else
         {
-            double deltaAngle = Translation2d.getAngle(deltaStart, deltaEnd).getRadians()
-                    * ((Translation2d.cross(deltaStart, deltaEnd) >= 0) ? 1 : -1);
-            deltaAngle *= dist / length;
-            Translation2d t = deltaStart.rotateBy(Rotation2d.fromRadians(deltaAngle));
-            return center.translateBy(t);
+            double deltaAngle = sweepSign * dist / radius;
+            double cos = Math.cos(deltaAngle), sin = Math.sin(deltaAngle);
+            return new Translation2d(center.x() + deltaStart.x() * cos - deltaStart.y() * sin,
+                    center.y() + deltaStart.x() * sin + deltaStart.y() * cos);
         }
     }
 
@@ -260,14 +285,19 @@ public class PathSegment
     {
         if (isLine)
         {
-            return new Translation2d(end, position).norm();
+            return Math.hypot(end.x() - position.x(), end.y() - position.y());
         }
         else
         {
-            Translation2d deltaPosition = new Translation2d(center, position);
-            double angle = Translation2d.getAngle(deltaEnd, deltaPosition).getRadians();
-            double totalAngle = Translation2d.getAngle(deltaStart, deltaEnd).getRadians();
-            return angle / totalAngle * getLength();
+            // The angle from position to the end, as Translation2d.getAngle
+            // works it out, but with the end's radius already known
+            double dx = position.x() - center.x(), dy = position.y() - center.y();
+            double cosAngle = (deltaEnd.x() * dx + deltaEnd.y() * dy) / (radius * Math.hypot(dx, dy));
+            if (Double.isNaN(cosAngle))
+            {
+                return 0.0;
+            }
+            return Math.acos(Math.min(1.0, Math.max(cosAngle, -1.0))) * radius;
         }
     }
 
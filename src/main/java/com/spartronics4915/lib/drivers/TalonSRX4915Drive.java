@@ -109,6 +109,19 @@ public class TalonSRX4915Drive
             mInitialized = false;
     }
 
+    /**
+     * For subclasses that stand in for the hardware, like
+     * {@link com.spartronics4915.lib.sim.SimulatedTalonSRX4915Drive}: no
+     * Talons or IMU are created, so the subclass must override every method
+     * that would use them.
+     */
+    protected TalonSRX4915Drive(double wheelDiameterInches, int encoderCodesPerRev)
+    {
+        mQuadCodesPerRev = encoderCodesPerRev * 4;
+        mWheelDiameterInches = wheelDiameterInches;
+        mInitialized = true;
+    }
+
     public boolean isInitialized()
     {
         return mInitialized;
@@ -0,0 +1,159 @@
+package com.spartronics4915.lib.math;
+
+/**
+ * A {@link Pose2d} that's changed in place instead of copied, so that code which chains transforms (odometry,
+ * pure pursuit, lidar point projection) can run without making garbage. The arithmetic is the same as Pose2d's, so
+ * results match it to the last bit.
+ * <p>
+ * Methods ending in <code>Into</code> write their result to an <code>out</code> pose and leave this one alone;
+ * <code>out</code> may be this pose or an argument. The rest change this pose and return it. Not thread safe; code
+ * on a hot path keeps its own instances as fields for its temporaries.
+ */
+public class MutablePose2d {
+    private final static double kEps = 1E-9; // as in Pose2d
+
+    protected final MutableTranslation2d translation_ = new MutableTranslation2d();
+    protected final MutableRotation2d rotation_ = new MutableRotation2d();
+
+    public MutablePose2d() {
+    }
+
+    public MutablePose2d(final Pose2d other) {
+        set(other);
+    }
+
+    public MutablePose2d setIdentity() {
+        translation_.setIdentity();
+        rotation_.setIdentity();
+        return this;
+    }
+
+    /**
+     * Sets the pose without normalizing the rotation, like
+     * <code>new Pose2d(x, y, new Rotation2d(cos, sin, false))</code>.
+     */
+    public MutablePose2d set(double x, double y, double cos, double sin) {
+        translation_.set(x, y);
+        rotation_.set(cos, sin, false);
+        return this;
+    }
+
+    public MutablePose2d set(final Pose2d other) {
+        translation_.set(other.getTranslation());
+        rotation_.set(other.getRotation());
+        return this;
+    }
+
+    public MutablePose2d set(final MutablePose2d other) {
+        translation_.set(other.translation_);
+        rotation_.set(other.rotation_);
+        return this;
+    }
+
+    public MutableTranslation2d getTranslation() {
+        return translation_;
+    }
+
+    public MutableRotation2d getRotation() {
+        return rotation_;
+    }
+
+    /**
+     * Same as {@link Pose2d#exp(Twist2d)}, into this pose.
+     */
+    public MutablePose2d setExp(double dx, double dy, double dtheta) {
+        double sin_theta = Math.sin(dtheta);
+        double cos_theta = Math.cos(dtheta);
+        double s, c;
+        if (Math.abs(dtheta) < kEps) {
+            s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+            c = .5 * dtheta;
+        } else {
+            s = sin_theta / dtheta;
+            c = (1.0 - cos_theta) / dtheta;
+        }
+        return set(dx * s - dy * c, dx * c + dy * s, cos_theta, sin_theta);
+    }
+
+    public MutablePose2d setExp(final Twist2d delta) {
+        return setExp(delta.dx, delta.dy, delta.dtheta);
+    }
+
+    /**
+     * Same as {@link Pose2d#transformBy(Pose2d)}: out = this * (x, y, cos, sin).
+     */
+    public MutablePose2d transformByInto(double x, double y, double cos, double sin, final MutablePose2d out) {
+        final double c = rotation_.cos(), s = rotation_.sin();
+        final double new_x = translation_.x() + (x * c - y * s);
+        final double new_y = translation_.y() + (x * s + y * c);
+        out.rotation_.set(rotation_).rotateBy(cos, sin);
+        out.translation_.set(new_x, new_y);
+        return out;
+    }
+
+    public MutablePose2d transformByInto(final MutablePose2d other, final MutablePose2d out) {
+        return transformByInto(other.translation_.x(), other.translation_.y(), other.rotation_.cos(),
+                other.rotation_.sin(), out);
+    }
+
+    public MutablePose2d transformByInto(final Pose2d other, final MutablePose2d out) {
+        return transformByInto(other.getTranslation().x(), other.getTranslation().y(), other.getRotation().cos(),
+                other.getRotation().sin(), out);
+    }
+
+    public MutablePose2d transformBy(final MutablePose2d other) {
+        return transformByInto(other, this);
+    }
+
+    public MutablePose2d transformBy(final Pose2d other) {
+        return transformByInto(other, this);
+    }
+
+    /**
+     * Same as <code>transformBy(Pose2d.exp(new Twist2d(dx, dy, dtheta)))</code>, which is how odometry is integrated.
+     */
+    public MutablePose2d transformByExp(double dx, double dy, double dtheta) {
+        double sin_theta = Math.sin(dtheta);
+        double cos_theta = Math.cos(dtheta);
+        double s, c;
+        if (Math.abs(dtheta) < kEps) {
+            s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+            c = .5 * dtheta;
+        } else {
+            s = sin_theta / dtheta;
+            c = (1.0 - cos_theta) / dtheta;
+        }
+        return transformByInto(dx * s - dy * c, dx * c + dy * s, cos_theta, sin_theta, this);
+    }
+
+    /**
+     * Same as {@link Pose2d#inverse()}, into <code>out</code>.
+     */
+    public MutablePose2d inverseInto(final MutablePose2d out) {
+        final double c = rotation_.cos(), s = -rotation_.sin();
+        final double x = -translation_.x(), y = -translation_.y();
+        return out.set(x * c - y * s, x * s + y * c, c, s);
+    }
+
+    public MutablePose2d invert() {
+        return inverseInto(this);
+    }
+
+    /**
+     * Transforms the point (x, y) from this pose's frame into the frame the pose is in, which is the same as
+     * <code>transformBy(Pose2d.fromTranslation(new Translation2d(x, y))).getTranslation()</code>.
+     */
+    public MutableTranslation2d applyInto(double x, double y, final MutableTranslation2d out) {
+        final double c = rotation_.cos(), s = rotation_.sin();
+        return out.set(translation_.x() + (x * c - y * s), translation_.y() + (x * s + y * c));
+    }
+
+    public Pose2d toPose2d() {
+        return new Pose2d(translation_.x(), translation_.y(), rotation_.toRotation2d());
+    }
+
+    @Override
+    public String toString() {
+        return "T:" + translation_.toString() + ", R:" + rotation_.toString();
+    }
+}
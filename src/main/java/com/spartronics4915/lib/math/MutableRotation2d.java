@@ -0,0 +1,115 @@
+package com.spartronics4915.lib.math;
+
+import static com.spartronics4915.lib.util.Util.kEpsilon;
+
+/**
+ * A {@link Rotation2d} that's changed in place instead of copied, for hot paths that can't afford an allocation per
+ * operation. The arithmetic is the same as Rotation2d's, so results match it to the last bit.
+ * <p>
+ * Methods that change the rotation return it, so calls can be chained. Not thread safe.
+ */
+public class MutableRotation2d {
+    protected double cos_angle_;
+    protected double sin_angle_;
+
+    public MutableRotation2d() {
+        setIdentity();
+    }
+
+    public MutableRotation2d(final Rotation2d other) {
+        set(other);
+    }
+
+    public MutableRotation2d setIdentity() {
+        cos_angle_ = 1;
+        sin_angle_ = 0;
+        return this;
+    }
+
+    /**
+     * Same as {@link Rotation2d#Rotation2d(double, double, boolean)}.
+     */
+    public MutableRotation2d set(double x, double y, boolean normalize) {
+        if (normalize) {
+            double magnitude = Math.hypot(x, y);
+            if (magnitude > kEpsilon) {
+                sin_angle_ = y / magnitude;
+                cos_angle_ = x / magnitude;
+            } else {
+                sin_angle_ = 0;
+                cos_angle_ = 1;
+            }
+        } else {
+            cos_angle_ = x;
+            sin_angle_ = y;
+        }
+        return this;
+    }
+
+    public MutableRotation2d set(final Rotation2d other) {
+        cos_angle_ = other.cos();
+        sin_angle_ = other.sin();
+        return this;
+    }
+
+    public MutableRotation2d set(final MutableRotation2d other) {
+        cos_angle_ = other.cos_angle_;
+        sin_angle_ = other.sin_angle_;
+        return this;
+    }
+
+    public MutableRotation2d setRadians(double angle_radians) {
+        cos_angle_ = Math.cos(angle_radians);
+        sin_angle_ = Math.sin(angle_radians);
+        return this;
+    }
+
+    public double cos() {
+        return cos_angle_;
+    }
+
+    public double sin() {
+        return sin_angle_;
+    }
+
+    public double getRadians() {
+        return Math.atan2(sin_angle_, cos_angle_);
+    }
+
+    public double getDegrees() {
+        return Math.toDegrees(getRadians());
+    }
+
+    /**
+     * Same as {@link Rotation2d#rotateBy(Rotation2d)}, in place.
+     */
+    public MutableRotation2d rotateBy(double other_cos, double other_sin) {
+        return set(cos_angle_ * other_cos - sin_angle_ * other_sin,
+                cos_angle_ * other_sin + sin_angle_ * other_cos, true);
+    }
+
+    public MutableRotation2d rotateBy(final MutableRotation2d other) {
+        return rotateBy(other.cos_angle_, other.sin_angle_);
+    }
+
+    public MutableRotation2d rotateBy(final Rotation2d other) {
+        return rotateBy(other.cos(), other.sin());
+    }
+
+    /**
+     * Same as {@link Rotation2d#inverse()}, in place.
+     */
+    public MutableRotation2d invert() {
+        sin_angle_ = -sin_angle_;
+        return this;
+    }
+
+    public Rotation2d toRotation2d() {
+        return new Rotation2d(cos_angle_, sin_angle_, false);
+    }
+
+    @Override
+    public String toString() {
+        return toRotation2d().toString();
+    }
+}
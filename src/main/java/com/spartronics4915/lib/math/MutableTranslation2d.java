@@ -0,0 +1,109 @@
+package com.spartronics4915.lib.math;
+
+/**
+ * A {@link Translation2d} that's changed in place instead of copied. See {@link MutableRotation2d}.
+ */
+public class MutableTranslation2d {
+    protected double x_;
+    protected double y_;
+
+    public MutableTranslation2d() {
+        setIdentity();
+    }
+
+    public MutableTranslation2d(final Translation2d other) {
+        set(other);
+    }
+
+    public MutableTranslation2d setIdentity() {
+        x_ = 0;
+        y_ = 0;
+        return this;
+    }
+
+    public MutableTranslation2d set(double x, double y) {
+        x_ = x;
+        y_ = y;
+        return this;
+    }
+
+    public MutableTranslation2d set(final Translation2d other) {
+        return set(other.x(), other.y());
+    }
+
+    public MutableTranslation2d set(final MutableTranslation2d other) {
+        return set(other.x_, other.y_);
+    }
+
+    public double x() {
+        return x_;
+    }
+
+    public double y() {
+        return y_;
+    }
+
+    public double norm() {
+        return Math.hypot(x_, y_);
+    }
+
+    public double norm2() {
+        return x_ * x_ + y_ * y_;
+    }
+
+    public double distance(final MutableTranslation2d other) {
+        return Math.hypot(other.x_ - x_, other.y_ - y_);
+    }
+
+    /**
+     * Same as {@link Translation2d#translateBy(Translation2d)}, in place.
+     */
+    public MutableTranslation2d translateBy(double dx, double dy) {
+        x_ += dx;
+        y_ += dy;
+        return this;
+    }
+
+    public MutableTranslation2d translateBy(final MutableTranslation2d other) {
+        return translateBy(other.x_, other.y_);
+    }
+
+    public MutableTranslation2d translateBy(final Translation2d other) {
+        return translateBy(other.x(), other.y());
+    }
+
+    /**
+     * Same as {@link Translation2d#rotateBy(Rotation2d)}, in place.
+     */
+    public MutableTranslation2d rotateBy(double cos, double sin) {
+        return set(x_ * cos - y_ * sin, x_ * sin + y_ * cos);
+    }
+
+    public MutableTranslation2d rotateBy(final MutableRotation2d rotation) {
+        return rotateBy(rotation.cos(), rotation.sin());
+    }
+
+    public MutableTranslation2d rotateBy(final Rotation2d rotation) {
+        return rotateBy(rotation.cos(), rotation.sin());
+    }
+
+    public MutableTranslation2d scale(double s) {
+        return set(x_ * s, y_ * s);
+    }
+
+    /**
+     * Same as {@link Translation2d#inverse()}, in place.
+     */
+    public MutableTranslation2d invert() {
+        return set(-x_, -y_);
+    }
+
+    public Translation2d toTranslation2d() {
+        return new Translation2d(x_, y_);
+    }
+
+    @Override
+    public String toString() {
+        return toTranslation2d().toString();
+    }
+}
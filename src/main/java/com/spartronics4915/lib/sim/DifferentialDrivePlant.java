@@ -0,0 +1,321 @@
+package com.spartronics4915.lib.sim;
+
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+
+/**
+ * A physics model of a differential drivetrain, for running the drive code
+ * without a robot.
+ * <p>
+ * Each side is a motor modelled by its characterization constants, so the
+ * voltage applied to it is
+ * <code>V = ks * sign(v) + kv * v + ka * dv/dt</code>
+ * where v is the surface speed of that side's wheels. The wheels push the
+ * robot along, but the carpet can only take so much: the ground speed of each
+ * side follows its wheel speed with its acceleration limited to
+ * <code>max_traction_accel</code>, and any difference between the two is wheel
+ * slip. The encoders measure the wheels, so slip shows up as odometry error,
+ * just as it does on the robot. Heading comes from the ground speeds through
+ * the effective track width, which is the real track width divided by the
+ * scrub factor {@link com.spartronics4915.frc2019.Kinematics} uses.
+ * <p>
+ * Time advances in fixed steps of <code>dt</code>. The sensors are read with
+ * latency: encoder counts and gyro heading are kept for every step, and reads
+ * return the values from <code>encoder_latency</code> or
+ * <code>gyro_latency</code> ago. Encoder counts are whole quadrature edges.
+ * <p>
+ * Not thread safe.
+ */
+public class DifferentialDrivePlant
+{
+
+    public static final int kLeft = 0;
+    public static final int kRight = 1;
+
+    private static final double kStoppedVelocity = 1E-3; // inches per second
+    private static final double kMaxVelocityWindow = 0.1; // seconds; the Talon's longest measurement period
+
+    public static class Parameters
+    {
+
+        public final double wheel_diameter; // inches
+        public final int quad_codes_per_rev; // encoder edges per wheel revolution
+        public final double effective_track_width; // inches
+        public final double kv; // volts per inch per second
+        public final double ka; // volts per inch per second^2
+        public final double ks; // volts to overcome static friction
+        public final double max_voltage;
+        public final double max_traction_accel; // inches per second^2
+        public final double encoder_latency; // seconds
+        public final double gyro_latency; // seconds
+        public final double gyro_drift; // degrees per second
+        public final double dt; // seconds per step
+
+        public Parameters(double wheel_diameter, int quad_codes_per_rev, double effective_track_width,
+                double kv, double ka, double ks, double max_voltage, double max_traction_accel,
+                double encoder_latency, double gyro_latency, double gyro_drift, double dt)
+        {
+            this.wheel_diameter = wheel_diameter;
+            this.quad_codes_per_rev = quad_codes_per_rev;
+            this.effective_track_width = effective_track_width;
+            this.kv = kv;
+            this.ka = ka;
+            this.ks = ks;
+            this.max_voltage = max_voltage;
+            this.max_traction_accel = max_traction_accel;
+            this.encoder_latency = encoder_latency;
+            this.gyro_latency = gyro_latency;
+            this.gyro_drift = gyro_drift;
+            this.dt = dt;
+        }
+    }
+
+    private final Parameters mParams;
+    private final double mCountsPerInch;
+
+    // True state
+    private final double[] mVoltage = new double[2];
+    private final double[] mWheelVelocity = new double[2];
+    private final double[] mGroundVelocity = new double[2];
+    private final double[] mWheelPosition = new double[2]; // inches turned by the wheels
+    private double mX, mY, mHeading; // inches, inches, radians
+    private boolean mBrake = true;
+    private long mSteps = 0;
+
+    // Sensor history: what the sensors read at each of the last few steps
+    private final long[][] mCountHistory;
+    private final double[] mGyroHistory; // degrees, before mGyroOffset
+    private int mNewest = 0;
+    private final long[] mCountOffset = new long[2];
+    private double mGyroOffset = 0;
+
+    public DifferentialDrivePlant(Parameters params)
+    {
+        mParams = params;
+        mCountsPerInch = params.quad_codes_per_rev / (Math.PI * params.wheel_diameter);
+        int history = (int) Math.ceil(
+                (Math.max(params.encoder_latency, params.gyro_latency) + kMaxVelocityWindow) / params.dt) + 2;
+        mCountHistory = new long[2][history];
+        mGyroHistory = new double[history];
+        reset(Pose2d.identity());
+    }
+
+    public Parameters getParameters()
+    {
+        return mParams;
+    }
+
+    public double getDt()
+    {
+        return mParams.dt;
+    }
+
+    /**
+     * @return The simulated time since the plant was made, in seconds
+     */
+    public double getTime()
+    {
+        return mSteps * mParams.dt;
+    }
+
+    /**
+     * Stops the robot at <code>pose</code>, zeroes the encoders and sets the
+     * gyro to the pose's heading.
+     */
+    public void reset(Pose2d pose)
+    {
+        for (int side = kLeft; side <= kRight; side++)
+        {
+            mVoltage[side] = 0;
+            mWheelVelocity[side] = 0;
+            mGroundVelocity[side] = 0;
+            mWheelPosition[side] = 0;
+            mCountOffset[side] = 0;
+        }
+        mX = pose.getTranslation().x();
+        mY = pose.getTranslation().y();
+        mHeading = pose.getRotation().getRadians();
+        mGyroOffset = 0;
+        for (int i = 0; i < mGyroHistory.length; i++)
+        {
+            mCountHistory[kLeft][i] = 0;
+            mCountHistory[kRight][i] = 0;
+            mGyroHistory[i] = Math.toDegrees(mHeading);
+        }
+    }
+
+    /**
+     * Sets the voltage applied to one side's motors until it's set again. It's
+     * clamped to <code>max_voltage</code>.
+     */
+    public void setVoltage(int side, double volts)
+    {
+        mVoltage[side] = Math.max(-mParams.max_voltage, Math.min(mParams.max_voltage, volts));
+    }
+
+    public double getVoltage(int side)
+    {
+        return mVoltage[side];
+    }
+
+    /**
+     * In brake mode the motors' back-EMF slows the robot when no voltage is
+     * applied; in coast mode only friction does.
+     */
+    public void setBrakeMode(boolean brake)
+    {
+        mBrake = brake;
+    }
+
+    public boolean isBrakeMode()
+    {
+        return mBrake;
+    }
+
+    /**
+     * Advances the simulation by one step of <code>dt</code>.
+     */
+    public void step()
+    {
+        final double dt = mParams.dt;
+        final double maxGroundDelta = mParams.max_traction_accel * dt;
+        for (int side = kLeft; side <= kRight; side++)
+        {
+            final double v = mWheelVelocity[side];
+            final double volts = mVoltage[side];
+            double accel;
+            if (Math.abs(v) < kStoppedVelocity)
+            {
+                // Static friction holds the wheel until the motor beats it
+                accel = Math.abs(volts) <= mParams.ks ? -v / dt
+                        : (volts - Math.copySign(mParams.ks, volts)) / mParams.ka;
+            }
+            else
+            {
+                double backEmf = (volts == 0 && !mBrake) ? 0 : mParams.kv * v;
+                accel = (volts - Math.copySign(mParams.ks, v) - backEmf) / mParams.ka;
+                if (Math.signum(v + accel * dt) != Math.signum(v) && Math.abs(volts) <= mParams.ks)
+                {
+                    accel = -v / dt; // friction stops the wheel, it doesn't reverse it
+                }
+            }
+            mWheelVelocity[side] = v + accel * dt;
+            mWheelPosition[side] += 0.5 * (v + mWheelVelocity[side]) * dt;
+
+            final double slip = mWheelVelocity[side] - mGroundVelocity[side];
+            mGroundVelocity[side] += Math.max(-maxGroundDelta, Math.min(maxGroundDelta, slip));
+        }
+
+        // Move along the arc the ground speeds describe
+        final double linear = 0.5 * (mGroundVelocity[kLeft] + mGroundVelocity[kRight]);
+        final double dheading = (mGroundVelocity[kRight] - mGroundVelocity[kLeft]) / mParams.effective_track_width * dt;
+        final double midHeading = mHeading + 0.5 * dheading;
+        mX += linear * Math.cos(midHeading) * dt;
+        mY += linear * Math.sin(midHeading) * dt;
+        mHeading += dheading;
+        mSteps++;
+
+        mNewest = mNewest + 1 == mGyroHistory.length ? 0 : mNewest + 1;
+        mCountHistory[kLeft][mNewest] = (long) Math.floor(mWheelPosition[kLeft] * mCountsPerInch);
+        mCountHistory[kRight][mNewest] = (long) Math.floor(mWheelPosition[kRight] * mCountsPerInch);
+        mGyroHistory[mNewest] = Math.toDegrees(mHeading) + mParams.gyro_drift * getTime();
+    }
+
+    /**
+     * @return The index into the sensor history of the reading from
+     *         <code>age</code> seconds ago (or as long ago as is kept)
+     */
+    private int historyIndex(double age)
+    {
+        int steps = Math.min((int) Math.round(age / mParams.dt), mGyroHistory.length - 1);
+        int index = mNewest - Math.max(steps, 0);
+        return index < 0 ? index + mGyroHistory.length : index;
+    }
+
+    /**
+     * @return The encoder count <code>age</code> seconds ago, e.g. 0 for what
+     *         a Talon sees locally or <code>encoder_latency</code> for what
+     *         reaches the roboRIO
+     */
+    public long getEncoderCounts(int side, double age)
+    {
+        return mCountHistory[side][historyIndex(age)] - mCountOffset[side];
+    }
+
+    /**
+     * @return The encoder velocity in counts per second, measured the way a
+     *         Talon does: the change in count over the <code>window</code>
+     *         seconds up to <code>age</code> seconds ago
+     */
+    public double getEncoderVelocity(int side, double age, double window)
+    {
+        window = Math.min(window, kMaxVelocityWindow);
+        return (mCountHistory[side][historyIndex(age)] - mCountHistory[side][historyIndex(age + window)])
+                / window;
+    }
+
+    /**
+     * Zeroes the encoders as of now; readings of older counts are zeroed by
+     * the same amount, so a delayed read right after this can be slightly off
+     * zero, as on the robot.
+     */
+    public void zeroEncoders()
+    {
+        mCountOffset[kLeft] = mCountHistory[kLeft][mNewest];
+        mCountOffset[kRight] = mCountHistory[kRight][mNewest];
+    }
+
+    /**
+     * @return The gyro heading in degrees (unbounded, like the Pigeon's yaw),
+     *         <code>gyro_latency</code> seconds old
+     */
+    public double getGyroDegrees()
+    {
+        return mGyroHistory[historyIndex(mParams.gyro_latency)] + mGyroOffset;
+    }
+
+    /**
+     * Makes the gyro read <code>degrees</code> now.
+     */
+    public void setGyroDegrees(double degrees)
+    {
+        mGyroOffset = degrees - mGyroHistory[mNewest];
+    }
+
+    public double countsToInches(double counts)
+    {
+        return counts / mCountsPerInch;
+    }
+
+    public double inchesToCounts(double inches)
+    {
+        return inches * mCountsPerInch;
+    }
+
+    /**
+     * @return Where the robot really is, which odometry can only estimate
+     */
+    public Pose2d getPose()
+    {
+        return new Pose2d(mX, mY, Rotation2d.fromRadians(mHeading));
+    }
+
+    public double getWheelVelocity(int side)
+    {
+        return mWheelVelocity[side];
+    }
+
+    public double getGroundVelocity(int side)
+    {
+        return mGroundVelocity[side];
+    }
+
+    /**
+     * @return How much faster the wheels on <code>side</code> are turning than
+     *         the ground is going by, in inches per second
+     */
+    public double getSlip(int side)
+    {
+        return mWheelVelocity[side] - mGroundVelocity[side];
+    }
+}
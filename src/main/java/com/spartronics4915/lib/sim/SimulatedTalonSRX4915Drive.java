@@ -0,0 +1,495 @@
+package com.spartronics4915.lib.sim;
+
+import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.spartronics4915.lib.drivers.TalonSRX4915Drive;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.util.Clock;
+import com.spartronics4915.lib.util.Logger;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * A {@link TalonSRX4915Drive} that drives a {@link DifferentialDrivePlant}
+ * instead of Talons and a Pigeon, so Drive, the path follower and the robot
+ * state estimator can run off-robot without changes.
+ * <p>
+ * Each master Talon's closed loop is emulated the way the Talon runs it:
+ * every plant step (normally 1ms, the Talon's loop period) it computes
+ * <code>kP * err + kI * iAccum + kD * dErr + kF * setpoint</code> in native
+ * units (encoder edges, or edges per 100ms for velocity) against its own,
+ * undelayed encoder, with a 100ms velocity measurement window, the configured
+ * ramp rate and 1023 as full output. So the gains from
+ * {@link #reloadGains(int, double, double, double, double, double, int, double, double)}
+ * mean the same thing they do on the robot. MotionMagic follows a trapezoidal
+ * profile at the configured cruise velocity and acceleration. Nominal output
+ * isn't modelled.
+ * <p>
+ * The plant is stepped up to the current time at the start of every call, so
+ * the simulation keeps pace with whatever {@link Clock.Source} it's given.
+ * With a {@link com.spartronics4915.frc2019.loops.SimulatedClock} it runs
+ * as fast as the CPU allows.
+ */
+public class SimulatedTalonSRX4915Drive extends TalonSRX4915Drive
+{
+
+    private static final double kVelocityWindow = 0.1; // seconds, Period_100Ms
+    private static final double kFullOutput = 1023;
+    private static final int kNumSlots = 4;
+
+    /**
+     * One emulated master Talon (the slave just follows it, so it isn't
+     * modelled separately).
+     */
+    private class SimulatedTalon
+    {
+
+        final int mSide;
+        ControlMode mControlMode = ControlMode.PercentOutput;
+        double mSetpoint = 0; // percent, native velocity or native position
+        double mOutput = 0; // [-1, 1] after ramping
+        double mOpenLoopRampRate = 0;
+        double mPeakOutput = 1;
+
+        final double[] mKp = new double[kNumSlots];
+        final double[] mKi = new double[kNumSlots];
+        final double[] mKd = new double[kNumSlots];
+        final double[] mKf = new double[kNumSlots];
+        final int[] mIZone = new int[kNumSlots];
+        final double[] mMaxIAccum = new double[kNumSlots];
+        final double[] mClosedLoopRampRate = new double[kNumSlots];
+        int mSlot = 0;
+        double mIAccum = 0;
+        double mLastError = Double.NaN;
+
+        // MotionMagic, in edges and edges per 100ms
+        double mCruiseVelocity = 0;
+        double mAcceleration = 0;
+        double mProfilePosition = 0;
+        double mProfileVelocity = 0;
+
+        SimulatedTalon(int side)
+        {
+            mSide = side;
+        }
+
+        double getPosition()
+        {
+            return mPlant.getEncoderCounts(mSide, 0);
+        }
+
+        double getVelocity()
+        {
+            return mPlant.getEncoderVelocity(mSide, 0, kVelocityWindow) / 10;
+        }
+
+        void setControlMode(ControlMode mode)
+        {
+            if (mode != mControlMode)
+            {
+                mControlMode = mode;
+                mSetpoint = 0;
+                mLastError = Double.NaN;
+                // MotionMagic starts its profile from wherever we are
+                mProfilePosition = getPosition();
+                mProfileVelocity = getVelocity();
+            }
+        }
+
+        void set(double setpoint)
+        {
+            mSetpoint = setpoint;
+        }
+
+        /**
+         * Advances one loop period and applies the result to the plant.
+         */
+        void update(double dt)
+        {
+            double target;
+            double rampRate;
+            switch (mControlMode)
+            {
+                case PercentOutput:
+                    target = mSetpoint;
+                    rampRate = mOpenLoopRampRate;
+                    break;
+                case Velocity:
+                    target = closedLoop(mSetpoint - getVelocity(), mSetpoint);
+                    rampRate = mClosedLoopRampRate[mSlot];
+                    break;
+                case Position:
+                    target = closedLoop(mSetpoint - getPosition(), 0);
+                    rampRate = mClosedLoopRampRate[mSlot];
+                    break;
+                case MotionMagic:
+                    updateProfile(dt);
+                    target = closedLoop(mProfilePosition - getPosition(), mProfileVelocity);
+                    rampRate = mClosedLoopRampRate[mSlot];
+                    break;
+                default:
+                    target = 0;
+                    rampRate = 0;
+                    break;
+            }
+            target = Math.max(-mPeakOutput, Math.min(mPeakOutput, target));
+            if (rampRate > 0)
+            {
+                final double maxDelta = dt / rampRate;
+                mOutput += Math.max(-maxDelta, Math.min(maxDelta, target - mOutput));
+            }
+            else
+            {
+                mOutput = target;
+            }
+            mPlant.setVoltage(mSide, mOutput * mPlant.getParameters().max_voltage);
+        }
+
+        private double closedLoop(double error, double feedforward)
+        {
+            final int izone = mIZone[mSlot];
+            if (izone != 0 && Math.abs(error) > izone)
+            {
+                mIAccum = 0;
+            }
+            else
+            {
+                mIAccum += error;
+                final double maxIAccum = mMaxIAccum[mSlot];
+                if (maxIAccum != 0)
+                {
+                    mIAccum = Math.max(-maxIAccum, Math.min(maxIAccum, mIAccum));
+                }
+            }
+            final double dError = Double.isNaN(mLastError) ? 0 : error - mLastError;
+            mLastError = error;
+            return (mKp[mSlot] * error + mKi[mSlot] * mIAccum + mKd[mSlot] * dError
+                    + mKf[mSlot] * feedforward) / kFullOutput;
+        }
+
+        /**
+         * Moves the MotionMagic setpoint one period along a trapezoidal
+         * profile towards mSetpoint.
+         */
+        private void updateProfile(double dt)
+        {
+            // Work in edges and edges per second
+            final double cruise = mCruiseVelocity * 10;
+            final double accel = mAcceleration * 10;
+            final double remaining = mSetpoint - mProfilePosition;
+            double velocity = mProfileVelocity * 10;
+            if (cruise <= 0 || accel <= 0)
+            {
+                mProfilePosition = mSetpoint;
+                mProfileVelocity = 0;
+                return;
+            }
+            final double stoppingDistance = velocity * velocity / (2 * accel);
+            double desired;
+            if (Math.abs(remaining) <= stoppingDistance && Math.signum(remaining) == Math.signum(velocity))
+                desired = 0; // time to slow down
+            else
+                desired = Math.copySign(cruise, remaining);
+            velocity += Math.max(-accel * dt, Math.min(accel * dt, desired - velocity));
+            double step = velocity * dt;
+            if (Math.abs(step) >= Math.abs(remaining) && Math.abs(velocity) <= accel * dt * 2)
+            {
+                mProfilePosition = mSetpoint;
+                mProfileVelocity = 0;
+                return;
+            }
+            mProfilePosition += step;
+            mProfileVelocity = velocity / 10;
+        }
+
+        double getSetpointInches()
+        {
+            return mPlant.countsToInches(mSetpoint);
+        }
+    }
+
+    private final DifferentialDrivePlant mPlant;
+    private final Clock.Source mClock; // null for the global Clock
+    private final SimulatedTalon mLeft;
+    private final SimulatedTalon mRight;
+    private double mStartTime = Double.NaN;
+    private long mStepsTaken = 0;
+
+    /**
+     * Runs against the global {@link Clock}.
+     */
+    public SimulatedTalonSRX4915Drive(DifferentialDrivePlant plant)
+    {
+        this(plant, null);
+    }
+
+    /**
+     * Runs against its own clock, so many simulations can run side by side.
+     */
+    public SimulatedTalonSRX4915Drive(DifferentialDrivePlant plant, Clock.Source clock)
+    {
+        super(plant.getParameters().wheel_diameter, plant.getParameters().quad_codes_per_rev / 4);
+        mPlant = plant;
+        mClock = clock;
+        mLeft = new SimulatedTalon(DifferentialDrivePlant.kLeft);
+        mRight = new SimulatedTalon(DifferentialDrivePlant.kRight);
+    }
+
+    public DifferentialDrivePlant getPlant()
+    {
+        return mPlant;
+    }
+
+    /**
+     * Steps the plant (and the Talons' loops) up to the current time.
+     */
+    private void update()
+    {
+        final double now = mClock == null ? Clock.getTimestamp() : mClock.getTimestamp();
+        if (Double.isNaN(mStartTime))
+        {
+            mStartTime = now;
+            return;
+        }
+        final double dt = mPlant.getDt();
+        final long stepsDue = (long) Math.floor((now - mStartTime) / dt + 1E-9);
+        for (; mStepsTaken < stepsDue; mStepsTaken++)
+        {
+            mLeft.update(dt);
+            mRight.update(dt);
+            mPlant.step();
+        }
+    }
+
+    @Override
+    public boolean hasIMU()
+    {
+        return true;
+    }
+
+    /* drive methods (typically called via looper) -------------------------- */
+    @Override
+    public synchronized void stop()
+    {
+        update();
+        driveOpenLoop(0, 0);
+    }
+
+    @Override
+    public synchronized void beginOpenLoop(double rampRate,
+            double nominalOutput, double peakOutput)
+    {
+        update();
+        for (SimulatedTalon talon : new SimulatedTalon[] { mLeft, mRight })
+        {
+            talon.mOpenLoopRampRate = rampRate;
+            talon.mPeakOutput = peakOutput;
+            talon.setControlMode(ControlMode.PercentOutput);
+            talon.set(0.0);
+        }
+    }
+
+    @Override
+    public synchronized void driveOpenLoop(double left, double right)
+    {
+        update();
+        mLeft.setControlMode(ControlMode.PercentOutput);
+        mLeft.set(left);
+        mRight.setControlMode(ControlMode.PercentOutput);
+        mRight.set(right);
+    }
+
+    @Override
+    public synchronized void beginClosedLoopVelocity(int slotIdx, double nominalOutput)
+    {
+        update();
+        mLeft.setControlMode(ControlMode.Velocity);
+        mLeft.mSlot = slotIdx;
+        mRight.setControlMode(ControlMode.Velocity);
+        mRight.mSlot = slotIdx;
+    }
+
+    @Override
+    public synchronized void driveVelocityInchesPerSec(double left, double right)
+    {
+        update();
+        // Native units are edges per 100ms, rounded as TalonSRX4915 does
+        mLeft.set(Math.round(mPlant.inchesToCounts(left) / 10));
+        mRight.set(Math.round(mPlant.inchesToCounts(right) / 10));
+    }
+
+    @Override
+    public synchronized void beginClosedLoopPosition(int slotIdx, double nominalOutput,
+            double maxVelocityRPM, double maxAccelRPMPerSec)
+    {
+        update();
+        final double edgesPerRev = mPlant.getParameters().quad_codes_per_rev;
+        for (SimulatedTalon talon : new SimulatedTalon[] { mLeft, mRight })
+        {
+            talon.setControlMode(ControlMode.MotionMagic);
+            talon.mSlot = slotIdx;
+            talon.mCruiseVelocity = maxVelocityRPM / 60 / 10 * edgesPerRev;
+            talon.mAcceleration = maxAccelRPMPerSec / 60 / 10 * edgesPerRev;
+        }
+    }
+
+    @Override
+    public synchronized void drivePositionInches(double left, double right)
+    {
+        update();
+        mLeft.set(Math.round(mPlant.inchesToCounts(left)));
+        mRight.set(Math.round(mPlant.inchesToCounts(right)));
+    }
+
+    /* distance and speed conversions ----------------------------------- */
+    @Override
+    public synchronized double getLeftDistanceInches()
+    {
+        update();
+        return mPlant.countsToInches(
+                mPlant.getEncoderCounts(DifferentialDrivePlant.kLeft, mPlant.getParameters().encoder_latency));
+    }
+
+    @Override
+    public synchronized double getRightDistanceInches()
+    {
+        update();
+        return mPlant.countsToInches(
+                mPlant.getEncoderCounts(DifferentialDrivePlant.kRight, mPlant.getParameters().encoder_latency));
+    }
+
+    @Override
+    public synchronized double getLeftVelocityInchesPerSec()
+    {
+        update();
+        return mPlant.countsToInches(mPlant.getEncoderVelocity(DifferentialDrivePlant.kLeft,
+                mPlant.getParameters().encoder_latency, kVelocityWindow));
+    }
+
+    @Override
+    public synchronized double getRightVelocityInchesPerSec()
+    {
+        update();
+        return mPlant.countsToInches(mPlant.getEncoderVelocity(DifferentialDrivePlant.kRight,
+                mPlant.getParameters().encoder_latency, kVelocityWindow));
+    }
+
+    /* support/misc ------------------------------------------------------- */
+    @Override
+    public synchronized double getGyroAngle()
+    {
+        update();
+        return mPlant.getGyroDegrees();
+    }
+
+    @Override
+    public synchronized void setGyroAngle(double yawDegrees)
+    {
+        update();
+        mPlant.setGyroDegrees(yawDegrees);
+    }
+
+    @Override
+    public synchronized void resetEncoders(boolean resetYaw)
+    {
+        update();
+        mPlant.zeroEncoders();
+        if (resetYaw)
+            mPlant.setGyroDegrees(0);
+        // The Talons' position setpoints were relative to the old zero
+        mLeft.mProfilePosition = mLeft.getPosition();
+        mRight.mProfilePosition = mRight.getPosition();
+    }
+
+    @Override
+    public synchronized boolean isBrakingEnabled()
+    {
+        return mPlant.isBrakeMode();
+    }
+
+    @Override
+    public synchronized void enableBraking(boolean onoff)
+    {
+        update();
+        mPlant.setBrakeMode(onoff);
+    }
+
+    @Override
+    public synchronized void reloadGains(int slotIdx, double kp, double ki, double kd,
+            double kfL, double kfR, int izone, double maxIAccum, double rampRate)
+    {
+        for (SimulatedTalon talon : new SimulatedTalon[] { mLeft, mRight })
+        {
+            talon.mKp[slotIdx] = kp;
+            talon.mKi[slotIdx] = ki;
+            talon.mKd[slotIdx] = kd;
+            talon.mKf[slotIdx] = talon == mLeft ? kfL : kfR;
+            talon.mIZone[slotIdx] = izone;
+            talon.mMaxIAccum[slotIdx] = maxIAccum;
+            talon.mClosedLoopRampRate[slotIdx] = rampRate;
+        }
+    }
+
+    @Override
+    public synchronized void resetIntegralAccumulator()
+    {
+        update();
+        mLeft.mIAccum = 0;
+        mRight.mIAccum = 0;
+    }
+
+    @Override
+    public synchronized String dumpPIDState(int slotIdx)
+    {
+        String result = "";
+        for (SimulatedTalon talon : new SimulatedTalon[] { mLeft, mRight })
+        {
+            result += (talon == mLeft ? "LeftPID " : "\nRightPID ") + slotIdx + "\n" +
+                    "  kp:" + talon.mKp[slotIdx] + " ki:" + talon.mKi[slotIdx] +
+                    " kd:" + talon.mKd[slotIdx] + " kf:" + talon.mKf[slotIdx] +
+                    " izone:" + talon.mIZone[slotIdx] + " maxIAccum:" + talon.mMaxIAccum[slotIdx] +
+                    " ramp:" + talon.mClosedLoopRampRate[slotIdx];
+        }
+        return result;
+    }
+
+    @Override
+    public void outputToSmartDashboard()
+    {
+        final double leftSpeed = getLeftVelocityInchesPerSec();
+        final double rightSpeed = getRightVelocityInchesPerSec();
+        synchronized (this)
+        {
+            SmartDashboard.putNumber("Drive/leftVoltage", mPlant.getVoltage(DifferentialDrivePlant.kLeft));
+            SmartDashboard.putNumber("Drive/rightVoltage", mPlant.getVoltage(DifferentialDrivePlant.kRight));
+            SmartDashboard.putNumber("Drive/leftSpeed", leftSpeed); // (ips)
+            SmartDashboard.putNumber("Drive/rightSpeed", rightSpeed); // (ips)
+            if (mLeft.mControlMode == ControlMode.Velocity)
+            {
+                SmartDashboard.putNumber("Drive/leftSpeedErr", leftSpeed - mLeft.getSetpointInches() * 10);
+                SmartDashboard.putNumber("Drive/rightSpeedErr", rightSpeed - mRight.getSetpointInches() * 10);
+            }
+            else if (mLeft.mControlMode == ControlMode.MotionMagic)
+            {
+                final double circumference = Math.PI * mPlant.getParameters().wheel_diameter;
+                SmartDashboard.putNumber("Drive/leftTargetPt", mLeft.getSetpointInches() / circumference);
+                SmartDashboard.putNumber("Drive/rightTargetPt", mRight.getSetpointInches() / circumference);
+            }
+            SmartDashboard.putNumber("Drive/IMU_Heading", mPlant.getGyroDegrees());
+
+            // Ground truth, for comparing with what odometry thinks
+            final Pose2d pose = mPlant.getPose();
+            SmartDashboard.putNumber("Drive/sim/x", pose.getTranslation().x());
+            SmartDashboard.putNumber("Drive/sim/y", pose.getTranslation().y());
+            SmartDashboard.putNumber("Drive/sim/heading", pose.getRotation().getDegrees());
+            SmartDashboard.putNumber("Drive/sim/leftSlip", mPlant.getSlip(DifferentialDrivePlant.kLeft));
+            SmartDashboard.putNumber("Drive/sim/rightSlip", mPlant.getSlip(DifferentialDrivePlant.kRight));
+        }
+    }
+
+    @Override
+    public boolean checkSystem(String variant)
+    {
+        Logger.notice("SimulatedTalonSRX4915Drive has no motors to check");
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package com.spartronics4915.lib.util;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Where the robot code gets the time from. On the robot this is the FPGA
+ * timer, but a simulation can swap in its own {@link Source} so the control
+ * stack runs against simulated time (as fast as the CPU allows) instead.
+ * <p>
+ * Code that might run in simulation should use {@link #getTimestamp()} and
+ * {@link #sleep(double)} rather than Timer.getFPGATimestamp() and
+ * Thread.sleep().
+ */
+public class Clock
+{
+
+    public interface Source
+    {
+
+        /**
+         * @return The current time in seconds
+         */
+        public double getTimestamp();
+
+        /**
+         * Waits until <code>seconds</code> have passed on this clock.
+         */
+        public void sleep(double seconds) throws InterruptedException;
+    }
+
+    // An anonymous class rather than a method reference, so Timer (and the
+    // HAL behind it) isn't touched until someone actually asks the FPGA
+    private static final Source kFPGA = new Source()
+    {
+
+        @Override
+        public double getTimestamp()
+        {
+            return Timer.getFPGATimestamp();
+        }
+
+        @Override
+        public void sleep(double seconds) throws InterruptedException
+        {
+            Thread.sleep((long) (seconds * 1000.0));
+        }
+    };
+
+    private static volatile Source sSource = kFPGA;
+
+    public static double getTimestamp()
+    {
+        return sSource.getTimestamp();
+    }
+
+    public static void sleep(double seconds) throws InterruptedException
+    {
+        sSource.sleep(seconds);
+    }
+
+    public static void setSource(Source source)
+    {
+        sSource = source;
+    }
+
+    public static void useFPGA()
+    {
+        sSource = kFPGA;
+    }
+}
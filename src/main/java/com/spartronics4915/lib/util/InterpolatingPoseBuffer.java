@@ -0,0 +1,323 @@
+package com.spartronics4915.lib.util;
+
+import java.util.AbstractMap;
+import java.util.Map;
+
+import com.spartronics4915.lib.math.MutablePose2d;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+
+/**
+ * A fixed-capacity history of timestamped poses that interpolates between
+ * them like an {@link InterpolatingTreeMap} of {@link InterpolatingDouble} to
+ * {@link Pose2d}, but without boxing timestamps or allocating tree nodes.
+ * <p>
+ * Poses are stored in a ring of primitive arrays (timestamp, x, y, cos, sin)
+ * sorted by timestamp. Appending a pose newer than all the others, which is
+ * the usual case, is O(1) and overwrites the oldest pose once the buffer is
+ * full; inserting an older one shifts the newer ones along. Lookups are a
+ * binary search, and interpolation is the same constant-curvature
+ * interpolation as {@link Pose2d#interpolate(Pose2d, double)}, done on the
+ * primitives.
+ * <p>
+ * Not thread safe, but reads never throw because of a concurrent write (they
+ * just return garbage), so the buffer can be read optimistically under a
+ * {@link java.util.concurrent.locks.StampedLock} as long as what's read is
+ * validated before it's used.
+ */
+public class InterpolatingPoseBuffer
+{
+
+    private static final double kEps = 1E-9;
+
+    private final double[] mTimestamps;
+    private final double[] mXs;
+    private final double[] mYs;
+    private final double[] mCoses;
+    private final double[] mSins;
+    private int mHead = 0; // physical index of the oldest pose
+    private int mSize = 0;
+
+    public InterpolatingPoseBuffer(int capacity)
+    {
+        mTimestamps = new double[capacity];
+        mXs = new double[capacity];
+        mYs = new double[capacity];
+        mCoses = new double[capacity];
+        mSins = new double[capacity];
+    }
+
+    public int size()
+    {
+        return mSize;
+    }
+
+    public boolean isEmpty()
+    {
+        return mSize == 0;
+    }
+
+    public void clear()
+    {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    /**
+     * @return The physical index of the i'th oldest pose
+     */
+    private int index(int i)
+    {
+        int index = mHead + i;
+        return index >= mTimestamps.length ? index - mTimestamps.length : index;
+    }
+
+    private void set(int index, double timestamp, double x, double y, double cos, double sin)
+    {
+        mTimestamps[index] = timestamp;
+        mXs[index] = x;
+        mYs[index] = y;
+        mCoses[index] = cos;
+        mSins[index] = sin;
+    }
+
+    private void copy(int from, int to)
+    {
+        mTimestamps[to] = mTimestamps[from];
+        mXs[to] = mXs[from];
+        mYs[to] = mYs[from];
+        mCoses[to] = mCoses[from];
+        mSins[to] = mSins[from];
+    }
+
+    private Pose2d get(int index)
+    {
+        return new Pose2d(mXs[index], mYs[index], new Rotation2d(mCoses[index], mSins[index], false));
+    }
+
+    /**
+     * @return The logical index of the newest pose at or before
+     *         <code>timestamp</code>, or -1 if every pose is newer
+     */
+    private int floorIndex(double timestamp, int size)
+    {
+        int lo = 0, hi = size - 1;
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (mTimestamps[index(mid)] <= timestamp)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return hi;
+    }
+
+    /**
+     * Stores a pose, replacing any pose with the same timestamp. If the buffer
+     * is full, the oldest pose is dropped to make room (or the new one, if
+     * it's older than all of them).
+     */
+    public void put(double timestamp, Pose2d pose)
+    {
+        put(timestamp, pose.getTranslation().x(), pose.getTranslation().y(), pose.getRotation().cos(),
+                pose.getRotation().sin());
+    }
+
+    /**
+     * Same as {@link #put(double, Pose2d)}, without making a Pose2d.
+     */
+    public void put(double timestamp, MutablePose2d pose)
+    {
+        put(timestamp, pose.getTranslation().x(), pose.getTranslation().y(), pose.getRotation().cos(),
+                pose.getRotation().sin());
+    }
+
+    private void put(double timestamp, double x, double y, double cos, double sin)
+    {
+        if (mSize == 0 || timestamp > mTimestamps[index(mSize - 1)])
+        {
+            if (mSize == mTimestamps.length)
+            {
+                mHead = index(1);
+                mSize--;
+            }
+            set(index(mSize), timestamp, x, y, cos, sin);
+            mSize++;
+            return;
+        }
+
+        int floor = floorIndex(timestamp, mSize);
+        if (floor >= 0 && mTimestamps[index(floor)] == timestamp)
+        {
+            set(index(floor), timestamp, x, y, cos, sin);
+            return;
+        }
+        if (mSize == mTimestamps.length)
+        {
+            if (floor < 0)
+                return; // it would be dropped straight away
+            mHead = index(1);
+            mSize--;
+            floor--;
+        }
+        // Shift everything newer than timestamp along one to make room
+        for (int i = mSize; i > floor + 1; i--)
+        {
+            copy(index(i - 1), index(i));
+        }
+        set(index(floor + 1), timestamp, x, y, cos, sin);
+        mSize++;
+    }
+
+    /**
+     * @return The pose at <code>timestamp</code>, interpolated between the
+     *         stored poses on either side of it, or the nearest stored pose if
+     *         <code>timestamp</code> is outside them; null if the buffer is
+     *         empty
+     */
+    public Pose2d getInterpolated(double timestamp)
+    {
+        final int size = mSize;
+        if (size == 0)
+            return null;
+        int floor = floorIndex(timestamp, size);
+        if (floor < 0)
+            return get(index(0));
+        int lower = index(floor);
+        if (floor == size - 1 || mTimestamps[lower] == timestamp)
+            return get(lower);
+        int upper = index(floor + 1);
+        double t = (timestamp - mTimestamps[lower]) / (mTimestamps[upper] - mTimestamps[lower]);
+        return interpolate(lower, upper, t);
+    }
+
+    /**
+     * {@link Pose2d#interpolate(Pose2d, double)} from the pose at
+     * <code>lower</code> to the pose at <code>upper</code>: exp(t * log(lower^-1
+     * * upper)) applied to lower.
+     */
+    private Pose2d interpolate(int lower, int upper, double t)
+    {
+        final double x0 = mXs[lower], y0 = mYs[lower], c0 = mCoses[lower], s0 = mSins[lower];
+        final double dx = mXs[upper] - x0, dy = mYs[upper] - y0;
+        final double c1 = mCoses[upper], s1 = mSins[upper];
+
+        // lower^-1 * upper
+        final double rel_x = c0 * dx + s0 * dy;
+        final double rel_y = -s0 * dx + c0 * dy;
+        final double rel_cos = c0 * c1 + s0 * s1;
+        final double rel_sin = c0 * s1 - s0 * c1;
+
+        // log
+        final double dtheta = Math.atan2(rel_sin, rel_cos);
+        final double half_dtheta = 0.5 * dtheta;
+        final double cos_minus_one = rel_cos - 1.0;
+        final double halftheta_by_tan_of_halfdtheta;
+        if (Math.abs(cos_minus_one) < kEps)
+            halftheta_by_tan_of_halfdtheta = 1.0 - 1.0 / 12.0 * dtheta * dtheta;
+        else
+            halftheta_by_tan_of_halfdtheta = -(half_dtheta * rel_sin) / cos_minus_one;
+        final double twist_dx = (rel_x * halftheta_by_tan_of_halfdtheta + rel_y * half_dtheta) * t;
+        final double twist_dy = (-rel_x * half_dtheta + rel_y * halftheta_by_tan_of_halfdtheta) * t;
+        final double twist_dtheta = dtheta * t;
+
+        // exp
+        final double sin_theta = Math.sin(twist_dtheta);
+        final double cos_theta = Math.cos(twist_dtheta);
+        final double s, c;
+        if (Math.abs(twist_dtheta) < kEps)
+        {
+            s = 1.0 - 1.0 / 6.0 * twist_dtheta * twist_dtheta;
+            c = .5 * twist_dtheta;
+        }
+        else
+        {
+            s = sin_theta / twist_dtheta;
+            c = (1.0 - cos_theta) / twist_dtheta;
+        }
+        final double ex = twist_dx * s - twist_dy * c;
+        final double ey = twist_dx * c + twist_dy * s;
+
+        // lower * exp
+        return new Pose2d(x0 + c0 * ex - s0 * ey, y0 + s0 * ex + c0 * ey,
+                new Rotation2d(c0 * cos_theta - s0 * sin_theta, c0 * sin_theta + s0 * cos_theta, true));
+    }
+
+    /**
+     * @return The newest pose, or null if the buffer is empty
+     */
+    public Pose2d getLatest()
+    {
+        final int size = mSize;
+        return size == 0 ? null : get(index(size - 1));
+    }
+
+    /**
+     * Same as {@link #getLatest()}, without making a Pose2d.
+     *
+     * @return <code>out</code>, set to the newest pose, or null if the buffer
+     *         is empty
+     */
+    public MutablePose2d getLatest(MutablePose2d out)
+    {
+        final int size = mSize;
+        if (size == 0)
+            return null;
+        final int latest = index(size - 1);
+        return out.set(mXs[latest], mYs[latest], mCoses[latest], mSins[latest]);
+    }
+
+    /**
+     * @return The timestamp of the newest pose, or NaN if the buffer is empty
+     */
+    public double getLatestTimestamp()
+    {
+        final int size = mSize;
+        return size == 0 ? Double.NaN : mTimestamps[index(size - 1)];
+    }
+
+    /**
+     * @return The timestamp of the oldest pose, or NaN if the buffer is empty
+     */
+    public double getOldestTimestamp()
+    {
+        return mSize == 0 ? Double.NaN : mTimestamps[index(0)];
+    }
+
+    /**
+     * Same as {@link InterpolatingTreeMap#lastEntry()}, for callers that want
+     * the timestamp and pose together.
+     *
+     * @return The newest timestamp and pose, or null if the buffer is empty
+     */
+    public Map.Entry<InterpolatingDouble, Pose2d> lastEntry()
+    {
+        final int size = mSize;
+        if (size == 0)
+            return null;
+        final int latest = index(size - 1);
+        return new AbstractMap.SimpleImmutableEntry<>(new InterpolatingDouble(mTimestamps[latest]), get(latest));
+    }
+
+    /**
+     * Replaces every pose newer than <code>timestamp</code> with
+     * <code>transform.transformBy(pose)</code>.
+     */
+    public void transformAfter(double timestamp, Pose2d transform)
+    {
+        final double tx = transform.getTranslation().x(), ty = transform.getTranslation().y();
+        final double tc = transform.getRotation().cos(), ts = transform.getRotation().sin();
+        for (int i = floorIndex(timestamp, mSize) + 1; i < mSize; i++)
+        {
+            int index = index(i);
+            final double x = mXs[index], y = mYs[index], c = mCoses[index], s = mSins[index];
+            mXs[index] = tx + tc * x - ts * y;
+            mYs[index] = ty + ts * x + tc * y;
+            double cos = tc * c - ts * s, sin = tc * s + ts * c;
+            double magnitude = Math.hypot(cos, sin);
+            mCoses[index] = cos / magnitude;
+            mSins[index] = sin / magnitude;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.spartronics4915.lib.util;
+
+/**
+ * A fixed-size histogram of durations in nanoseconds, for tracking latency
+ * percentiles on the robot without allocating.
+ * <p>
+ * Buckets are log-linear (like HdrHistogram): each power of two is split into
+ * {@link #kSubBuckets} equal buckets, so a reported percentile is within about
+ * 1 / kSubBuckets (~6%) of the true value. Values from 0 ns up to about 18
+ * minutes are tracked; anything longer lands in the last bucket. The maximum
+ * is tracked exactly.
+ * <p>
+ * All methods are synchronized, so one thread can record while another reads.
+ */
+public class LatencyHistogram
+{
+
+    private static final int kSubBucketBits = 4;
+    private static final int kSubBuckets = 1 << kSubBucketBits;
+    private static final int kMaxExponent = 40; // 2^40 ns ~= 18 minutes
+    private static final int kNumBuckets = (kMaxExponent - kSubBucketBits + 2) * kSubBuckets;
+
+    private final long[] mCounts = new long[kNumBuckets];
+    private long mTotalCount;
+    private long mMax;
+    private long mSum;
+
+    /**
+     * @return The bucket index for a duration
+     */
+    private static int getBucket(long nanos)
+    {
+        if (nanos < kSubBuckets)
+            return (int) Math.max(0, nanos);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > kMaxExponent)
+            return kNumBuckets - 1;
+        int sub = (int) (nanos >>> (exponent - kSubBucketBits)) & (kSubBuckets - 1);
+        return (exponent - kSubBucketBits + 1) * kSubBuckets + sub;
+    }
+
+    /**
+     * @return The largest duration that falls in a bucket
+     */
+    private static long getBucketUpperBound(int bucket)
+    {
+        if (bucket < kSubBuckets)
+            return bucket;
+        int exponent = bucket / kSubBuckets + kSubBucketBits - 1;
+        int sub = bucket % kSubBuckets;
+        long width = 1L << (exponent - kSubBucketBits);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+
+    public synchronized void record(long nanos)
+    {
+        mCounts[getBucket(nanos)]++;
+        mTotalCount++;
+        mSum += nanos;
+        if (nanos > mMax)
+            mMax = nanos;
+    }
+
+    public synchronized long getCount()
+    {
+        return mTotalCount;
+    }
+
+    public synchronized long getMax()
+    {
+        return mMax;
+    }
+
+    public synchronized double getMean()
+    {
+        return mTotalCount == 0 ? 0 : (double) mSum / mTotalCount;
+    }
+
+    /**
+     * @param percentile
+     *        Between 0 and 100
+     * @return The duration (ns) that <code>percentile</code> percent of the
+     *         recorded values are at or below, rounded up to the end of its
+     *         bucket, or 0 if nothing has been recorded
+     */
+    public synchronized long getPercentile(double percentile)
+    {
+        if (mTotalCount == 0)
+            return 0;
+        long target = (long) Math.ceil(mTotalCount * Math.min(100, Math.max(0, percentile)) / 100);
+        target = Math.max(1, target);
+        long seen = 0;
+        for (int i = 0; i < kNumBuckets; i++)
+        {
+            seen += mCounts[i];
+            if (seen >= target)
+                return Math.min(getBucketUpperBound(i), mMax);
+        }
+        return mMax;
+    }
+
+    public synchronized void reset()
+    {
+        for (int i = 0; i < kNumBuckets; i++)
+            mCounts[i] = 0;
+        mTotalCount = 0;
+        mMax = 0;
+        mSum = 0;
+    }
+
+    /**
+     * Copies the contents of this histogram into <code>dst</code> and resets
+     * this one, so a reporter can take an interval's worth of samples without
+     * holding up the recording thread.
+     */
+    public synchronized void drainTo(LatencyHistogram dst)
+    {
+        synchronized (dst)
+        {
+            System.arraycopy(mCounts, 0, dst.mCounts, 0, kNumBuckets);
+            dst.mTotalCount = mTotalCount;
+            dst.mMax = mMax;
+            dst.mSum = mSum;
+        }
+        reset();
+    }
+}
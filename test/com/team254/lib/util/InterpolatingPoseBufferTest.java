@@ -0,0 +1,88 @@
+package com.team254.lib.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+import com.spartronics4915.lib.util.InterpolatingDouble;
+import com.spartronics4915.lib.util.InterpolatingPoseBuffer;
+import com.spartronics4915.lib.util.InterpolatingTreeMap;
+
+public class InterpolatingPoseBufferTest {
+    private static final double kTestEpsilon = 1E-6;
+
+    private static void assertPoseEquals(Pose2d expected, Pose2d actual) {
+        assertEquals(expected.getTranslation().x(), actual.getTranslation().x(), kTestEpsilon);
+        assertEquals(expected.getTranslation().y(), actual.getTranslation().y(), kTestEpsilon);
+        assertEquals(expected.getRotation().cos(), actual.getRotation().cos(), kTestEpsilon);
+        assertEquals(expected.getRotation().sin(), actual.getRotation().sin(), kTestEpsilon);
+    }
+
+    private static Pose2d randomPose(Random rand) {
+        return new Pose2d(rand.nextDouble() * 300, rand.nextDouble() * 600,
+                Rotation2d.fromDegrees(rand.nextDouble() * 360 - 180));
+    }
+
+    @Test
+    public void testMatchesTreeMap() {
+        Random rand = new Random(254);
+        InterpolatingTreeMap<InterpolatingDouble, Pose2d> map = new InterpolatingTreeMap<>(20);
+        InterpolatingPoseBuffer buffer = new InterpolatingPoseBuffer(20);
+        assertNull(buffer.getInterpolated(0));
+        assertNull(buffer.lastEntry());
+
+        double timestamp = 0;
+        for (int i = 0; i < 200; i++) {
+            timestamp += 0.005 + rand.nextDouble() * 0.01;
+            Pose2d pose = randomPose(rand);
+            map.put(new InterpolatingDouble(timestamp), pose);
+            buffer.put(timestamp, pose);
+            assertEquals(map.size(), buffer.size());
+            assertEquals(map.lastKey().value, buffer.lastEntry().getKey().value, 0);
+            assertPoseEquals(map.lastEntry().getValue(), buffer.getLatest());
+
+            for (int j = 0; j < 10; j++) {
+                double query = map.firstKey().value - 0.05 + rand.nextDouble() * (timestamp - map.firstKey().value + 0.1);
+                InterpolatingDouble key = new InterpolatingDouble(query);
+                assertPoseEquals(map.getInterpolated(key), buffer.getInterpolated(query));
+            }
+        }
+    }
+
+    @Test
+    public void testOutOfOrderPut() {
+        InterpolatingPoseBuffer buffer = new InterpolatingPoseBuffer(4);
+        buffer.put(1, new Pose2d(1, 0, Rotation2d.identity()));
+        buffer.put(3, new Pose2d(3, 0, Rotation2d.identity()));
+        buffer.put(2, new Pose2d(2, 0, Rotation2d.identity()));
+        buffer.put(3, new Pose2d(30, 0, Rotation2d.identity())); // replaces
+        assertEquals(3, buffer.size());
+        assertEquals(2, buffer.getInterpolated(2).getTranslation().x(), kTestEpsilon);
+        assertEquals(16, buffer.getInterpolated(2.5).getTranslation().x(), kTestEpsilon);
+        assertEquals(30, buffer.getLatest().getTranslation().x(), kTestEpsilon);
+
+        buffer.put(4, new Pose2d(4, 0, Rotation2d.identity()));
+        buffer.put(3.5, new Pose2d(35, 0, Rotation2d.identity())); // full: drops 1
+        assertEquals(4, buffer.size());
+        assertEquals(2, buffer.getOldestTimestamp(), 0);
+        assertEquals(35, buffer.getInterpolated(3.5).getTranslation().x(), kTestEpsilon);
+        buffer.put(0, new Pose2d()); // full and older than everything: ignored
+        assertEquals(2, buffer.getOldestTimestamp(), 0);
+    }
+
+    @Test
+    public void testTransformAfter() {
+        InterpolatingPoseBuffer buffer = new InterpolatingPoseBuffer(10);
+        for (int i = 0; i < 5; i++) {
+            buffer.put(i, new Pose2d(i, 0, Rotation2d.identity()));
+        }
+        Pose2d correction = new Pose2d(0, 1, Rotation2d.fromDegrees(90));
+        buffer.transformAfter(2, correction);
+        assertPoseEquals(new Pose2d(2, 0, Rotation2d.identity()), buffer.getInterpolated(2));
+        assertPoseEquals(correction.transformBy(new Pose2d(4, 0, Rotation2d.identity())), buffer.getLatest());
+    }
+}
@@ -0,0 +1,59 @@
+package com.team254.lib.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.spartronics4915.lib.util.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+    private static void assertWithinBucket(long expected, long actual) {
+        // percentiles round up to the end of a bucket, which is at most 1/16 wide
+        assertTrue(actual + " < " + expected, actual >= expected);
+        assertTrue(actual + " too far above " + expected, actual <= expected + expected / 16 + 1);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (long us = 1; us <= 1000; us++) {
+            histogram.record(us * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500, histogram.getMean(), 1E-6);
+        assertWithinBucket(500000, histogram.getPercentile(50));
+        assertWithinBucket(990000, histogram.getPercentile(99));
+        assertEquals(1000000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testSmallAndHugeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 16; i++) {
+            histogram.record(i);
+        }
+        assertEquals(7, histogram.getPercentile(50)); // exact below 16ns
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertTrue(histogram.getPercentile(100) > 0);
+    }
+
+    @Test
+    public void testDrainTo() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram copy = new LatencyHistogram();
+        histogram.record(5000);
+        histogram.record(7000);
+        histogram.drainTo(copy);
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(2, copy.getCount());
+        assertEquals(7000, copy.getMax());
+        assertWithinBucket(5000, copy.getPercentile(50));
+    }
+}
@@ -0,0 +1,78 @@
+package com.team254.lib.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.RobotState;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+import com.spartronics4915.lib.util.InterpolatingDouble;
+
+public class RobotStateTest {
+    private static final double kTestEpsilon = 1E-6;
+    private static final Rotation2d kHeading = new Rotation2d(1, 2, true);
+
+    /**
+     * The pose the writer stores at a timestamp. Every pose lies on one line, heading along it, so interpolating
+     * between any two of them lands on the line too.
+     */
+    private static Pose2d poseAt(double timestamp) {
+        return new Pose2d(timestamp, 2 * timestamp, kHeading);
+    }
+
+    private static void checkOnLine(Pose2d pose) {
+        assertEquals(2 * pose.getTranslation().x(), pose.getTranslation().y(), kTestEpsilon);
+        assertEquals(kHeading.getRadians(), pose.getRotation().getRadians(), kTestEpsilon);
+    }
+
+    @Test
+    public void testConcurrentReadersSeeConsistentState() throws Exception {
+        final RobotState state = RobotState.getInstance();
+        // Start well after anything a previous test might have stored, so the buffer only holds our poses
+        final double start = 1E6;
+        for (int i = 0; i < 200; i++) {
+            state.addFieldToVehicleObservation(start + i, poseAt(start + i));
+        }
+
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        Map.Entry<InterpolatingDouble, Pose2d> latest = state.getLatestFieldToVehicle();
+                        // The timestamp and pose must come from the same write
+                        assertEquals(latest.getKey().value, latest.getValue().getTranslation().x(), kTestEpsilon);
+                        checkOnLine(latest.getValue());
+                        // The writer may well have evicted this by now, but whatever we get must be on the line
+                        checkOnLine(state.getFieldToVehicle(latest.getKey().value - 10.5));
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            readers[r].start();
+        }
+
+        long writes = 0;
+        long end = System.nanoTime() + 500_000_000L;
+        for (double t = start + 200; System.nanoTime() < end; t += 1) {
+            state.addFieldToVehicleObservation(t, poseAt(t));
+            writes++;
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError("reader saw a torn update after " + writes + " writes", failure.get());
+        }
+    }
+}
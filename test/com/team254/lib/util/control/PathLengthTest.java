@@ -0,0 +1,87 @@
+package com.team254.lib.util.control;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.paths.PathBuilder;
+import com.spartronics4915.frc2019.paths.PathBuilder.Waypoint;
+import com.spartronics4915.lib.control.Lookahead;
+import com.spartronics4915.lib.control.Path;
+import com.spartronics4915.lib.control.PathSegment;
+import com.spartronics4915.lib.math.Translation2d;
+import com.spartronics4915.lib.motion.MotionState;
+
+public class PathLengthTest {
+    static final double kEpsilon = 1E-9;
+    static final MotionState kAtRest = new MotionState(0, 0, 0, 0);
+
+    @Test
+    public void testLine() {
+        PathSegment line = new PathSegment(10, 0, 10, 40, 60, kAtRest, 0);
+        assertEquals(40, line.getLength(), kEpsilon);
+        Translation2d closest = line.getClosestPoint(new Translation2d(3, 15));
+        assertEquals(10, closest.x(), kEpsilon);
+        assertEquals(15, closest.y(), kEpsilon);
+        assertEquals(25, line.getRemainingDistance(closest), kEpsilon);
+        assertEquals(new Translation2d(10, 0), line.getClosestPoint(new Translation2d(0, -5)));
+        Translation2d point = line.getPointByDistance(30);
+        assertEquals(10, point.x(), kEpsilon);
+        assertEquals(30, point.y(), kEpsilon);
+    }
+
+    @Test
+    public void testArc() {
+        // A quarter turn to the left around (0, 30)
+        PathSegment arc = new PathSegment(0, 0, 30, 30, 0, 30, 60, kAtRest, 0);
+        double length = 30 * Math.PI / 2;
+        assertEquals(length, arc.getLength(), kEpsilon);
+
+        Translation2d middle = arc.getPointByDistance(length / 2);
+        assertEquals(30 * Math.sin(Math.PI / 4), middle.x(), kEpsilon);
+        assertEquals(30 - 30 * Math.cos(Math.PI / 4), middle.y(), kEpsilon);
+        assertEquals(length / 2, arc.getRemainingDistance(middle), kEpsilon);
+
+        Translation2d closest = arc.getClosestPoint(new Translation2d(40, 0));
+        assertEquals(24, closest.x(), kEpsilon);
+        assertEquals(12, closest.y(), kEpsilon);
+        // Off the ends of the arc, the closest point is the nearer end
+        assertEquals(new Translation2d(0, 0), arc.getClosestPoint(new Translation2d(-10, -1)));
+        assertEquals(new Translation2d(30, 30), arc.getClosestPoint(new Translation2d(31, 45)));
+
+        // Clockwise, the other way around the same circle
+        PathSegment clockwise = new PathSegment(30, 30, 0, 0, 0, 30, 60, kAtRest, 0);
+        Translation2d point = clockwise.getPointByDistance(length / 3);
+        assertEquals(30 * Math.cos(Math.PI / 6), point.x(), kEpsilon);
+        assertEquals(30 - 30 * Math.sin(Math.PI / 6), point.y(), kEpsilon);
+    }
+
+    @Test
+    public void testRemainingPathDistance() {
+        List<Waypoint> waypoints = new ArrayList<>();
+        waypoints.add(new Waypoint(0, 0, 0, 0));
+        waypoints.add(new Waypoint(100, 0, 30, 80));
+        waypoints.add(new Waypoint(100, 100, 0, 80));
+        Path path = PathBuilder.buildPathFromWaypoints(waypoints);
+        Lookahead lookahead = new Lookahead(12.0, 24.0, 9.0, 120.0);
+        double total = 70 + 30 * Math.PI / 2 + 70;
+
+        for (double x = 0; x < 70; x += 5) {
+            Path.TargetPointReport report = path.getTargetPoint(new Translation2d(x, 1), lookahead);
+            assertEquals(total - x, report.remaining_path_distance, 1E-6);
+        }
+        for (double theta = 0; theta <= Math.PI / 2 + kEpsilon; theta += Math.PI / 16) {
+            Path.TargetPointReport report = path.getTargetPoint(
+                    new Translation2d(70 + 31 * Math.sin(theta), 30 - 31 * Math.cos(theta)), lookahead);
+            assertEquals(70 + 30 * (Math.PI / 2 - theta), report.remaining_path_distance, 1E-6);
+        }
+        // Along the last line, once the first two segments are dropped
+        for (double y = 35; y < 95; y += 5) {
+            Path.TargetPointReport report = path.getTargetPoint(new Translation2d(99, y), lookahead);
+            assertEquals(100 - y, report.remaining_path_distance, 1E-6);
+        }
+    }
+}
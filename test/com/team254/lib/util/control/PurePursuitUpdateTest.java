@@ -0,0 +1,61 @@
+package com.team254.lib.util.control;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.paths.PathBuilder;
+import com.spartronics4915.frc2019.paths.PathBuilder.Waypoint;
+import com.spartronics4915.lib.control.AdaptivePurePursuitController;
+import com.spartronics4915.lib.control.Lookahead;
+import com.spartronics4915.lib.control.Path;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+
+/**
+ * update() works out the arc on primitives; check it against the public Arc
+ * and getDirection it used to use.
+ */
+public class PurePursuitUpdateTest {
+    static final Lookahead kLookahead = new Lookahead(12.0, 24.0, 9.0, 120.0);
+
+    static Path makePath() {
+        List<Waypoint> waypoints = new ArrayList<>();
+        waypoints.add(new Waypoint(0, 0, 0, 0));
+        waypoints.add(new Waypoint(100, 0, 30, 80));
+        waypoints.add(new Waypoint(100, 100, 0, 80));
+        return PathBuilder.buildPathFromWaypoints(waypoints);
+    }
+
+    static double expectedDtheta(Pose2d pose, boolean reversed) {
+        if (reversed) {
+            pose = new Pose2d(pose.getTranslation(), pose.getRotation().rotateBy(Rotation2d.fromRadians(Math.PI)));
+        }
+        Path.TargetPointReport report = makePath().getTargetPoint(pose.getTranslation(), kLookahead);
+        AdaptivePurePursuitController.Arc arc = new AdaptivePurePursuitController.Arc(pose, report.lookahead_point);
+        double scale = 1.0;
+        if (report.lookahead_point_speed < 1E-6 && report.remaining_path_distance < arc.length)
+            scale = Math.max(0.0, report.remaining_path_distance / arc.length);
+        return arc.length * AdaptivePurePursuitController.getDirection(pose, report.lookahead_point) * scale
+                / arc.radius;
+    }
+
+    @Test
+    public void testMatchesArc() {
+        Random random = new Random(4915);
+        for (int i = 0; i < 2000; i++) {
+            Pose2d pose = new Pose2d(random.nextDouble() * 140 - 20, random.nextDouble() * 140 - 20,
+                    Rotation2d.fromRadians(random.nextDouble() * 2 * Math.PI - Math.PI));
+            boolean reversed = i % 2 == 1;
+            AdaptivePurePursuitController controller = new AdaptivePurePursuitController(makePath(), reversed,
+                    kLookahead);
+            double dtheta = controller.update(pose).delta.dtheta;
+            double expected = expectedDtheta(pose, reversed);
+            assertEquals(pose.toString(), expected, dtheta, 1E-6 * Math.max(1.0, Math.abs(expected)));
+        }
+    }
+}
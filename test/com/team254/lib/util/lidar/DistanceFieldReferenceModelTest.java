@@ -0,0 +1,118 @@
+package com.team254.lib.util.lidar;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.lidar.icp.DistanceFieldReferenceModel;
+import com.spartronics4915.frc2019.lidar.icp.Point;
+import com.spartronics4915.frc2019.lidar.icp.ReferenceModel;
+import com.spartronics4915.frc2019.lidar.icp.Segment;
+
+public class DistanceFieldReferenceModelTest {
+    public static final double kTestEpsilon = 1E-9;
+
+    private static ReferenceModel makeWalls(int n, long seed) {
+        Random rand = new Random(seed);
+        Segment[] walls = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            double x = rand.nextDouble() * 324, y = rand.nextDouble() * 648;
+            double angle = rand.nextDouble() * 2 * Math.PI, length = 6 + rand.nextDouble() * 60;
+            walls[i] = new Segment(new Point(x, y), new Point(x + length * Math.cos(angle), y + length * Math.sin(angle)));
+        }
+        return new ReferenceModel(walls);
+    }
+
+    private static double getDistance(ReferenceModel model, double x, double y) {
+        double[] out = new double[2];
+        model.getClosestPoint(x, y, out);
+        return Math.hypot(out[0] - x, out[1] - y);
+    }
+
+    /**
+     * @return The largest distance error over a set of random queries
+     */
+    private static double getMaxError(ReferenceModel exact, ReferenceModel approx, long seed) {
+        Random rand = new Random(seed);
+        double maxError = 0;
+        for (int i = 0; i < 5000; i++) {
+            double x = rand.nextDouble() * 500 - 80, y = rand.nextDouble() * 850 - 100;
+            double error = getDistance(approx, x, y) - getDistance(exact, x, y);
+            assertTrue("closer than the closest point", error > -kTestEpsilon);
+            maxError = Math.max(maxError, error);
+        }
+        return maxError;
+    }
+
+    @Test
+    public void testExactWithZeroError() {
+        ReferenceModel walls = makeWalls(40, 254);
+        DistanceFieldReferenceModel field = new DistanceFieldReferenceModel(walls, 4, 24, 0);
+        assertEquals(0, getMaxError(walls, field, 1), kTestEpsilon);
+        assertTrue(field.getExactFraction() < 0.5);
+    }
+
+    @Test
+    public void testErrorBound() {
+        ReferenceModel walls = makeWalls(40, 254);
+        for (double maxError : new double[]{0.5, 2, 10}) {
+            DistanceFieldReferenceModel field = new DistanceFieldReferenceModel(walls, 4, 24, maxError);
+            assertTrue(getMaxError(walls, field, 2) <= maxError + kTestEpsilon);
+        }
+    }
+
+    @Test
+    public void testSingleSegmentNeverFallsBack() {
+        DistanceFieldReferenceModel field = new DistanceFieldReferenceModel(ReferenceModel.TOWER, 1, 12, 0);
+        assertEquals(0, field.getExactFraction(), 0);
+        assertEquals(0, getMaxError(ReferenceModel.TOWER, field, 3), kTestEpsilon);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        ReferenceModel walls = makeWalls(20, 4915);
+        DistanceFieldReferenceModel field = new DistanceFieldReferenceModel(walls, 3, 12, 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        field.save(bytes);
+        DistanceFieldReferenceModel loaded = DistanceFieldReferenceModel.load(
+                new ByteArrayInputStream(bytes.toByteArray()), walls);
+
+        Random rand = new Random(5);
+        double[] expected = new double[2], actual = new double[2];
+        for (int i = 0; i < 5000; i++) {
+            double x = rand.nextDouble() * 400 - 40, y = rand.nextDouble() * 700 - 40;
+            field.getClosestPoint(x, y, expected);
+            loaded.getClosestPoint(x, y, actual);
+            assertEquals(expected[0], actual[0], 0);
+            assertEquals(expected[1], actual[1], 0);
+        }
+        assertEquals(field.getExactFraction(), loaded.getExactFraction(), 0);
+
+        try {
+            DistanceFieldReferenceModel.load(new ByteArrayInputStream(bytes.toByteArray()), makeWalls(20, 1));
+            fail("loaded a distance field against the wrong model");
+        } catch (IOException expectedException) {
+        }
+    }
+
+    @Test
+    public void testLoadOrBuild() throws IOException {
+        ReferenceModel walls = makeWalls(10, 7);
+        File file = File.createTempFile("distancefield", ".dat");
+        file.delete();
+        try {
+            DistanceFieldReferenceModel built = DistanceFieldReferenceModel.loadOrBuild(file, walls, 4, 12, 0);
+            assertTrue(file.exists());
+            DistanceFieldReferenceModel loaded = DistanceFieldReferenceModel.loadOrBuild(file, walls, 4, 12, 0);
+            assertEquals(built.getExactFraction(), loaded.getExactFraction(), 0);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.team254.lib.util.lidar;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.spartronics4915.frc2019.lidar.LidarFrameDecoder;
+
+/**
+ * Stand-in for the chezy_lidar process, so the ingestion path can be
+ * exercised off-robot. Writes synthetic scans of a rectangular room to
+ * stdout, either as text lines or as binary frames.
+ * <p>
+ * Usage: <code>FakeLidarProducer [--binary] [numPoints] [pointsPerScan]</code>
+ */
+public class FakeLidarProducer {
+    public static final double kRoomHalfWidthMm = 2000;
+    public static final double kRoomHalfDepthMm = 3000;
+
+    public static double distanceAt(double angleDegrees) {
+        double rad = Math.toRadians(angleDegrees);
+        double dx = Math.abs(kRoomHalfDepthMm / Math.cos(rad));
+        double dy = Math.abs(kRoomHalfWidthMm / Math.sin(rad));
+        return Math.min(dx, dy);
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean binary = args.length > 0 && args[0].equals("--binary");
+        int argIdx = binary ? 1 : 0;
+        int numPoints = args.length > argIdx ? Integer.parseInt(args[argIdx]) : 4000;
+        int pointsPerScan = args.length > argIdx + 1 ? Integer.parseInt(args[argIdx + 1]) : 400;
+
+        OutputStream out = new BufferedOutputStream(System.out);
+        PrintStream text = new PrintStream(out, false, "US-ASCII");
+        ByteBuffer frame = ByteBuffer.allocate(LidarFrameDecoder.kFrameSize).order(ByteOrder.LITTLE_ENDIAN);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < numPoints; i++) {
+            boolean newScan = i % pointsPerScan == 0;
+            double angle = 360.0 * (i % pointsPerScan) / pointsPerScan;
+            double distance = distanceAt(angle);
+            long ts = start + i / 4; // 4000 points/s
+            if (binary) {
+                frame.clear();
+                LidarFrameDecoder.encode(frame, ts, angle, distance, newScan);
+                out.write(frame.array(), 0, frame.position());
+            } else {
+                text.print(ts + "," + angle + "," + distance + (newScan ? "s" : "") + "\n");
+            }
+        }
+        text.flush();
+        out.flush();
+    }
+}
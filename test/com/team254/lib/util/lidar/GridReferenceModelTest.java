@@ -0,0 +1,74 @@
+package com.team254.lib.util.lidar;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.lidar.icp.GridReferenceModel;
+import com.spartronics4915.frc2019.lidar.icp.Point;
+import com.spartronics4915.frc2019.lidar.icp.ReferenceModel;
+import com.spartronics4915.frc2019.lidar.icp.Segment;
+
+public class GridReferenceModelTest {
+
+    private static Segment[] makeWalls(int n, long seed) {
+        Random rand = new Random(seed);
+        Segment[] walls = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            double x = rand.nextDouble() * 324, y = rand.nextDouble() * 648;
+            double angle = rand.nextDouble() * 2 * Math.PI, length = 6 + rand.nextDouble() * 60;
+            walls[i] = new Segment(new Point(x, y), new Point(x + length * Math.cos(angle), y + length * Math.sin(angle)));
+        }
+        return walls;
+    }
+
+    private static void assertSameClosestPoints(ReferenceModel expected, ReferenceModel actual, long seed) {
+        Random rand = new Random(seed);
+        double[] out = new double[2];
+        for (int i = 0; i < 5000; i++) {
+            // include queries well outside the model's bounds
+            Point p = new Point(rand.nextDouble() * 600 - 150, rand.nextDouble() * 1000 - 200);
+            Point e = expected.getClosestPoint(p);
+            actual.getClosestPoint(p.x, p.y, out);
+            assertEquals(e.x, out[0], 0);
+            assertEquals(e.y, out[1], 0);
+            Point a = actual.getClosestPoint(p);
+            assertEquals(e.x, a.x, 0);
+            assertEquals(e.y, a.y, 0);
+        }
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        for (int n : new int[]{1, 10, 100, 1000}) {
+            Segment[] walls = makeWalls(n, n);
+            assertSameClosestPoints(new ReferenceModel(walls), new GridReferenceModel(24, walls), n);
+        }
+    }
+
+    @Test
+    public void testCellSizes() {
+        Segment[] walls = makeWalls(50, 254);
+        ReferenceModel linear = new ReferenceModel(walls);
+        for (double cellSize : new double[]{1, 12, 100, 10000}) {
+            assertSameClosestPoints(linear, new GridReferenceModel(cellSize, walls), 4915);
+        }
+    }
+
+    @Test
+    public void testTower() {
+        assertSameClosestPoints(ReferenceModel.TOWER, new GridReferenceModel(12, ReferenceModel.TOWER.segments), 0);
+    }
+
+    @Test
+    public void testTiesPreferFirstSegment() {
+        // Two coincident walls; both models should report the first one's endpoint
+        Segment a = new Segment(new Point(0, 0), new Point(10, 0));
+        Segment b = new Segment(new Point(10, 0), new Point(0, 0));
+        ReferenceModel linear = new ReferenceModel(a, b);
+        ReferenceModel grid = new GridReferenceModel(3, a, b);
+        assertSameClosestPoints(linear, grid, 1);
+    }
+}
@@ -0,0 +1,177 @@
+package com.team254.lib.util.lidar;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.lidar.icp.ICP;
+import com.spartronics4915.frc2019.lidar.icp.NoMatchingPointsException;
+import com.spartronics4915.frc2019.lidar.icp.Point;
+import com.spartronics4915.frc2019.lidar.icp.ReferenceModel;
+import com.spartronics4915.frc2019.lidar.icp.Segment;
+import com.spartronics4915.frc2019.lidar.icp.Transform;
+
+public class ICPTest {
+    public static final double kTestEpsilon = 1E-9;
+
+    // Three faces of the tower, so the solve has to deal with segment endpoints
+    private static final ReferenceModel kModel = new ReferenceModel(
+            new Segment(new Point(0, -8.5), new Point(21.5, -8.5)),
+            new Segment(new Point(0, -8.5), new Point(0, 8.5)),
+            new Segment(new Point(0, 8.5), new Point(21.5, 8.5)));
+
+    /**
+     * Samples the front and side faces of the model as seen through
+     * <code>sensor</code>, with a little range noise.
+     */
+    private static ArrayList<Point> makeScan(Transform sensor, int n, long seed) {
+        Random rand = new Random(seed);
+        ArrayList<Point> scan = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Segment s = kModel.segments[i % kModel.segments.length];
+            double t = s.tMin + rand.nextDouble() * (s.tMax - s.tMin);
+            Point onModel = s.line.getPoint(t);
+            Point noisy = new Point(onModel.x + rand.nextGaussian() * 0.1, onModel.y + rand.nextGaussian() * 0.1);
+            scan.add(sensor.apply(noisy));
+        }
+        return scan;
+    }
+
+    @Test
+    public void testClosestPointMatchesSegments() {
+        Random rand = new Random(254);
+        double[] out = new double[2];
+        for (int i = 0; i < 1000; i++) {
+            Point p = new Point(rand.nextDouble() * 60 - 20, rand.nextDouble() * 60 - 30);
+            Point expected = kModel.getClosestPoint(p);
+            kModel.getClosestPoint(p.x, p.y, out);
+            assertEquals(expected.x, out[0], kTestEpsilon);
+            assertEquals(expected.y, out[1], kTestEpsilon);
+        }
+    }
+
+    @Test
+    public void testArrayOverloadMatchesPointOverload() throws NoMatchingPointsException {
+        ICP icp = new ICP(kModel, 1000);
+        Transform sensor = new Transform(Math.toRadians(10), 40, -12);
+        Transform guess = new Transform(Math.toRadians(5), 37, -10);
+        for (long seed = 0; seed < 10; seed++) {
+            ArrayList<Point> scan = makeScan(sensor, 300, seed);
+            double[] xs = new double[scan.size()], ys = new double[scan.size()];
+            for (int i = 0; i < scan.size(); i++) {
+                xs[i] = scan.get(i).x;
+                ys[i] = scan.get(i).y;
+            }
+
+            Transform expected = icp.doICP(scan, guess);
+            Transform actual = icp.doICP(xs, ys, xs.length, guess);
+            assertEquals(expected.theta, actual.theta, kTestEpsilon);
+            assertEquals(expected.tx, actual.tx, kTestEpsilon);
+            assertEquals(expected.ty, actual.ty, kTestEpsilon);
+
+            // and the solve should actually have moved toward the truth
+            assertTrue(Math.hypot(actual.tx - sensor.tx, actual.ty - sensor.ty) <
+                    Math.hypot(guess.tx - sensor.tx, guess.ty - sensor.ty));
+        }
+    }
+
+    private static double[][] toArrays(ArrayList<Point> scan) {
+        double[][] xy = new double[2][scan.size()];
+        for (int i = 0; i < scan.size(); i++) {
+            xy[0][i] = scan.get(i).x;
+            xy[1][i] = scan.get(i).y;
+        }
+        return xy;
+    }
+
+    @Test
+    public void testPointToLineConverges() throws NoMatchingPointsException {
+        ICP icp = new ICP(kModel, 1000);
+        Transform sensor = new Transform(Math.toRadians(10), 40, -12);
+        Transform guess = new Transform(Math.toRadians(5), 37, -10);
+        for (long seed = 0; seed < 10; seed++) {
+            double[][] xy = toArrays(makeScan(sensor, 600, seed));
+            Transform actual = icp.doPointToLineICP(xy[0], xy[1], xy[0].length, guess);
+            assertEquals(sensor.theta, actual.theta, Math.toRadians(0.5));
+            assertEquals(sensor.tx, actual.tx, 0.1);
+            assertEquals(sensor.ty, actual.ty, 0.1);
+        }
+    }
+
+    @Test
+    public void testPointToLineIgnoresClutter() throws NoMatchingPointsException {
+        ICP icp = new ICP(kModel, 1000);
+        Transform sensor = new Transform(Math.toRadians(-20), 15, 30);
+        Transform guess = new Transform(Math.toRadians(-16), 18, 27);
+        ArrayList<Point> scan = makeScan(sensor, 500, 4915);
+        Random rand = new Random(4915);
+        for (int i = 0; i < 100; i++) {
+            scan.add(sensor.apply(new Point(rand.nextDouble() * 100 - 20, rand.nextDouble() * 100 - 50)));
+        }
+        double[][] xy = toArrays(scan);
+        Transform actual = icp.doPointToLineICP(xy[0], xy[1], xy[0].length, guess);
+        assertEquals(sensor.theta, actual.theta, Math.toRadians(0.5));
+        assertEquals(sensor.tx, actual.tx, 0.1);
+        assertEquals(sensor.ty, actual.ty, 0.1);
+    }
+
+    @Test
+    public void testPointToLineTakesFewerIterations() throws NoMatchingPointsException {
+        ICP icp = new ICP(kModel, 1000);
+        Transform sensor = new Transform(Math.toRadians(10), 40, -12);
+        Transform guess = new Transform(Math.toRadians(5), 37, -10);
+        double[][] xy = toArrays(makeScan(sensor, 600, 1));
+        icp.doICP(xy[0], xy[1], xy[0].length, guess);
+        int pointToPoint = icp.getLastIterations();
+        icp.doPointToLineICP(xy[0], xy[1], xy[0].length, guess);
+        int pointToLine = icp.getLastIterations();
+        assertTrue(pointToLine + " vs. " + pointToPoint, pointToLine < pointToPoint);
+    }
+
+    @Test
+    public void testPointToLineOnOneFace() throws NoMatchingPointsException {
+        // A lone face only pins down the distance to it and the angle; the
+        // solve shouldn't wander along it
+        ReferenceModel face = new ReferenceModel(new Segment(new Point(0, -8.5), new Point(0, 8.5)));
+        ICP icp = new ICP(face, 1000);
+        Transform sensor = new Transform(Math.toRadians(6), 30, 2);
+        Random rand = new Random(1);
+        double[] xs = new double[200], ys = new double[200];
+        for (int i = 0; i < xs.length; i++) {
+            Point p = sensor.apply(new Point(rand.nextGaussian() * 0.1, -8 + 16.0 * i / xs.length));
+            xs[i] = p.x;
+            ys[i] = p.y;
+        }
+        Transform guess = new Transform(Math.toRadians(2), 27, 2);
+        Transform actual = icp.doPointToLineICP(xs, ys, xs.length, guess);
+        assertEquals(sensor.theta, actual.theta, Math.toRadians(0.5));
+        // The face's normal is along x in the model, which the sensor turns by theta
+        double across = Math.cos(sensor.theta) * (actual.tx - sensor.tx)
+                + Math.sin(sensor.theta) * (actual.ty - sensor.ty);
+        assertEquals(0, across, 0.1);
+    }
+
+    @Test
+    public void testEmptyCloudThrows() {
+        ICP icp = new ICP(kModel, 1000);
+        double[] none = new double[0];
+        try {
+            icp.doICP(none, none, 0, null);
+            fail("point-to-point solved an empty cloud");
+        } catch (NoMatchingPointsException e) {
+        }
+        try {
+            icp.doPointToLineICP(none, none, 0, null);
+            fail("point-to-line solved an empty cloud");
+        } catch (NoMatchingPointsException e) {
+        }
+        try {
+            icp.doICP(new ArrayList<Point>(), null);
+            fail("point-to-point solved an empty cloud");
+        } catch (NoMatchingPointsException e) {
+        }
+    }
+}
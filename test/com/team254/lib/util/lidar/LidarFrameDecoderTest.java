@@ -0,0 +1,115 @@
+package com.team254.lib.util.lidar;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.lidar.LidarFrameDecoder;
+
+public class LidarFrameDecoderTest {
+    public static final double kTestEpsilon = 1E-9;
+
+    private static class CountingListener implements LidarFrameDecoder.Listener {
+        int points = 0;
+        int scans = 0;
+        long lastTimestamp = -1;
+        double lastAngle = -1;
+        double lastDistance = -1;
+
+        @Override
+        public void onPoint(long timestampMs, double angle, double distance, boolean newScan) {
+            points++;
+            if (newScan)
+                scans++;
+            lastTimestamp = timestampMs;
+            lastAngle = angle;
+            lastDistance = distance;
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(3 * LidarFrameDecoder.kFrameSize).order(ByteOrder.LITTLE_ENDIAN);
+        LidarFrameDecoder.encode(buf, 100, 0.0, 1000.0, true);
+        LidarFrameDecoder.encode(buf, 101, 90.0, 2000.0, false);
+        LidarFrameDecoder.encode(buf, 102, 180.5, 3000.25, false);
+
+        CountingListener listener = new CountingListener();
+        LidarFrameDecoder decoder = new LidarFrameDecoder(
+                Channels.newChannel(new ByteArrayInputStream(buf.array())), 8, listener);
+        while (decoder.readFrames() >= 0) {
+        }
+        assertEquals(3, listener.points);
+        assertEquals(1, listener.scans);
+        assertEquals(102, listener.lastTimestamp);
+        assertEquals(180.5, listener.lastAngle, kTestEpsilon);
+        assertEquals(3000.25, listener.lastDistance, kTestEpsilon);
+    }
+
+    @Test
+    public void testPartialReads() throws IOException {
+        final int n = 50;
+        ByteBuffer buf = ByteBuffer.allocate(n * LidarFrameDecoder.kFrameSize).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < n; i++) {
+            LidarFrameDecoder.encode(buf, i, i, 10 * i, i % 10 == 0);
+        }
+        final ByteBuffer src = ByteBuffer.wrap(buf.array());
+
+        // Hands out 7 bytes at a time, so frames straddle reads
+        ReadableByteChannel trickle = new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) {
+                if (!src.hasRemaining())
+                    return -1;
+                int count = Math.min(7, Math.min(dst.remaining(), src.remaining()));
+                for (int i = 0; i < count; i++)
+                    dst.put(src.get());
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        CountingListener listener = new CountingListener();
+        LidarFrameDecoder decoder = new LidarFrameDecoder(trickle, 2, listener);
+        while (decoder.readFrames() >= 0) {
+        }
+        assertEquals(n, listener.points);
+        assertEquals(5, listener.scans);
+        assertEquals(n - 1, listener.lastTimestamp);
+        assertEquals(10 * (n - 1), listener.lastDistance, kTestEpsilon);
+    }
+
+    @Test
+    public void testProducerProcess() throws IOException, InterruptedException {
+        final int n = 4000;
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process producer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                FakeLidarProducer.class.getName(), "--binary", Integer.toString(n), "400").start();
+
+        CountingListener listener = new CountingListener();
+        LidarFrameDecoder decoder = new LidarFrameDecoder(Channels.newChannel(producer.getInputStream()), 64,
+                listener);
+        while (decoder.readFrames() >= 0) {
+        }
+        assertEquals(0, producer.waitFor());
+        assertEquals(n, listener.points);
+        assertEquals(n / 400, listener.scans);
+        assertEquals(FakeLidarProducer.distanceAt(listener.lastAngle), listener.lastDistance, kTestEpsilon);
+    }
+}
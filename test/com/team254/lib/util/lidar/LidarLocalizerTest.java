@@ -0,0 +1,102 @@
+package com.team254.lib.util.lidar;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.lidar.LidarLocalizer;
+import com.spartronics4915.frc2019.lidar.ScanDeskewer;
+import com.spartronics4915.frc2019.lidar.icp.ICP;
+import com.spartronics4915.frc2019.lidar.icp.NoMatchingPointsException;
+import com.spartronics4915.frc2019.lidar.icp.Point;
+import com.spartronics4915.frc2019.lidar.icp.ReferenceModel;
+import com.spartronics4915.frc2019.lidar.icp.Segment;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+import com.spartronics4915.lib.math.Translation2d;
+import com.spartronics4915.lib.math.Twist2d;
+
+public class LidarLocalizerTest {
+    private static final int kPoints = 400;
+    private static final double kScanPeriod = 0.1;
+
+    // Three faces of the tower
+    private static final ReferenceModel kModel = new ReferenceModel(
+            new Segment(new Point(0, -8.5), new Point(21.5, -8.5)),
+            new Segment(new Point(0, -8.5), new Point(0, 8.5)),
+            new Segment(new Point(0, 8.5), new Point(21.5, 8.5)));
+
+    // The lidar drives past the tower, well away from the origin, while it
+    // turns
+    private static final Pose2d kStart = new Pose2d(-40, -12, Rotation2d.fromDegrees(10));
+    private static final Twist2d kVelocity = new Twist2d(30, 0, Math.toRadians(45));
+
+    private static Pose2d getTrueFieldToLidar(double t) {
+        return kStart.transformBy(Pose2d.exp(kVelocity.scaled(t)));
+    }
+
+    private final double[] mXs = new double[kPoints];
+    private final double[] mYs = new double[kPoints];
+    private final double[] mTimestamps = new double[kPoints];
+
+    /**
+     * Fills the scan with points on the model, each as the moving lidar saw
+     * it when it was measured, in the lidar's frame.
+     */
+    private void makeScan() {
+        Random rand = new Random(4915);
+        for (int i = 0; i < kPoints; i++) {
+            double t = i * kScanPeriod / kPoints;
+            Segment s = kModel.segments[i % kModel.segments.length];
+            Point onModel = s.line.getPoint(s.tMin + rand.nextDouble() * (s.tMax - s.tMin));
+            Translation2d seen = getTrueFieldToLidar(t).inverse()
+                    .transformBy(Pose2d.fromTranslation(onModel.toTranslation2d())).getTranslation();
+            mXs[i] = seen.x();
+            mYs[i] = seen.y();
+            mTimestamps[i] = t;
+        }
+    }
+
+    /**
+     * Places the scan on the field with odometry that's off by
+     * <code>error</code>, the way LidarProcessor does when a scan completes,
+     * then solves for the fix.
+     */
+    private Pose2d solve(Pose2d error) throws NoMatchingPointsException {
+        makeScan();
+        Pose2d start = error.transformBy(getTrueFieldToLidar(0));
+        Pose2d end = error.transformBy(getTrueFieldToLidar(mTimestamps[kPoints - 1]));
+        new ScanDeskewer().deskew(mXs, mYs, mTimestamps, kPoints, start, end);
+        return LidarLocalizer.solveFieldToLidar(new ICP(kModel, 1000), mXs, mYs, kPoints, end);
+    }
+
+    private static void assertPoseEquals(Pose2d expected, Pose2d actual, double inches, double degrees) {
+        assertEquals(expected.getTranslation().x(), actual.getTranslation().x(), inches);
+        assertEquals(expected.getTranslation().y(), actual.getTranslation().y(), inches);
+        assertEquals(expected.getRotation().getDegrees(), actual.getRotation().getDegrees(), degrees);
+    }
+
+    @Test
+    public void testExactOdometry() throws NoMatchingPointsException {
+        Pose2d fix = solve(Pose2d.identity());
+        assertPoseEquals(getTrueFieldToLidar(mTimestamps[kPoints - 1]), fix, 0.1, 0.1);
+    }
+
+    @Test
+    public void testCorrectsOdometryError() throws NoMatchingPointsException {
+        Pose2d error = new Pose2d(2, -1.5, Rotation2d.fromDegrees(2));
+        Pose2d fix = solve(error);
+        Pose2d truth = getTrueFieldToLidar(mTimestamps[kPoints - 1]);
+        Pose2d odometry = error.transformBy(truth);
+        // Point-to-point stops short sliding along the faces, but it has to
+        // get closer than odometry was
+        assertPoseEquals(truth, fix, 1.5, 1);
+        assertTrue(distance(truth, fix) < distance(truth, odometry));
+    }
+
+    private static double distance(Pose2d a, Pose2d b) {
+        return a.getTranslation().inverse().translateBy(b.getTranslation()).norm();
+    }
+}
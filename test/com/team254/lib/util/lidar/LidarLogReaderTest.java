@@ -0,0 +1,124 @@
+package com.team254.lib.util.lidar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.lidar.LidarLogReader;
+import com.spartronics4915.frc2019.lidar.LidarLogWriter;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+
+public class LidarLogReaderTest {
+    public static final double kTestEpsilon = 1E-9;
+
+    private static final int kScans = 50;
+    private static final int kPointsPerScan = 360;
+    private static final double kScanPeriod = 0.1;
+
+    private static double getTimestamp(int scan, int point) {
+        return 10 + scan * kScanPeriod + point * kScanPeriod / kPointsPerScan;
+    }
+
+    /**
+     * Logs <code>kScans</code> scans of a robot driving along x at 1 in/s.
+     */
+    private static File writeLog(boolean close) throws Exception {
+        File file = File.createTempFile("lidar", ".lidr");
+        file.deleteOnExit();
+        LidarLogWriter writer = new LidarLogWriter(file,
+                (timestamp) -> new Pose2d(timestamp, 0, Rotation2d.fromDegrees(90)), 32768, 1024);
+        for (int s = 0; s < kScans; s++) {
+            for (int p = 0; p < kPointsPerScan; p++) {
+                writer.log(getTimestamp(s, p), p, 1000 + s, p == 0);
+            }
+        }
+        if (close) {
+            writer.close();
+        } else {
+            // Wait for the writer, then leave it be like a robot that lost power
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!hasAllBlocks(file)) {
+                assertTrue("writer timed out", System.currentTimeMillis() < deadline);
+                Thread.sleep(50);
+            }
+        }
+        return file;
+    }
+
+    private static boolean hasAllBlocks(File file) throws IOException {
+        try (LidarLogReader reader = new LidarLogReader(file)) {
+            return reader.getBlockCount() == kScans;
+        }
+    }
+
+    private static void checkLog(LidarLogReader reader) throws IOException {
+        assertEquals(kScans, reader.getBlockCount());
+        assertEquals(kScans * kPointsPerScan, reader.getPointCount());
+
+        // Seek straight to a scan in the middle
+        int block = reader.findBlock(getTimestamp(37, 100));
+        assertEquals(37, block);
+        assertEquals(getTimestamp(37, 0), reader.getFirstTimestamp(block), 1e-6);
+        assertEquals(getTimestamp(37, kPointsPerScan - 1), reader.getLastTimestamp(block), 1e-6);
+        assertTrue(reader.startsScan(block));
+
+        Pose2d first = reader.getFirstPose(block);
+        assertEquals(reader.getFirstTimestamp(block), first.getTranslation().x(), kTestEpsilon);
+        assertEquals(90, first.getRotation().getDegrees(), kTestEpsilon);
+        Pose2d last = reader.getLastPose(block);
+        assertEquals(reader.getLastTimestamp(block), last.getTranslation().x(), kTestEpsilon);
+
+        List<double[]> points = new ArrayList<>();
+        assertEquals(kPointsPerScan, reader.readBlock(block, (timestamp, angle, distance, newScan) -> points
+                .add(new double[] { timestamp, angle, distance, newScan ? 1 : 0 })));
+        for (int p = 0; p < kPointsPerScan; p++) {
+            double[] point = points.get(p);
+            assertEquals(getTimestamp(37, p), point[0], 1e-6);
+            assertEquals(p, point[1], kTestEpsilon);
+            assertEquals(1037, point[2], kTestEpsilon);
+            assertEquals(p == 0 ? 1 : 0, point[3], 0);
+        }
+
+        assertEquals(0, reader.findBlock(0));
+        assertEquals(kScans - 1, reader.findBlock(1000));
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        try (LidarLogReader reader = new LidarLogReader(writeLog(true))) {
+            assertTrue(reader.isIndexed());
+            checkLog(reader);
+        }
+    }
+
+    @Test
+    public void testRebuildsIndex() throws Exception {
+        try (LidarLogReader reader = new LidarLogReader(writeLog(false))) {
+            assertFalse(reader.isIndexed());
+            checkLog(reader);
+        }
+    }
+
+    @Test
+    public void testTornBlock() throws Exception {
+        File file = writeLog(true);
+        // Cut the log off partway through its last block
+        try (LidarLogReader reader = new LidarLogReader(file);
+                RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long lastBlockEnd = raf.length();
+            raf.setLength(lastBlockEnd - 4 - reader.getBlockCount() * LidarLogWriter.kIndexEntryBytes
+                    - LidarLogWriter.kTrailerBytes - 10);
+        }
+        try (LidarLogReader reader = new LidarLogReader(file)) {
+            assertFalse(reader.isIndexed());
+            assertEquals(kScans - 1, reader.getBlockCount());
+        }
+    }
+}
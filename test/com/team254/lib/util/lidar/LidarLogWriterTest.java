@@ -0,0 +1,117 @@
+package com.team254.lib.util.lidar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.lidar.LidarLogReader;
+import com.spartronics4915.frc2019.lidar.LidarLogWriter;
+
+public class LidarLogWriterTest {
+
+    private static List<double[]> readAll(File file) throws IOException {
+        List<double[]> points = new ArrayList<>();
+        LidarLogReader.read(file, (timestamp, angle, distance, newScan) -> points
+                .add(new double[] { timestamp, angle, distance, newScan ? 1 : 0 }));
+        return points;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = File.createTempFile("lidar", ".lidr");
+        file.deleteOnExit();
+        LidarLogWriter writer = new LidarLogWriter(file, null, 16384, 1024);
+        int logged = 0;
+        for (int i = 0; i < 10000; i++) {
+            // 400 points a scan, 4000 points/s
+            if (writer.log(100 + i * 0.00025, (i * 0.9) % 360, 1000 + i % 37 + 0.25, i % 400 == 0))
+                logged++;
+            if (i % 1000 == 0)
+                Thread.yield();
+        }
+        writer.close();
+        assertEquals(logged, writer.getWrittenPoints());
+        assertEquals(file.length(), writer.getBytesWritten());
+        assertTrue("compressed", file.length() < logged * 4);
+
+        List<double[]> points = readAll(file);
+        assertEquals(logged, points.size());
+        if (writer.getDroppedPoints() == 0) {
+            for (int i = 0; i < points.size(); i++) {
+                double[] p = points.get(i);
+                assertEquals(100 + i * 0.00025, p[0], 1e-6);
+                assertEquals((i * 0.9) % 360, p[1], 0.005);
+                assertEquals(1000 + i % 37 + 0.25, p[2], 0.125);
+                assertEquals(i % 400 == 0 ? 1 : 0, p[3], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testBlockPerScan() throws IOException {
+        File file = File.createTempFile("lidar", ".lidr");
+        file.deleteOnExit();
+        LidarLogWriter writer = new LidarLogWriter(file, null, 16384, 256);
+        for (int i = 0; i < 2000; i++) {
+            writer.log(i * 0.001, i % 400, 500, i % 400 == 0);
+        }
+        writer.close();
+        try (LidarLogReader reader = new LidarLogReader(file)) {
+            assertTrue(reader.isIndexed());
+            // Five scans, each too long for one block
+            assertEquals(10, reader.getBlockCount());
+            for (int b = 0; b < reader.getBlockCount(); b++) {
+                assertEquals(b % 2 == 0, reader.startsScan(b));
+                assertEquals(b % 2 == 0 ? 256 : 144, reader.getPointCount(b));
+            }
+        }
+    }
+
+    @Test
+    public void testDropsRatherThanBlocks() throws IOException {
+        File file = File.createTempFile("lidar", ".lidr");
+        file.deleteOnExit();
+        // A queue far too small to keep up with a producer that never pauses
+        LidarLogWriter writer = new LidarLogWriter(file, null, 16, 8);
+        int logged = 0, total = 200000;
+        for (int i = 0; i < total; i++) {
+            if (writer.log(i, i % 360, i, i % 400 == 0))
+                logged++;
+        }
+        assertEquals(total - logged, writer.getDroppedPoints());
+        writer.close();
+        assertEquals(logged, readAll(file).size());
+    }
+
+    @Test
+    public void testReadableBeforeClose() throws Exception {
+        File file = File.createTempFile("lidar", ".lidr");
+        file.deleteOnExit();
+        LidarLogWriter writer = new LidarLogWriter(file, null, 16384, 1024);
+        for (int i = 0; i < 1500; i++) {
+            writer.log(i * 0.001, i % 360, 500, i % 360 == 0);
+        }
+        // The finished scans go straight away, the last one once it's been waiting long enough
+        long deadline = System.currentTimeMillis() + 5000;
+        while (readAll(file).size() < 1500 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        // What the robot leaves behind if it loses power: no index, and the rest of the mapped window is zeros
+        try (LidarLogReader reader = new LidarLogReader(file)) {
+            assertFalse(reader.isIndexed());
+            assertEquals(5, reader.getBlockCount());
+            assertEquals(1500, reader.getPointCount());
+        }
+        writer.close();
+        try (LidarLogReader reader = new LidarLogReader(file)) {
+            assertTrue(reader.isIndexed());
+            assertEquals(5, reader.getBlockCount());
+        }
+        assertEquals(1500, readAll(file).size());
+    }
+}
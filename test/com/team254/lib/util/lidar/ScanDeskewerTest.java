@@ -0,0 +1,95 @@
+package com.team254.lib.util.lidar;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.lidar.ScanDeskewer;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+import com.spartronics4915.lib.math.Translation2d;
+import com.spartronics4915.lib.math.Twist2d;
+
+public class ScanDeskewerTest {
+    public static final double kTestEpsilon = 1E-9;
+
+    private static final int kPoints = 360;
+    private static final double kScanPeriod = 0.1;
+    private static final double kWallX = 120;
+
+    // The lidar drives at 60 in/s while turning at 90 deg/s during the scan
+    private static final Pose2d kStart = new Pose2d(10, -20, Rotation2d.fromDegrees(15));
+    private static final Twist2d kVelocity = new Twist2d(60, 0, Math.toRadians(90));
+
+    private static Pose2d getPose(double t) {
+        return kStart.transformBy(Pose2d.exp(kVelocity.scaled(t)));
+    }
+
+    private static double getWallY(int i) {
+        return -60 + i * 0.5;
+    }
+
+    private final double[] mXs = new double[kPoints];
+    private final double[] mYs = new double[kPoints];
+    private final double[] mTimestamps = new double[kPoints];
+
+    /**
+     * Fills the scan with points on the wall x = kWallX, each as the moving
+     * lidar saw it when it was measured.
+     */
+    private void makeScan(double startTime) {
+        for (int i = 0; i < kPoints; i++) {
+            double t = i * kScanPeriod / kPoints;
+            Pose2d wallPoint = Pose2d.fromTranslation(new Translation2d(kWallX, getWallY(i)));
+            Translation2d seen = getPose(t).inverse().transformBy(wallPoint).getTranslation();
+            mXs[i] = seen.x();
+            mYs[i] = seen.y();
+            mTimestamps[i] = startTime + t;
+        }
+    }
+
+    @Test
+    public void testMovingRobotSeesStaticWall() {
+        makeScan(12.5);
+        Pose2d end = getPose(mTimestamps[kPoints - 1] - mTimestamps[0]);
+        new ScanDeskewer().deskew(mXs, mYs, mTimestamps, kPoints, kStart, end);
+        for (int i = 0; i < kPoints; i++) {
+            assertEquals(kWallX, mXs[i], 1E-6);
+            assertEquals(getWallY(i), mYs[i], 1E-6);
+        }
+    }
+
+    @Test
+    public void testOnePoseSmearsTheWall() {
+        // What every point being placed with the same pose looks like
+        makeScan(0);
+        new ScanDeskewer().deskew(mXs, mYs, mTimestamps, kPoints, kStart, kStart);
+        double worst = 0;
+        for (int i = 0; i < kPoints; i++) {
+            worst = Math.max(worst, Math.abs(mXs[i] - kWallX));
+        }
+        assertTrue("smear " + worst, worst > 5);
+    }
+
+    @Test
+    public void testStationary() {
+        makeScan(3);
+        double[] xs = mXs.clone(), ys = mYs.clone();
+        Pose2d pose = new Pose2d(-4, 7, Rotation2d.fromDegrees(-120));
+        new ScanDeskewer().deskew(mXs, mYs, mTimestamps, kPoints, pose, pose);
+        for (int i = 0; i < kPoints; i++) {
+            Translation2d expected = pose.transformBy(Pose2d.fromTranslation(new Translation2d(xs[i], ys[i])))
+                    .getTranslation();
+            assertEquals(expected.x(), mXs[i], kTestEpsilon);
+            assertEquals(expected.y(), mYs[i], kTestEpsilon);
+        }
+    }
+
+    @Test
+    public void testSinglePoint() {
+        makeScan(0);
+        new ScanDeskewer().deskew(mXs, mYs, mTimestamps, 1, kStart, kStart);
+        assertEquals(kWallX, mXs[0], 1E-6);
+        assertEquals(getWallY(0), mYs[0], 1E-6);
+    }
+}
@@ -0,0 +1,139 @@
+package com.team254.lib.util.loops;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.loops.LoopScheduler;
+
+public class LoopSchedulerTest {
+
+    /**
+     * Records, for each task, the order in which it started and finished
+     * during the current tick.
+     */
+    private static class Recorder {
+        final AtomicInteger clock = new AtomicInteger();
+        final List<int[]> spans = new ArrayList<>(); // {start, end} per task
+
+        Runnable task(final int sleepMs) {
+            final int[] span = new int[2];
+            spans.add(span);
+            return () -> {
+                span[0] = clock.incrementAndGet();
+                if (sleepMs > 0) {
+                    try {
+                        Thread.sleep(sleepMs);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                span[1] = clock.incrementAndGet();
+            };
+        }
+
+        void assertBefore(int first, int second) {
+            assertTrue("task " + first + " didn't finish before " + second + " started",
+                    spans.get(first)[1] < spans.get(second)[0]);
+        }
+    }
+
+    /**
+     * Like the robot: sequential loops (0, 1), then parallel ones with a
+     * dependency chain (2 -> 4) and a free one (3), then a sequential one (5)
+     * that has to wait for all of them, then another parallel one (6).
+     */
+    private static int[] addTasks(LoopScheduler scheduler, Recorder recorder, int sleepMs) {
+        int a = scheduler.add(recorder.task(0), false);
+        int b = scheduler.add(recorder.task(0), false);
+        int c = scheduler.add(recorder.task(sleepMs), true);
+        int d = scheduler.add(recorder.task(sleepMs), true);
+        int e = scheduler.add(recorder.task(sleepMs), true, c);
+        int f = scheduler.add(recorder.task(0), false);
+        int g = scheduler.add(recorder.task(0), true);
+        return new int[] {a, b, c, d, e, f, g};
+    }
+
+    private static void checkOrdering(Recorder recorder) {
+        recorder.assertBefore(0, 1);
+        for (int parallel = 2; parallel <= 4; parallel++) {
+            recorder.assertBefore(1, parallel);
+            recorder.assertBefore(parallel, 5);
+        }
+        recorder.assertBefore(2, 4);
+        recorder.assertBefore(5, 6);
+    }
+
+    @Test
+    public void testOrderingHoldsForEveryPickOrder() {
+        // With no workers, the seed alone decides the order ready tasks run in, so each seed is a repeatable
+        // interleaving
+        for (long seed = 0; seed < 200; seed++) {
+            Recorder recorder = new Recorder();
+            LoopScheduler scheduler = new LoopScheduler(0, new Random(seed));
+            addTasks(scheduler, recorder, 0);
+            for (int tick = 0; tick < 3; tick++) {
+                scheduler.runTick();
+                checkOrdering(recorder);
+            }
+        }
+    }
+
+    @Test
+    public void testPickOrderIsRepeatable() {
+        List<Integer> first = null;
+        for (int run = 0; run < 2; run++) {
+            final List<Integer> order = new ArrayList<>();
+            LoopScheduler scheduler = new LoopScheduler(0, new Random(254));
+            for (int i = 0; i < 8; i++) {
+                final int id = i;
+                scheduler.add(() -> order.add(id), true);
+            }
+            scheduler.runTick();
+            if (first == null) {
+                first = order;
+            } else {
+                assertEquals(first, order);
+            }
+        }
+    }
+
+    @Test
+    public void testOrderingHoldsWithWorkers() {
+        Recorder recorder = new Recorder();
+        LoopScheduler scheduler = new LoopScheduler(2);
+        addTasks(scheduler, recorder, 2);
+        for (int tick = 0; tick < 20; tick++) {
+            scheduler.runTick();
+            checkOrdering(recorder);
+        }
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testFailureIsRethrownAfterTheTick() {
+        Recorder recorder = new Recorder();
+        LoopScheduler scheduler = new LoopScheduler(0);
+        final AtomicInteger runs = new AtomicInteger();
+        scheduler.add(() -> {
+            if (runs.incrementAndGet() == 1) {
+                throw new IllegalStateException("boom");
+            }
+        }, true);
+        scheduler.add(recorder.task(0), false);
+        try {
+            scheduler.runTick();
+            fail("expected the task's exception");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+        assertTrue("the tick should have carried on", recorder.spans.get(0)[1] > 0);
+        scheduler.runTick(); // and the scheduler should still work
+        assertEquals(2, runs.get());
+    }
+}
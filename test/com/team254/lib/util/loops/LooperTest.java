@@ -0,0 +1,109 @@
+package com.team254.lib.util.loops;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.Constants;
+import com.spartronics4915.frc2019.loops.Loop;
+import com.spartronics4915.frc2019.loops.Looper;
+import com.spartronics4915.frc2019.loops.SimulatedClock;
+import com.spartronics4915.lib.util.Clock;
+
+public class LooperTest {
+
+    private static class RecordingLoop implements Loop {
+        double startTime = Double.NaN;
+        double stopTime = Double.NaN;
+        final List<Double> loopTimes = new ArrayList<>();
+
+        @Override
+        public void onStart(double timestamp) {
+            startTime = timestamp;
+        }
+
+        @Override
+        public void onLoop(double timestamp) {
+            loopTimes.add(timestamp);
+        }
+
+        @Override
+        public void onStop(double timestamp) {
+            stopTime = timestamp;
+        }
+    }
+
+    @After
+    public void restoreClock() {
+        Clock.useFPGA();
+    }
+
+    @Test
+    public void testRunsHeadlessOnSimulatedTime() {
+        SimulatedClock clock = new SimulatedClock(10);
+        Clock.setSource(clock);
+        Looper looper = new Looper(clock);
+        RecordingLoop fast = new RecordingLoop();
+        RecordingLoop slow = new RecordingLoop();
+        looper.register(fast);
+        looper.register(slow, 0.1);
+
+        looper.start();
+        assertEquals(10, fast.startTime, 0);
+        long start = System.nanoTime();
+        clock.runFor(60); // a minute of robot time
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        looper.stop();
+
+        int ticks = (int) Math.round(60 / Constants.kLooperDt);
+        assertEquals(ticks, fast.loopTimes.size());
+        assertEquals(ticks / 20, slow.loopTimes.size());
+        for (int i = 0; i < ticks; i++) {
+            assertEquals(10 + (i + 1) * Constants.kLooperDt, fast.loopTimes.get(i), 1E-6);
+        }
+        assertEquals(70, fast.stopTime, 1E-6);
+        assertEquals(70, Clock.getTimestamp(), 1E-6);
+        assertTrue("took " + elapsed + "s", elapsed < 60);
+    }
+
+    @Test
+    public void testStoppedLooperDoesntTick() {
+        SimulatedClock clock = new SimulatedClock(0);
+        Clock.setSource(clock);
+        Looper looper = new Looper(clock);
+        RecordingLoop loop = new RecordingLoop();
+        looper.register(loop);
+        looper.start();
+        clock.runFor(1);
+        looper.stop();
+        clock.runFor(1);
+        assertEquals(Math.round(1 / Constants.kLooperDt), loop.loopTimes.size());
+        assertEquals(2, clock.getTimestamp(), 1E-6);
+    }
+
+    @Test
+    public void testAnonymousLoopsReportSeparately() {
+        Looper looper = new Looper(new SimulatedClock(0));
+        looper.register(new RecordingLoop() {
+        });
+        looper.register(new RecordingLoop() {
+        }, 0.1);
+        looper.register("named", new RecordingLoop());
+
+        String[] lines = looper.getTimingReport().split("\n");
+        assertEquals(4, lines.length);
+        Set<String> names = new HashSet<>();
+        for (String line : lines) {
+            String name = line.substring(0, line.indexOf(':'));
+            assertFalse(line, name.isEmpty());
+            assertTrue("duplicate " + name, names.add(name));
+        }
+        assertTrue(names.contains("named"));
+    }
+}
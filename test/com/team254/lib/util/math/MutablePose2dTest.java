@@ -0,0 +1,72 @@
+package com.team254.lib.util.math;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.spartronics4915.lib.math.MutablePose2d;
+import com.spartronics4915.lib.math.MutableTranslation2d;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.math.Rotation2d;
+import com.spartronics4915.lib.math.Translation2d;
+import com.spartronics4915.lib.math.Twist2d;
+
+public class MutablePose2dTest {
+
+    static Pose2d randomPose(Random random) {
+        return new Pose2d(random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100,
+                Rotation2d.fromRadians(random.nextDouble() * 2 * Math.PI - Math.PI));
+    }
+
+    static void assertSame(Pose2d expected, MutablePose2d actual) {
+        // The arithmetic is the same, so the results should be identical
+        assertEquals(expected.getTranslation().x(), actual.getTranslation().x(), 0.0);
+        assertEquals(expected.getTranslation().y(), actual.getTranslation().y(), 0.0);
+        assertEquals(expected.getRotation().cos(), actual.getRotation().cos(), 0.0);
+        assertEquals(expected.getRotation().sin(), actual.getRotation().sin(), 0.0);
+    }
+
+    @Test
+    public void testMatchesImmutable() {
+        Random random = new Random(254);
+        MutablePose2d a = new MutablePose2d();
+        MutablePose2d b = new MutablePose2d();
+        MutablePose2d out = new MutablePose2d();
+        for (int i = 0; i < 1000; i++) {
+            Pose2d pa = randomPose(random), pb = randomPose(random);
+            a.set(pa);
+            b.set(pb);
+
+            assertSame(pa.transformBy(pb), a.transformByInto(b, out));
+            assertSame(pa.inverse(), a.inverseInto(out));
+
+            Twist2d twist = new Twist2d(random.nextDouble() * 10, random.nextDouble() - 0.5,
+                    i % 10 == 0 ? 0.0 : random.nextDouble() - 0.5);
+            assertSame(Pose2d.exp(twist), out.setExp(twist));
+            assertSame(pa.transformBy(Pose2d.exp(twist)), out.set(a).transformByExp(twist.dx, twist.dy,
+                    twist.dtheta));
+
+            Translation2d point = new Translation2d(random.nextDouble() * 100, random.nextDouble() * 100);
+            MutableTranslation2d applied = a.applyInto(point.x(), point.y(), new MutableTranslation2d());
+            Translation2d expected = pa.transformBy(Pose2d.fromTranslation(point)).getTranslation();
+            assertEquals(expected.x(), applied.x(), 0.0);
+            assertEquals(expected.y(), applied.y(), 0.0);
+        }
+    }
+
+    @Test
+    public void testAliasing() {
+        Pose2d pa = new Pose2d(3, 4, Rotation2d.fromDegrees(30));
+        Pose2d pb = new Pose2d(-1, 2, Rotation2d.fromDegrees(-75));
+        MutablePose2d a = new MutablePose2d(pa);
+        MutablePose2d b = new MutablePose2d(pb);
+
+        assertSame(pa.transformBy(pb), a.transformByInto(b, b));
+        b.set(pb);
+        assertSame(pa.transformBy(pb), a.transformBy(b));
+        assertSame(pa.transformBy(pb).inverse(), a.invert());
+        assertSame(pb.transformBy(pb), b.transformBy(b));
+    }
+}
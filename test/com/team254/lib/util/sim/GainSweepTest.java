@@ -0,0 +1,48 @@
+package com.team254.lib.util.sim;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.Constants;
+import com.spartronics4915.frc2019.sim.DrivetrainModel;
+import com.spartronics4915.frc2019.sim.GainSweep;
+import com.spartronics4915.frc2019.sim.PathSimulation;
+import com.spartronics4915.lib.control.Lookahead;
+import com.spartronics4915.lib.control.PathFollower;
+
+public class GainSweepTest {
+
+    @Test
+    public void testRanking() {
+        PathFollower.Parameters current = PathSimulation.getDefaultFollowerParameters();
+        // No feedforward and no feedback: it never gets going
+        PathFollower.Parameters stalled = new PathFollower.Parameters(
+                new Lookahead(Constants.kMinLookAhead, Constants.kMaxLookAhead,
+                        Constants.kMinLookAheadSpeed, Constants.kMaxLookAheadSpeed),
+                0, 0, 0, 0, 0, 0,
+                Constants.kPathFollowingMaxVel, Constants.kPathFollowingMaxAccel,
+                Constants.kPathFollowingGoalPosTolerance,
+                Constants.kPathFollowingGoalVelTolerance,
+                Constants.kPathStopSteeringDistance);
+
+        GainSweep sweep = new GainSweep(Arrays.asList(PathSimulationTest.makePath()),
+                DrivetrainModel.getParameters());
+        GainSweep.Candidate baseline = new GainSweep.Candidate(current);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<GainSweep.Candidate> ranked = sweep.run(baseline, Arrays.asList(stalled, current), pool);
+        pool.shutdown();
+
+        assertEquals(3.0, baseline.score, 1E-9);
+        assertEquals(2, ranked.size());
+        assertSame(current, ranked.get(0).parameters);
+        assertEquals(1, ranked.get(0).paths_finished);
+        assertEquals(3.0, ranked.get(0).score, 1E-9); // runs are repeatable
+        assertSame(stalled, ranked.get(1).parameters);
+        assertEquals(0, ranked.get(1).paths_finished);
+    }
+}
@@ -0,0 +1,90 @@
+package com.team254.lib.util.sim;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.spartronics4915.frc2019.paths.PathBuilder.Waypoint;
+import com.spartronics4915.frc2019.paths.PathContainer;
+import com.spartronics4915.frc2019.sim.DrivetrainModel;
+import com.spartronics4915.frc2019.sim.PathSimulation;
+import com.spartronics4915.frc2019.sim.WaypointPath;
+import com.spartronics4915.lib.math.Pose2d;
+import com.spartronics4915.lib.sim.DifferentialDrivePlant;
+
+public class PathSimulationTest {
+
+    static PathContainer makePath() {
+        return new WaypointPath("RightAngle", Pose2d.identity(), false,
+                new Waypoint(0, 0, 0, 0),
+                new Waypoint(100, 0, 30, 80),
+                new Waypoint(100, 100, 0, 80));
+    }
+
+    static DifferentialDrivePlant.Parameters withTraction(double max_traction_accel) {
+        DifferentialDrivePlant.Parameters p = DrivetrainModel.getParameters();
+        return new DifferentialDrivePlant.Parameters(p.wheel_diameter, p.quad_codes_per_rev,
+                p.effective_track_width, p.kv, p.ka, p.ks, p.max_voltage, max_traction_accel,
+                p.encoder_latency, p.gyro_latency, p.gyro_drift, p.dt);
+    }
+
+    @Test
+    public void testFollowsPath() {
+        PathSimulation.Result result = PathSimulation.run(makePath(), PathSimulation.getDefaultFollowerParameters(),
+                DrivetrainModel.getParameters(), 15);
+        assertTrue(result.toString(), result.finished);
+        assertTrue(result.toString(), result.max_cross_track_error < 3.0);
+        assertTrue(result.toString(), result.odometry_error < 1.0);
+        assertEquals(100, result.final_pose.getTranslation().x(), 3.0);
+        assertEquals(100, result.final_pose.getTranslation().y(), 3.0);
+    }
+
+    @Test
+    public void testRepeatable() {
+        PathSimulation.Result a = PathSimulation.run(makePath(), PathSimulation.getDefaultFollowerParameters(),
+                DrivetrainModel.getParameters(), 15);
+        PathSimulation.Result b = PathSimulation.run(makePath(), PathSimulation.getDefaultFollowerParameters(),
+                DrivetrainModel.getParameters(), 15);
+        assertEquals(a.time, b.time, 0);
+        assertEquals(a.rms_cross_track_error, b.rms_cross_track_error, 0);
+    }
+
+    @Test
+    public void testPlantTracksWheels() {
+        DifferentialDrivePlant plant = new DifferentialDrivePlant(DrivetrainModel.getParameters());
+        plant.setVoltage(DifferentialDrivePlant.kLeft, 6);
+        plant.setVoltage(DifferentialDrivePlant.kRight, 6);
+        for (int i = 0; i < 5000; i++) {
+            plant.step();
+        }
+        // Settles at (V - ks) / kv, straight ahead, without slipping
+        DifferentialDrivePlant.Parameters p = plant.getParameters();
+        assertEquals((6 - p.ks) / p.kv, plant.getWheelVelocity(DifferentialDrivePlant.kLeft), 0.1);
+        assertEquals(0, plant.getSlip(DifferentialDrivePlant.kLeft), 1E-9);
+        assertEquals(0, plant.getPose().getTranslation().y(), 1E-6);
+        assertEquals(0, plant.getGyroDegrees(), 1E-6);
+        double encoder = plant.countsToInches(plant.getEncoderCounts(DifferentialDrivePlant.kLeft, 0));
+        assertEquals(plant.getPose().getTranslation().x(), encoder, 0.1);
+
+        // The encoders read late
+        long now = plant.getEncoderCounts(DifferentialDrivePlant.kLeft, 0);
+        long late = plant.getEncoderCounts(DifferentialDrivePlant.kLeft, p.encoder_latency);
+        assertTrue(late < now);
+        assertEquals(plant.getWheelVelocity(DifferentialDrivePlant.kLeft),
+                plant.countsToInches(plant.getEncoderVelocity(DifferentialDrivePlant.kLeft, 0, 0.1)), 1.0);
+    }
+
+    @Test
+    public void testSlip() {
+        // Floor it on a slippery floor: the wheels spin faster than the robot moves
+        DifferentialDrivePlant plant = new DifferentialDrivePlant(withTraction(100));
+        plant.setVoltage(DifferentialDrivePlant.kLeft, 12);
+        plant.setVoltage(DifferentialDrivePlant.kRight, 12);
+        for (int i = 0; i < 500; i++) {
+            plant.step();
+        }
+        assertTrue(plant.getSlip(DifferentialDrivePlant.kLeft) > 10);
+        double encoder = plant.countsToInches(plant.getEncoderCounts(DifferentialDrivePlant.kLeft, 0));
+        assertTrue(encoder > plant.getPose().getTranslation().x() + 5);
+    }
+}